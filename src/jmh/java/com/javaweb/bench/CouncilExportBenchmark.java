@@ -0,0 +1,88 @@
+package com.javaweb.bench;
+
+import com.javaweb.dto.CouncilEvaluationDto;
+import com.javaweb.service.CompressionProfile;
+import com.javaweb.service.CouncilEvaluationExportService;
+import com.javaweb.service.ExportDocument;
+import com.javaweb.service.ExportEngine;
+import com.javaweb.service.ExportEngineSelector;
+import com.javaweb.service.ExportMetrics;
+import com.javaweb.service.ExportPackager;
+import com.javaweb.service.ExportWorkbookFactory;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Council export: {@code build} measures {@code buildDocument} alone, {@code write} measures
+ * serializing an already built document with each compression profile.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CouncilExportBenchmark {
+
+    @Param({"3", "7"})
+    public int lecturers;
+
+    @Param({"20", "200"})
+    public int students;
+
+    @Param({"3"})
+    public int pisPerIndicator;
+
+    @Param({"XSSF", "SXSSF", "DIRECT"})
+    public ExportEngine engine;
+
+    /** Ignored by SXSSF, which always packages with POI's default level. */
+    @Param({"FASTEST", "BALANCED", "SMALLEST"})
+    public CompressionProfile compression;
+
+    private CouncilEvaluationExportService service;
+    private CouncilEvaluationDto.Root payload;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        ExportWorkbookFactory workbookFactory = new ExportWorkbookFactory(ExportEngine.XSSF, 200);
+        ExportMetrics metrics = new ExportMetrics(new SimpleMeterRegistry());
+        service = new CouncilEvaluationExportService(workbookFactory, new ExportPackager(2), metrics,
+                new ExportEngineSelector(workbookFactory, metrics, false, 0), 1);
+        payload = ExportPayloads.council(lecturers, students, pisPerIndicator);
+    }
+
+    @Benchmark
+    public void build(Blackhole blackhole) throws IOException {
+        try (ExportDocument document = service.buildDocument(payload, engine)) {
+            blackhole.consume(document);
+        }
+    }
+
+    @Benchmark
+    public void write(BuiltDocument built, Blackhole blackhole) throws IOException {
+        blackhole.consume(built.document.write(OutputStream.nullOutputStream(), compression));
+    }
+
+    /** SXSSF workbooks can be written only once, so {@code write} gets a fresh document per invocation. */
+    @State(Scope.Thread)
+    public static class BuiltDocument {
+        ExportDocument document;
+
+        @Setup(Level.Invocation)
+        public void build(CouncilExportBenchmark bench) {
+            document = bench.service.buildDocument(bench.payload, bench.engine);
+        }
+
+        @TearDown(Level.Invocation)
+        public void release() throws IOException {
+            document.close();
+            document = null;
+        }
+    }
+}
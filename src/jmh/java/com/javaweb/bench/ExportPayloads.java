@@ -0,0 +1,168 @@
+package com.javaweb.bench;
+
+import com.javaweb.dto.CouncilEvaluationDto;
+import com.javaweb.dto.GuiderEvaluationDto;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Deterministic synthetic payloads for the export benchmarks. The same sizes always give the same
+ * payload, so results from different runs are comparable.
+ */
+public final class ExportPayloads {
+
+    private static final long SEED = 20240601L;
+    private static final int INDICATORS = 4;
+
+    private ExportPayloads() {
+    }
+
+    public static CouncilEvaluationDto.Root council(int lecturers, int students, int pisPerIndicator) {
+        Random random = new Random(SEED);
+        List<CouncilEvaluationDto.Indicator> indicators = new ArrayList<>(INDICATORS);
+        List<String> piIds = new ArrayList<>(INDICATORS * pisPerIndicator);
+        for (int c = 1; c <= INDICATORS; c++) {
+            CouncilEvaluationDto.Indicator indicator = new CouncilEvaluationDto.Indicator();
+            indicator.setCloId("CLO" + c);
+            indicator.setCloName("CLO" + c);
+            indicator.setCloDescription("Chuẩn đầu ra " + c);
+            indicator.setWeight(1.0 / INDICATORS);
+            List<CouncilEvaluationDto.Pi> pis = new ArrayList<>(pisPerIndicator);
+            for (int p = 1; p <= pisPerIndicator; p++) {
+                String piId = "C" + c + "." + p + ".";
+                piIds.add(piId);
+                pis.add(new CouncilEvaluationDto.Pi(piId, piId, "Chỉ số " + piId, 1.0 / pisPerIndicator));
+            }
+            indicator.setPis(pis);
+            indicators.add(indicator);
+        }
+
+        CouncilEvaluationDto.EvaluationForm form = new CouncilEvaluationDto.EvaluationForm(
+                "Phiếu chấm hội đồng", "council-eval", "2024-2025",
+                "COUNCIL", "COUNCIL", "Benchmark", indicators);
+
+        List<CouncilEvaluationDto.Lecturer> lecturerList = new ArrayList<>(lecturers);
+        for (int l = 1; l <= lecturers; l++) {
+            List<CouncilEvaluationDto.StudentEvaluation> evaluations = new ArrayList<>(students);
+            for (int s = 1; s <= students; s++) {
+                CouncilEvaluationDto.Evaluation evaluation = new CouncilEvaluationDto.Evaluation();
+                evaluation.setEvaluationId("council-eval");
+                evaluation.setEvaluationTitle("Phiếu chấm hội đồng");
+                evaluation.setScores(councilScores(piIds, random));
+                CouncilEvaluationDto.StudentEvaluation student = new CouncilEvaluationDto.StudentEvaluation(
+                        studentId(s), studentName(s), "D21CQCN0" + (s % 9 + 1), evaluation);
+                student.setComment(s % 3 == 0 ? "Cần bổ sung phần thực nghiệm" : null);
+                evaluations.add(student);
+            }
+            CouncilEvaluationDto.Lecturer lecturer = new CouncilEvaluationDto.Lecturer();
+            lecturer.setLecturerId("GV" + l);
+            lecturer.setLecturerName("Giảng viên " + l);
+            lecturer.setRole(l == 1 ? "Chủ tịch" : "Ủy viên");
+            lecturer.setDepartment("CNTT");
+            lecturer.setEvaluations(evaluations);
+            lecturerList.add(lecturer);
+        }
+        return new CouncilEvaluationDto.Root(form, lecturerList);
+    }
+
+    public static GuiderEvaluationDto.Root guider(int students, int formsPerStudent, int pisPerIndicator) {
+        Random random = new Random(SEED);
+        List<GuiderEvaluationDto.EvaluationForm> forms = new ArrayList<>(formsPerStudent);
+        List<List<String>> piIdsByForm = new ArrayList<>(formsPerStudent);
+        for (int f = 1; f <= formsPerStudent; f++) {
+            List<String> piIds = new ArrayList<>(INDICATORS * pisPerIndicator);
+            List<GuiderEvaluationDto.Indicator> indicators = new ArrayList<>(INDICATORS);
+            for (int c = 1; c <= INDICATORS; c++) {
+                List<GuiderEvaluationDto.Pi> pis = new ArrayList<>(pisPerIndicator);
+                for (int p = 1; p <= pisPerIndicator; p++) {
+                    String piId = "F" + f + ".C" + c + "." + p + ".";
+                    piIds.add(piId);
+                    GuiderEvaluationDto.Pi pi = new GuiderEvaluationDto.Pi();
+                    pi.setCloPisId(piId);
+                    pi.setCloPisName(piId);
+                    pi.setCloPisDescription("Chỉ số " + piId);
+                    pi.setCloPisWeight(1.0 / pisPerIndicator);
+                    pis.add(pi);
+                }
+                GuiderEvaluationDto.Indicator indicator = new GuiderEvaluationDto.Indicator();
+                indicator.setCloId("CLO" + c);
+                indicator.setCloName("CLO" + c);
+                indicator.setCloDescription("Chuẩn đầu ra " + c);
+                indicator.setWeight(1.0 / INDICATORS);
+                indicator.setPis(pis);
+                indicators.add(indicator);
+            }
+            GuiderEvaluationDto.EvaluationForm form = new GuiderEvaluationDto.EvaluationForm();
+            form.setTitle("Báo cáo tuần " + f);
+            form.setEvaluationId("eval-" + f);
+            form.setAcademicYear("2024-2025");
+            form.setFormKey("FORM-" + f);
+            form.setReportWeek(String.valueOf(f));
+            form.setEvaluatorRole("GUIDER");
+            form.setIndicators(indicators);
+            forms.add(form);
+            piIdsByForm.add(piIds);
+        }
+
+        List<GuiderEvaluationDto.Student> studentList = new ArrayList<>(students);
+        for (int s = 1; s <= students; s++) {
+            List<GuiderEvaluationDto.StudentEvaluation> evaluations = new ArrayList<>(formsPerStudent);
+            for (int f = 1; f <= formsPerStudent; f++) {
+                GuiderEvaluationDto.StudentEvaluation evaluation = new GuiderEvaluationDto.StudentEvaluation();
+                evaluation.setEvaluationId("eval-" + f);
+                evaluation.setEvaluationTitle("Báo cáo tuần " + f);
+                evaluation.setScores(guiderScores(piIdsByForm.get(f - 1), random));
+                evaluations.add(evaluation);
+            }
+            GuiderEvaluationDto.Student student = new GuiderEvaluationDto.Student();
+            student.setStudentId(studentId(s));
+            student.setStudentName(studentName(s));
+            student.setStudentClassName("D21CQCN0" + (s % 9 + 1));
+            student.setRole("STUDENT");
+            student.setGuiderName("Giảng viên " + (s % 7 + 1));
+            student.setReviewerName("Giảng viên " + (s % 5 + 1));
+            student.setProjectName("Đề tài số " + s);
+            student.setEvaluations(evaluations);
+            studentList.add(student);
+        }
+
+        GuiderEvaluationDto.Root root = new GuiderEvaluationDto.Root();
+        root.setEvaluationForm(forms);
+        root.setStudents(studentList);
+        return root;
+    }
+
+    private static List<CouncilEvaluationDto.Score> councilScores(List<String> piIds, Random random) {
+        List<CouncilEvaluationDto.Score> scores = new ArrayList<>(piIds.size());
+        for (String piId : piIds) {
+            scores.add(new CouncilEvaluationDto.Score(piId, score(random)));
+        }
+        return scores;
+    }
+
+    private static List<GuiderEvaluationDto.Score> guiderScores(List<String> piIds, Random random) {
+        List<GuiderEvaluationDto.Score> scores = new ArrayList<>(piIds.size());
+        for (String piId : piIds) {
+            GuiderEvaluationDto.Score score = new GuiderEvaluationDto.Score();
+            score.setPiId(piId);
+            score.setScore(score(random));
+            scores.add(score);
+        }
+        return scores;
+    }
+
+    /** Scores in half points; roughly one in twenty is left blank like an unfinished form. */
+    private static Double score(Random random) {
+        return random.nextInt(20) == 0 ? null : random.nextInt(21) / 2.0;
+    }
+
+    private static String studentId(int index) {
+        return String.format("B21DCCN%03d", index);
+    }
+
+    private static String studentName(int index) {
+        return "Nguyễn Văn " + (char) ('A' + index % 26) + " " + index;
+    }
+}
@@ -0,0 +1,94 @@
+package com.javaweb.bench;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.javaweb.dto.GuiderEvaluationDto;
+import com.javaweb.service.CompressionProfile;
+import com.javaweb.service.ExportDocument;
+import com.javaweb.service.ExportEngine;
+import com.javaweb.service.ExportEngineSelector;
+import com.javaweb.service.ExportMetrics;
+import com.javaweb.service.ExportPackager;
+import com.javaweb.service.ExportWorkbookFactory;
+import com.javaweb.service.GuiderEvaluationExportService;
+import com.javaweb.service.ReviewerEvaluationExportService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Guider (GVHD) and reviewer (PB) exports share the payload shape, so one benchmark covers both.
+ * The services keep their layout cache between invocations, as they do in the running application.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class GuiderExportBenchmark {
+
+    public enum Kind { GUIDER, REVIEWER }
+
+    @Param({"GUIDER", "REVIEWER"})
+    public Kind kind;
+
+    @Param({"50", "500"})
+    public int students;
+
+    @Param({"1", "4"})
+    public int formsPerStudent;
+
+    @Param({"3"})
+    public int pisPerIndicator;
+
+    @Param({"XSSF", "DIRECT"})
+    public ExportEngine engine;
+
+    private GuiderEvaluationExportService service;
+    private GuiderEvaluationDto.Root payload;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        ExportWorkbookFactory workbookFactory = new ExportWorkbookFactory(ExportEngine.XSSF, 200);
+        ExportPackager packager = new ExportPackager(2);
+        ExportMetrics metrics = new ExportMetrics(new SimpleMeterRegistry());
+        ExportEngineSelector engineSelector = new ExportEngineSelector(workbookFactory, metrics, false, 0);
+        ObjectMapper objectMapper = new ObjectMapper();
+        service = kind == Kind.REVIEWER
+                ? new ReviewerEvaluationExportService(workbookFactory, packager, metrics, engineSelector, objectMapper, 64, false)
+                : new GuiderEvaluationExportService(workbookFactory, packager, metrics, engineSelector, objectMapper, 64, false);
+        payload = ExportPayloads.guider(students, formsPerStudent, pisPerIndicator);
+    }
+
+    @Benchmark
+    public void build(Blackhole blackhole) throws IOException {
+        try (ExportDocument document = service.buildDocument(payload, engine)) {
+            blackhole.consume(document);
+        }
+    }
+
+    @Benchmark
+    public void write(BuiltDocument built, Blackhole blackhole) throws IOException {
+        blackhole.consume(built.document.write(OutputStream.nullOutputStream(), CompressionProfile.BALANCED));
+    }
+
+    @State(Scope.Thread)
+    public static class BuiltDocument {
+        ExportDocument document;
+
+        @Setup(Level.Trial)
+        public void build(GuiderExportBenchmark bench) {
+            document = bench.service.buildDocument(bench.payload, bench.engine);
+        }
+
+        @TearDown(Level.Trial)
+        public void release() throws IOException {
+            document.close();
+            document = null;
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.javaweb.config;
+
+import com.javaweb.controller.ExportAdmissionInterceptor;
+import com.javaweb.controller.ExportCancellationInterceptor;
+import com.javaweb.controller.ExportCleanupInterceptor;
+import com.javaweb.controller.ExportProfileInterceptor;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+@Configuration
+public class WebConfig implements WebMvcConfigurer {
+
+    private final ExportProfileInterceptor exportProfileInterceptor;
+    private final ExportAdmissionInterceptor exportAdmissionInterceptor;
+    private final ExportCancellationInterceptor exportCancellationInterceptor;
+    private final ExportCleanupInterceptor exportCleanupInterceptor;
+
+    public WebConfig(ExportProfileInterceptor exportProfileInterceptor,
+                     ExportAdmissionInterceptor exportAdmissionInterceptor,
+                     ExportCancellationInterceptor exportCancellationInterceptor,
+                     ExportCleanupInterceptor exportCleanupInterceptor) {
+        this.exportProfileInterceptor = exportProfileInterceptor;
+        this.exportAdmissionInterceptor = exportAdmissionInterceptor;
+        this.exportCancellationInterceptor = exportCancellationInterceptor;
+        this.exportCleanupInterceptor = exportCleanupInterceptor;
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(exportProfileInterceptor).addPathPatterns("/api/export/xlsx/**");
+        registry.addInterceptor(exportAdmissionInterceptor).addPathPatterns("/api/export/xlsx/**");
+        registry.addInterceptor(exportCancellationInterceptor).addPathPatterns("/api/export/xlsx/**");
+        registry.addInterceptor(exportCleanupInterceptor).addPathPatterns("/api/export/xlsx/**");
+    }
+}
@@ -0,0 +1,43 @@
+package com.javaweb.controller;
+
+import com.javaweb.service.ExportAdmission;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+
+/**
+ * Keeps the {@link ExportAdmission} reservation taken by {@link ExportController} for as long as the
+ * request runs. The response body is written after the handler returns, on another thread, so the
+ * reservation lives in a request attribute and is given back only once the async dispatch completes,
+ * or when the handler fails.
+ */
+@Component
+public class ExportAdmissionInterceptor implements AsyncHandlerInterceptor {
+
+    private static final String PERMIT = ExportAdmissionInterceptor.class.getName() + ".permit";
+
+    /** Hold {@code permit} until the current request completes. Must be called on the request thread. */
+    static void hold(ExportAdmission.Permit permit) {
+        RequestContextHolder.currentRequestAttributes().setAttribute(PERMIT, permit, RequestAttributes.SCOPE_REQUEST);
+    }
+
+    /** Give the current request's reservation back early, once its workbook no longer occupies the heap. */
+    static void release() {
+        RequestAttributes attributes = RequestContextHolder.currentRequestAttributes();
+        if (attributes.getAttribute(PERMIT, RequestAttributes.SCOPE_REQUEST) instanceof ExportAdmission.Permit permit) {
+            attributes.removeAttribute(PERMIT, RequestAttributes.SCOPE_REQUEST);
+            permit.close();
+        }
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        if (request.getAttribute(PERMIT) instanceof ExportAdmission.Permit permit) {
+            request.removeAttribute(PERMIT);
+            permit.close();
+        }
+    }
+}
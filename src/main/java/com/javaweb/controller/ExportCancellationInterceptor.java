@@ -0,0 +1,69 @@
+package com.javaweb.controller;
+
+import com.javaweb.service.ExportCancellation;
+import com.javaweb.service.ExportMetrics;
+import jakarta.servlet.DispatcherType;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+
+import java.time.Duration;
+
+/**
+ * Binds an {@link ExportCancellation} to the request thread for the export endpoints. A client that will
+ * not wait indefinitely sends {@value #TIMEOUT_HEADER}, the milliseconds it is prepared to wait; once they
+ * have passed the export stops at its next checkpoint. The response body is written on another thread,
+ * which binds the cancellation itself; see {@link ExportController}.
+ */
+@Component
+public class ExportCancellationInterceptor implements AsyncHandlerInterceptor {
+
+    static final String TIMEOUT_HEADER = "X-Export-Timeout-Millis";
+    private static final String SCOPE = ExportCancellationInterceptor.class.getName() + ".scope";
+
+    private final ExportMetrics metrics;
+
+    public ExportCancellationInterceptor(ExportMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        if (request.getDispatcherType() != DispatcherType.ASYNC) {
+            ExportCancellation cancellation = new ExportCancellation(timeout(request.getHeader(TIMEOUT_HEADER)),
+                    metrics::cancelled);
+            request.setAttribute(SCOPE, cancellation.bind());
+        }
+        return true;
+    }
+
+    @Override
+    public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        unbind(request);
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        unbind(request);
+    }
+
+    /** The client's timeout, or null when it sent none or one that is not a number of milliseconds. */
+    private static Duration timeout(String header) {
+        if (header == null || header.isBlank()) {
+            return null;
+        }
+        try {
+            return Duration.ofMillis(Math.max(0, Long.parseLong(header.strip())));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static void unbind(HttpServletRequest request) {
+        if (request.getAttribute(SCOPE) instanceof ExportCancellation.Scope scope) {
+            request.removeAttribute(SCOPE);
+            scope.close();
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.javaweb.controller;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Releases what a response body was handed when the body never runs, for example because the client
+ * left before the container started it. {@link ExportController} registers a cleanup for each body that
+ * owns a spool file, a document or a single-flight build; whichever comes first, the body or the
+ * completion of the request, claims it, so the resources are released exactly once.
+ */
+@Component
+public class ExportCleanupInterceptor implements AsyncHandlerInterceptor {
+
+    private static final Logger log = LoggerFactory.getLogger(ExportCleanupInterceptor.class);
+
+    private static final String PENDING = ExportCleanupInterceptor.class.getName() + ".pending";
+
+    /**
+     * Run {@code cleanup} when the current request completes, unless the body claims its resources
+     * first. Must be called on the request thread.
+     */
+    @SuppressWarnings("unchecked")
+    static Claim onAbandon(AutoCloseable cleanup) {
+        RequestAttributes attributes = RequestContextHolder.currentRequestAttributes();
+        List<Claim> pending = (List<Claim>) attributes.getAttribute(PENDING, RequestAttributes.SCOPE_REQUEST);
+        if (pending == null) {
+            pending = new ArrayList<>();
+            attributes.setAttribute(PENDING, pending, RequestAttributes.SCOPE_REQUEST);
+        }
+        Claim claim = new Claim(cleanup);
+        pending.add(claim);
+        return claim;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        if (request.getAttribute(PENDING) instanceof List<?> pending) {
+            request.removeAttribute(PENDING);
+            for (Object claim : pending) {
+                ((Claim) claim).abandon();
+            }
+        }
+    }
+
+    /** The right to release what one response body was handed. */
+    static final class Claim {
+        private final AutoCloseable cleanup;
+        private final AtomicBoolean taken = new AtomicBoolean();
+
+        private Claim(AutoCloseable cleanup) {
+            this.cleanup = cleanup;
+        }
+
+        /** Called by the body before it touches its resources; false when they were already released. */
+        boolean take() {
+            return taken.compareAndSet(false, true);
+        }
+
+        private void abandon() {
+            if (!take()) {
+                return;
+            }
+            try {
+                cleanup.close();
+            } catch (Exception e) {
+                log.warn("Could not release an export response that was never written", e);
+            }
+        }
+    }
+}
@@ -1,60 +1,663 @@
 package com.javaweb.controller;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.javaweb.dto.CouncilEvaluationDto;
 import com.javaweb.dto.GuiderEvaluationDto;
+import com.javaweb.service.CouncilBatchExportService;
 import com.javaweb.service.CouncilEvaluationExportService;
+import com.javaweb.service.CompressionProfile;
+import com.javaweb.service.ExportAdmission;
+import com.javaweb.service.ExportCancellation;
+import com.javaweb.service.ExportCostEstimate;
+import com.javaweb.service.ExportDocument;
+import com.javaweb.service.ExportEngine;
+import com.javaweb.service.ExportEngineSelector;
+import com.javaweb.service.ExportMetrics;
+import com.javaweb.service.ExportMetrics.Phase;
+import com.javaweb.service.ExportProfile;
+import com.javaweb.service.ExportResponseMode;
+import com.javaweb.service.ExportResultCache;
+import com.javaweb.service.ExportSingleFlight;
 import com.javaweb.service.GuiderEvaluationExportService;
+import com.javaweb.service.PackageStats;
 import com.javaweb.service.ReviewerEvaluationExportService;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Qualifier;
-import org.apache.poi.ss.usermodel.Workbook;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.*;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
-import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
 
 
-@CrossOrigin(origins = "http://localhost:3000")
+@CrossOrigin(origins = "http://localhost:3000", exposedHeaders = {
+        "Server-Timing", "X-Export-Profile",
+        "X-Export-Compression", "X-Export-Compression-Ratio", "X-Export-Compression-Millis"})
 @RestController
 @RequestMapping("/api/export")
 public class ExportController {
+    private static final Logger log = LoggerFactory.getLogger(ExportController.class);
+
+    private static final MediaType XLSX = MediaType.parseMediaType(
+            "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet");
+    private static final MediaType ZIP = MediaType.parseMediaType("application/zip");
+
+    private static final String TRAILER = "Trailer";
+    static final String COMPRESSION_HEADER = "X-Export-Compression";
+    static final String COMPRESSION_RATIO_HEADER = "X-Export-Compression-Ratio";
+    static final String COMPRESSION_MILLIS_HEADER = "X-Export-Compression-Millis";
+    static final String SERVER_TIMING = "Server-Timing";
+    static final String PROFILE_HEADER = "X-Export-Profile";
+    /** Reported in place of a profile when the engine packaged the file with its own deflate level. */
+    private static final String ENGINE_COMPRESSION = "ENGINE";
+
     private final CouncilEvaluationExportService councilSvc;
+    private final CouncilBatchExportService councilBatchSvc;
     private final GuiderEvaluationExportService guiderSvc;
     private final ReviewerEvaluationExportService reviewerSvc;
+    private final ExportResponseMode defaultResponseMode;
+    private final ExportResultCache resultCache;
+    private final ExportSingleFlight singleFlight;
+    private final CompressionProfile defaultCompression;
+    private final ExportMetrics metrics;
+    private final ExportEngineSelector engineSelector;
+    private final ExportAdmission admission;
+    private final ObjectMapper objectMapper;
 
     public ExportController(CouncilEvaluationExportService councilSvc,
+                            CouncilBatchExportService councilBatchSvc,
                             @Qualifier("guiderEvaluationExportService") GuiderEvaluationExportService guiderSvc,
-                            @Qualifier("reviewerEvaluationExportService") ReviewerEvaluationExportService reviewerSvc) {
+                            @Qualifier("reviewerEvaluationExportService") ReviewerEvaluationExportService reviewerSvc,
+                            @Value("${export.response.mode:CHUNKED}") ExportResponseMode defaultResponseMode,
+                            ExportResultCache resultCache,
+                            ExportSingleFlight singleFlight,
+                            @Value("${export.compression.profile:BALANCED}") CompressionProfile defaultCompression,
+                            ExportMetrics metrics,
+                            ExportEngineSelector engineSelector,
+                            ExportAdmission admission,
+                            ObjectMapper objectMapper) {
         this.councilSvc = councilSvc;
+        this.councilBatchSvc = councilBatchSvc;
         this.guiderSvc = guiderSvc;
         this.reviewerSvc = reviewerSvc;
+        this.defaultResponseMode = defaultResponseMode;
+        this.resultCache = resultCache;
+        this.singleFlight = singleFlight;
+        this.defaultCompression = defaultCompression;
+        this.metrics = metrics;
+        this.engineSelector = engineSelector;
+        this.admission = admission;
+        this.objectMapper = objectMapper;
     }
 
     @PostMapping("/xlsx")
-    public ResponseEntity<byte[]> council(@RequestBody CouncilEvaluationDto.Root payload) throws Exception {
-        Workbook wb = councilSvc.buildWorkbook(payload);
-        return buildResponse(wb, "phieu_cham_hoi_dong.xlsx");
+    public ResponseEntity<StreamingResponseBody> council(@RequestBody CouncilEvaluationDto.Root payload,
+                                                         @RequestParam(name = "engine", required = false) ExportEngine engine,
+                                                         @RequestParam(name = "mode", required = false) ExportResponseMode mode,
+                                                         @RequestParam(name = "compression", required = false) CompressionProfile compression,
+                                                         HttpServletResponse response,
+                                                         @RequestHeader(name = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) throws Exception {
+        String filename = "phieu_cham_hoi_dong.xlsx";
+        String payloadKey = payloadKey("council", engine, compression, payload);
+        String cacheKey = cacheKey(payloadKey);
+        ResponseEntity<StreamingResponseBody> cached = cachedResponse(ExportMetrics.COUNCIL, cacheKey, ifNoneMatch, filename);
+        if (cached != null) {
+            return cached;
+        }
+        return coalesce(ExportMetrics.COUNCIL, payloadKey, cacheKey, filename, mode, compression, response, () -> {
+            ExportEngine selected = admit(ExportMetrics.COUNCIL, engine, councilSvc.estimate(payload));
+            return councilSvc.buildDocument(payload, selected);
+        });
+    }
+
+    /**
+     * Export many councils as one ZIP. Entries are streamed as each workbook is ready; councils that
+     * fail to build are listed in the archive manifest instead of aborting the download.
+     */
+    @PostMapping("/xlsx/batch")
+    public ResponseEntity<StreamingResponseBody> councilBatch(@RequestBody List<CouncilEvaluationDto.Root> payloads,
+                                                              @RequestParam(name = "engine", required = false) ExportEngine engine,
+                                                              @RequestParam(name = "compression", required = false) CompressionProfile compression) {
+        if (payloads == null || payloads.isEmpty()) {
+            return ResponseEntity.badRequest().build();
+        }
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(ZIP);
+        headers.setContentDisposition(ContentDisposition.attachment().filename("phieu_cham_hoi_dong.zip").build());
+        CompressionProfile effective = compression != null ? compression : defaultCompression;
+        ExportAdmissionInterceptor.hold(admission.acquire(ExportMetrics.COUNCIL, councilBatchSvc.heapBytes(payloads, root -> {
+            ExportCostEstimate cost = councilSvc.estimate(root);
+            return engineSelector.heapBytes(engineSelector.choose(engine, cost), cost);
+        })));
+        ExportCancellation cancellation = ExportCancellation.current();
+        return new ResponseEntity<>(out -> {
+            ExportCancellation.Scope scope = ExportCancellation.scope(cancellation);
+            try {
+                councilBatchSvc.writeArchive(payloads, engine, effective, guard(cancellation, out));
+            } finally {
+                scope.close();
+            }
+        }, headers, HttpStatus.OK);
     }
 
     @PostMapping("/xlsx/guider")
-    public ResponseEntity<byte[]> guider(@RequestBody GuiderEvaluationDto.Root payload) throws Exception {
-        Workbook wb = guiderSvc.buildWorkbook(payload);
-        return buildResponse(wb, "phieu_cham_gvhd.xlsx");
+    public ResponseEntity<StreamingResponseBody> guider(@RequestBody GuiderEvaluationDto.Root payload,
+                                                        @RequestParam(name = "engine", required = false) ExportEngine engine,
+                                                        @RequestParam(name = "mode", required = false) ExportResponseMode mode,
+                                                        @RequestParam(name = "compression", required = false) CompressionProfile compression,
+                                                        HttpServletResponse response,
+                                                        @RequestHeader(name = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) throws Exception {
+        String filename = "phieu_cham_gvhd.xlsx";
+        String payloadKey = payloadKey("guider", engine, compression, payload);
+        String cacheKey = cacheKey(payloadKey);
+        ResponseEntity<StreamingResponseBody> cached = cachedResponse(ExportMetrics.GUIDER, cacheKey, ifNoneMatch, filename);
+        if (cached != null) {
+            return cached;
+        }
+        return coalesce(ExportMetrics.GUIDER, payloadKey, cacheKey, filename, mode, compression, response, () -> {
+            ExportEngine selected = admit(ExportMetrics.GUIDER, engine, guiderSvc.estimate(payload));
+            return guiderSvc.buildDocument(payload, selected);
+        });
     }
 
     @PostMapping("/xlsx/reviewer")
-    public ResponseEntity<byte[]> reviewer(@RequestBody GuiderEvaluationDto.Root payload) throws Exception {
-        Workbook wb = reviewerSvc.buildWorkbook(payload);
-        return buildResponse(wb, "phieu_cham_pb.xlsx");
+    public ResponseEntity<StreamingResponseBody> reviewer(@RequestBody GuiderEvaluationDto.Root payload,
+                                                          @RequestParam(name = "engine", required = false) ExportEngine engine,
+                                                          @RequestParam(name = "mode", required = false) ExportResponseMode mode,
+                                                          @RequestParam(name = "compression", required = false) CompressionProfile compression,
+                                                          HttpServletResponse response,
+                                                          @RequestHeader(name = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) throws Exception {
+        String filename = "phieu_cham_pb.xlsx";
+        String payloadKey = payloadKey("reviewer", engine, compression, payload);
+        String cacheKey = cacheKey(payloadKey);
+        ResponseEntity<StreamingResponseBody> cached = cachedResponse(ExportMetrics.REVIEWER, cacheKey, ifNoneMatch, filename);
+        if (cached != null) {
+            return cached;
+        }
+        return coalesce(ExportMetrics.REVIEWER, payloadKey, cacheKey, filename, mode, compression, response, () -> {
+            ExportEngine selected = admit(ExportMetrics.REVIEWER, engine, reviewerSvc.estimate(payload));
+            return reviewerSvc.buildDocument(payload, selected);
+        });
+    }
+
+    /**
+     * Guider export read from the JSON body one student at a time instead of binding the whole payload.
+     * Meant for whole-faculty exports; the result is not cached.
+     */
+    @PostMapping(path = "/xlsx/guider/stream", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> guiderStream(InputStream body,
+                                                              @RequestParam(name = "mode", required = false) ExportResponseMode mode,
+                                                              @RequestParam(name = "compression", required = false) CompressionProfile compression,
+                                                              HttpServletResponse response) throws Exception {
+        ExportAdmissionInterceptor.hold(admission.acquireStreaming(ExportMetrics.GUIDER));
+        ExportDocument document = ExportDocument.of(guiderSvc.buildWorkbook(body));
+        return buildResponse(ExportMetrics.GUIDER, document, "phieu_cham_gvhd.xlsx", mode, compression, null, null, response);
+    }
+
+    @PostMapping(path = "/xlsx/reviewer/stream", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> reviewerStream(InputStream body,
+                                                                @RequestParam(name = "mode", required = false) ExportResponseMode mode,
+                                                                @RequestParam(name = "compression", required = false) CompressionProfile compression,
+                                                                HttpServletResponse response) throws Exception {
+        ExportAdmissionInterceptor.hold(admission.acquireStreaming(ExportMetrics.REVIEWER));
+        ExportDocument document = ExportDocument.of(reviewerSvc.buildWorkbook(body));
+        return buildResponse(ExportMetrics.REVIEWER, document, "phieu_cham_pb.xlsx", mode, compression, null, null, response);
+    }
+
+    /**
+     * NDJSON variant of the streaming guider export: the evaluation forms on the first line, then one
+     * student per line, so an upstream cursor can feed rows without assembling one JSON document.
+     */
+    @PostMapping(path = "/xlsx/guider/stream", consumes = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> guiderNdjson(InputStream body,
+                                                              @RequestParam(name = "mode", required = false) ExportResponseMode mode,
+                                                              @RequestParam(name = "compression", required = false) CompressionProfile compression,
+                                                              HttpServletResponse response) throws Exception {
+        ExportAdmissionInterceptor.hold(admission.acquireStreaming(ExportMetrics.GUIDER));
+        ExportDocument document = ExportDocument.of(guiderSvc.buildWorkbookFromNdjson(body));
+        return buildResponse(ExportMetrics.GUIDER, document, "phieu_cham_gvhd.xlsx", mode, compression, null, null, response);
+    }
+
+    @PostMapping(path = "/xlsx/reviewer/stream", consumes = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> reviewerNdjson(InputStream body,
+                                                                @RequestParam(name = "mode", required = false) ExportResponseMode mode,
+                                                                @RequestParam(name = "compression", required = false) CompressionProfile compression,
+                                                                HttpServletResponse response) throws Exception {
+        ExportAdmissionInterceptor.hold(admission.acquireStreaming(ExportMetrics.REVIEWER));
+        ExportDocument document = ExportDocument.of(reviewerSvc.buildWorkbookFromNdjson(body));
+        return buildResponse(ExportMetrics.REVIEWER, document, "phieu_cham_pb.xlsx", mode, compression, null, null, response);
+    }
+
+    /** Turned away by {@link ExportAdmission}: the client should come back once running exports finish. */
+    @ExceptionHandler(RejectedExecutionException.class)
+    public ResponseEntity<Void> admissionRejected(RejectedExecutionException e) {
+        log.warn(e.getMessage());
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, Long.toString(admission.retryAfterSeconds()))
+                .build();
+    }
+
+    /** Stopped by {@link ExportCancellation} before the response started: the client's deadline passed. */
+    @ExceptionHandler(CancellationException.class)
+    public ResponseEntity<Void> cancelled(CancellationException e) {
+        log.info(e.getMessage());
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+    }
+
+    /**
+     * Pick the engine for a bound payload and reserve the heap it is estimated to need with it. The
+     * reservation is held until the response is written; see {@link ExportAdmissionInterceptor}.
+     */
+    private ExportEngine admit(String endpoint, ExportEngine requested, ExportCostEstimate cost) {
+        ExportEngine selected = engineSelector.select(endpoint, requested, () -> cost);
+        ExportAdmissionInterceptor.hold(admission.acquire(endpoint, engineSelector.heapBytes(selected, cost)));
+        return selected;
+    }
+
+    /**
+     * Hash of the canonical payload and the options that change the package bytes, shared by the result
+     * cache and single-flight; null when neither is on.
+     */
+    private String payloadKey(String type, ExportEngine engine, CompressionProfile compression, Object payload) {
+        if (!resultCache.enabled() && !singleFlight.enabled()) {
+            return null;
+        }
+        return resultCache.key(type, engine, compression != null ? compression : defaultCompression, payload);
+    }
+
+    private String cacheKey(String payloadKey) {
+        return resultCache.enabled() ? payloadKey : null;
+    }
+
+    /**
+     * Build the document and respond with it, unless an identical export is already being built: then
+     * this request follows that build and streams the same bytes instead; see {@link ExportSingleFlight}.
+     */
+    private ResponseEntity<StreamingResponseBody> coalesce(String endpoint,
+                                                           String payloadKey,
+                                                           String cacheKey,
+                                                           String filename,
+                                                           ExportResponseMode mode,
+                                                           CompressionProfile compression,
+                                                           HttpServletResponse response,
+                                                           Callable<ExportDocument> build) throws Exception {
+        ExportSingleFlight.Flight flight = singleFlight.join(endpoint, payloadKey);
+        if (flight != null && !flight.leader()) {
+            return followerResponse(endpoint, flight, filename, mode, cacheKey);
+        }
+        try {
+            return buildResponse(endpoint, build.call(), filename, mode, compression, cacheKey, flight, response);
+        } catch (Exception e) {
+            if (flight != null) {
+                flight.fail(e);
+                flight.close();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Stream the package another request is building. In {@link ExportResponseMode#SIZED} mode this waits
+     * for the build to finish so the length is known; otherwise bytes are sent as the leader writes them.
+     * Compression and timing headers belong to the leader's response and are not repeated here.
+     */
+    private ResponseEntity<StreamingResponseBody> followerResponse(String endpoint,
+                                                                   ExportSingleFlight.Flight flight,
+                                                                   String filename,
+                                                                   ExportResponseMode mode,
+                                                                   String cacheKey) throws IOException {
+        HttpHeaders headers = fileHeaders(filename, cacheKey);
+        ExportProfile exportProfile = ExportProfile.current();
+        ExportResponseMode effective = responseMode(mode);
+        if (effective == ExportResponseMode.SIZED) {
+            try {
+                headers.setContentLength(flight.awaitSize());
+            } catch (IOException | RuntimeException e) {
+                flight.close();
+                throw e;
+            }
+        }
+        ExportCancellation cancellation = ExportCancellation.current();
+        ExportCleanupInterceptor.Claim claim = ExportCleanupInterceptor.onAbandon(flight);
+        return new ResponseEntity<>(out -> {
+            if (!claim.take()) {
+                return;
+            }
+            try (flight) {
+                long start = System.nanoTime();
+                flight.writeTo(guard(cancellation, out));
+                out.flush();
+                metrics.record(endpoint, Phase.FLUSH, System.nanoTime() - start);
+                if (exportProfile != null) {
+                    exportProfile.finish(endpoint, flight.size());
+                }
+            }
+        }, headers, HttpStatus.OK);
+    }
+
+    /**
+     * Answer from the result cache: 412 when the client already holds this payload's export, the cached
+     * file on a hit, or null when the workbook has to be built. The exports are POSTs, and RFC 9110
+     * section 13.1.2 reserves 304 for GET and HEAD; any other method whose If-None-Match matches fails
+     * the precondition.
+     */
+    private ResponseEntity<StreamingResponseBody> cachedResponse(String endpoint, String cacheKey, String ifNoneMatch,
+                                                                 String filename) {
+        if (cacheKey == null) {
+            return null;
+        }
+        if (etagMatches(ifNoneMatch, cacheKey)) {
+            return ResponseEntity.status(HttpStatus.PRECONDITION_FAILED).eTag(etag(cacheKey)).build();
+        }
+        ExportResultCache.CachedExport cached = resultCache.get(cacheKey);
+        if (cached == null) {
+            return null;
+        }
+        HttpHeaders headers = fileHeaders(filename, cacheKey);
+        headers.setContentLength(cached.size());
+        ExportProfile profile = ExportProfile.current();
+        profileFields(profile, true, Phase.DESERIALIZE).forEach(headers::set);
+        return new ResponseEntity<>(out -> {
+            cached.writeTo(out);
+            if (profile != null) {
+                profile.finish(endpoint, cached.size());
+            }
+        }, headers, HttpStatus.OK);
+    }
+
+    /**
+     * Stream the document to the client without buffering it on the heap. In {@link ExportResponseMode#SIZED}
+     * mode the package is spooled to a temp file so the length is known before the first byte goes out.
+     * When {@code cacheKey} is set the written bytes are also captured into the result cache, and when
+     * {@code flight} is set they are shared with the requests following it.
+     * <p>
+     * The compression profile, ratio and time, {@code Server-Timing} and the optional {@code X-Export-Profile}
+     * are reported as response headers when the package is spooled. When it is streamed, whatever is
+     * only known once the package is written follows as HTTP trailers, if the protocol can carry them;
+     * a detailed profile is therefore spooled unless the client asked for chunked delivery.
+     * <p>
+     * {@code document} is closed and the spool deleted on every path, including failures before the body
+     * takes them over and bodies the container never runs; see {@link ExportCleanupInterceptor}.
+     */
+    private ResponseEntity<StreamingResponseBody> buildResponse(String endpoint,
+                                                                ExportDocument document,
+                                                                String filename,
+                                                                ExportResponseMode mode,
+                                                                CompressionProfile compression,
+                                                                String cacheKey,
+                                                                ExportSingleFlight.Flight flight,
+                                                                HttpServletResponse response) throws Exception {
+        HttpHeaders headers = fileHeaders(filename, cacheKey);
+        CompressionProfile profile = compression != null ? compression : defaultCompression;
+        ExportProfile exportProfile = ExportProfile.current();
+
+        ExportResponseMode effective = responseMode(mode);
+        if (effective == ExportResponseMode.SIZED) {
+            Path spool;
+            try {
+                spool = Files.createTempFile("export-", ".xlsx");
+            } catch (IOException | RuntimeException e) {
+                discard(document, e);
+                throw e;
+            }
+            try {
+                PackageStats stats = spool(endpoint, document, profile, cacheKey, flight, spool);
+                if (flight != null) {
+                    flight.close();
+                }
+                // The workbook is on disk now; copying it out needs no more than a buffer.
+                ExportAdmissionInterceptor.release();
+                long size = Files.size(spool);
+                headers.setContentLength(size);
+                compressionFields(stats).forEach(headers::set);
+                profileFields(exportProfile, true, Phase.DESERIALIZE, Phase.LAYOUT, Phase.POPULATE, Phase.WRITE)
+                        .forEach(headers::set);
+                ExportCleanupInterceptor.Claim claim = ExportCleanupInterceptor.onAbandon(() -> Files.deleteIfExists(spool));
+                return new ResponseEntity<>(out -> {
+                    if (!claim.take()) {
+                        return;
+                    }
+                    long start = System.nanoTime();
+                    copyAndDelete(spool, out);
+                    out.flush();
+                    metrics.record(endpoint, Phase.FLUSH, System.nanoTime() - start);
+                    if (exportProfile != null) {
+                        exportProfile.finish(endpoint, size);
+                    }
+                }, headers, HttpStatus.OK);
+            } catch (Exception e) {
+                deleteSpool(spool, e);
+                throw e;
+            }
+        }
+
+        AtomicReference<PackageStats> written = new AtomicReference<>();
+        try {
+            profileFields(exportProfile, false, Phase.DESERIALIZE, Phase.LAYOUT, Phase.POPULATE).forEach(headers::set);
+            if (trailersSupported()) {
+                List<String> trailers = new ArrayList<>(List.of(
+                        COMPRESSION_HEADER, COMPRESSION_RATIO_HEADER, COMPRESSION_MILLIS_HEADER, SERVER_TIMING));
+                if (exportProfile != null && exportProfile.detailed()) {
+                    trailers.add(PROFILE_HEADER);
+                }
+                headers.set(TRAILER, String.join(", ", trailers));
+                response.setTrailerFields(() -> {
+                    Map<String, String> fields = compressionFields(written.get());
+                    fields.putAll(profileFields(exportProfile, true, Phase.WRITE, Phase.FLUSH));
+                    return fields;
+                });
+            }
+        } catch (RuntimeException e) {
+            discard(document, e);
+            throw e;
+        }
+        ExportCancellation cancellation = ExportCancellation.current();
+        // A leader whose body never runs must still leave the single-flight table, or identical requests would follow it
+        ExportCleanupInterceptor.Claim claim = ExportCleanupInterceptor.onAbandon(() -> {
+            if (flight != null) {
+                flight.close();
+            }
+            document.close();
+        });
+        return new ResponseEntity<>(out -> {
+            if (!claim.take()) {
+                return;
+            }
+            ExportProfile.Scope profileScope = ExportProfile.scope(exportProfile);
+            ExportCancellation.Scope cancellationScope = ExportCancellation.scope(cancellation);
+            try (flight; document) {
+                // Guard outside the tee: the leader's client leaving only cancels a build nobody else follows
+                OutputStream target = flight != null ? flight.tee(out) : out;
+                written.set(writeDocument(endpoint, document, profile, guard(cancellation, target), cacheKey));
+                if (flight != null) {
+                    flight.complete();
+                }
+                long start = System.nanoTime();
+                out.flush();
+                metrics.record(endpoint, Phase.FLUSH, System.nanoTime() - start);
+                if (exportProfile != null) {
+                    exportProfile.finish(endpoint, written.get().compressedBytes());
+                }
+            } finally {
+                cancellationScope.close();
+                profileScope.close();
+            }
+        }, headers, HttpStatus.OK);
+    }
+
+    /**
+     * The delivery mode of a response: the requested one, otherwise the configured default. A detailed
+     * profile is only complete once the package is written, and browsers do not show trailers, so a
+     * {@code ?profile=true} request without an explicit mode is spooled and gets the profile as a header.
+     */
+    private ExportResponseMode responseMode(ExportResponseMode requested) {
+        if (requested != null) {
+            return requested;
+        }
+        ExportProfile profile = ExportProfile.current();
+        return profile != null && profile.detailed() ? ExportResponseMode.SIZED : defaultResponseMode;
+    }
+
+    /**
+     * Whether the response can end with trailers. Only HTTP/1.1 chunked responses and HTTP/2 have them;
+     * Tomcat refuses a trailer supplier on anything else, such as a proxy talking HTTP/1.0 to us.
+     */
+    private static boolean trailersSupported() {
+        if (RequestContextHolder.getRequestAttributes() instanceof ServletRequestAttributes attributes) {
+            String protocol = attributes.getRequest().getProtocol();
+            return "HTTP/1.1".equals(protocol) || protocol.startsWith("HTTP/2");
+        }
+        return false;
+    }
+
+    /** Close a document that will not be written; a failure to close is added to {@code failure}. */
+    private static void discard(ExportDocument document, Exception failure) {
+        try {
+            document.close();
+        } catch (IOException e) {
+            failure.addSuppressed(e);
+        }
+    }
+
+    /** Delete a spool that will not be sent; a failure to delete is added to {@code failure}. */
+    private static void deleteSpool(Path spool, Exception failure) {
+        try {
+            Files.deleteIfExists(spool);
+        } catch (IOException e) {
+            failure.addSuppressed(e);
+        }
+    }
+
+    /** Header or trailer values describing how the package was compressed; empty until it is written. */
+    private static Map<String, String> compressionFields(PackageStats stats) {
+        Map<String, String> fields = new LinkedHashMap<>();
+        if (stats == null) {
+            return fields;
+        }
+        fields.put(COMPRESSION_HEADER, stats.profile() != null ? stats.profile().name() : ENGINE_COMPRESSION);
+        if (stats.measured()) {
+            fields.put(COMPRESSION_RATIO_HEADER, String.format(Locale.ROOT, "%.3f", stats.ratio()));
+            fields.put(COMPRESSION_MILLIS_HEADER, String.format(Locale.ROOT, "%.1f", stats.compressionMillis()));
+        }
+        return fields;
     }
 
-    private ResponseEntity<byte[]> buildResponse(Workbook workbook, String filename) throws Exception {
-        ByteArrayOutputStream bos = new ByteArrayOutputStream();
-        workbook.write(bos);
-        workbook.close();
+    /**
+     * {@code Server-Timing} for {@code phases}, plus {@code X-Export-Profile} when {@code withSummary} is set
+     * and a detailed profile was asked for.
+     */
+    private Map<String, String> profileFields(ExportProfile profile, boolean withSummary, Phase... phases) {
+        Map<String, String> fields = new LinkedHashMap<>();
+        if (profile == null) {
+            return fields;
+        }
+        String timing = profile.serverTiming(phases);
+        if (!timing.isEmpty()) {
+            fields.put(SERVER_TIMING, timing);
+        }
+        if (withSummary && profile.detailed()) {
+            try {
+                fields.put(PROFILE_HEADER, objectMapper.writeValueAsString(profile.summary()));
+            } catch (JsonProcessingException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return fields;
+    }
+
+    private HttpHeaders fileHeaders(String filename, String cacheKey) {
         HttpHeaders headers = new HttpHeaders();
-        headers.setContentType(MediaType.parseMediaType(
-                "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet"));
+        headers.setContentType(XLSX);
         headers.setContentDisposition(ContentDisposition.attachment().filename(filename).build());
-        return new ResponseEntity<>(bos.toByteArray(), headers, HttpStatus.OK);
+        if (cacheKey != null) {
+            headers.setETag(etag(cacheKey));
+        }
+        return headers;
+    }
+
+    private PackageStats writeDocument(String endpoint, ExportDocument document, CompressionProfile profile,
+                                       OutputStream out, String cacheKey) throws IOException {
+        long start = System.nanoTime();
+        PackageStats stats;
+        if (cacheKey == null) {
+            stats = document.write(out, profile);
+        } else {
+            ExportResultCache.CapturingOutputStream capture = resultCache.capture(cacheKey, out);
+            stats = document.write(capture, profile);
+            capture.commit();
+        }
+        metrics.record(endpoint, Phase.WRITE, System.nanoTime() - start);
+        metrics.outputBytes(endpoint, stats.compressedBytes());
+        log.debug("Export packaged: {}", stats);
+        return stats;
+    }
+
+    /** {@code out} checked against the request's cancellation on every write, when it has one. */
+    private static OutputStream guard(ExportCancellation cancellation, OutputStream out) {
+        return cancellation != null ? cancellation.guard(out) : out;
+    }
+
+    /** Weak validator: identical payloads give the same sheets, but the package bytes carry timestamps. */
+    private static String etag(String cacheKey) {
+        return "W/\"" + cacheKey + "\"";
+    }
+
+    private static boolean etagMatches(String ifNoneMatch, String cacheKey) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.strip();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals("\"" + cacheKey + "\"")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private PackageStats spool(String endpoint, ExportDocument document, CompressionProfile profile, String cacheKey,
+                               ExportSingleFlight.Flight flight, Path spool) throws Exception {
+        try (document; OutputStream out = Files.newOutputStream(spool)) {
+            PackageStats stats = writeDocument(endpoint, document, profile, flight != null ? flight.tee(out) : out,
+                    cacheKey);
+            if (flight != null) {
+                flight.complete();
+            }
+            return stats;
+        } catch (Exception e) {
+            Files.deleteIfExists(spool);
+            throw e;
+        }
+    }
+
+    private void copyAndDelete(Path spool, OutputStream out) throws IOException {
+        try (InputStream in = Files.newInputStream(spool)) {
+            in.transferTo(out);
+        } finally {
+            Files.deleteIfExists(spool);
+        }
     }
 }
@@ -0,0 +1,119 @@
+package com.javaweb.controller;
+
+import com.javaweb.dto.CouncilEvaluationDto;
+import com.javaweb.dto.GuiderEvaluationDto;
+import com.javaweb.service.CouncilEvaluationExportService;
+import com.javaweb.service.ExportAdmission;
+import com.javaweb.service.ExportCostEstimate;
+import com.javaweb.service.ExportEngine;
+import com.javaweb.service.ExportJob;
+import com.javaweb.service.ExportJobService;
+import com.javaweb.service.ExportMetrics;
+import com.javaweb.service.GuiderEvaluationExportService;
+import com.javaweb.service.ReviewerEvaluationExportService;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.http.*;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
+
+/**
+ * Asynchronous variants of {@link ExportController}: submit returns 202 with a job id, clients poll
+ * the status and download the spooled file once the job is {@code DONE}.
+ */
+@CrossOrigin(origins = "http://localhost:3000")
+@RestController
+@RequestMapping("/api/export/jobs")
+public class ExportJobController {
+    private static final MediaType XLSX = MediaType.parseMediaType(
+            "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet");
+
+    private final ExportJobService jobSvc;
+    private final CouncilEvaluationExportService councilSvc;
+    private final GuiderEvaluationExportService guiderSvc;
+    private final ReviewerEvaluationExportService reviewerSvc;
+    private final ExportAdmission admission;
+
+    public ExportJobController(ExportJobService jobSvc,
+                               CouncilEvaluationExportService councilSvc,
+                               @Qualifier("guiderEvaluationExportService") GuiderEvaluationExportService guiderSvc,
+                               @Qualifier("reviewerEvaluationExportService") ReviewerEvaluationExportService reviewerSvc,
+                               ExportAdmission admission) {
+        this.jobSvc = jobSvc;
+        this.councilSvc = councilSvc;
+        this.guiderSvc = guiderSvc;
+        this.reviewerSvc = reviewerSvc;
+        this.admission = admission;
+    }
+
+    @PostMapping("/xlsx")
+    public ResponseEntity<ExportJob.Status> council(@RequestBody CouncilEvaluationDto.Root payload,
+                                                    @RequestParam(name = "engine", required = false) ExportEngine engine) {
+        return submit(ExportMetrics.COUNCIL, "phieu_cham_hoi_dong.xlsx", engine,
+                () -> councilSvc.estimate(payload), selected -> councilSvc.buildDocument(payload, selected));
+    }
+
+    @PostMapping("/xlsx/guider")
+    public ResponseEntity<ExportJob.Status> guider(@RequestBody GuiderEvaluationDto.Root payload,
+                                                   @RequestParam(name = "engine", required = false) ExportEngine engine) {
+        return submit(ExportMetrics.GUIDER, "phieu_cham_gvhd.xlsx", engine,
+                () -> guiderSvc.estimate(payload), selected -> guiderSvc.buildDocument(payload, selected));
+    }
+
+    @PostMapping("/xlsx/reviewer")
+    public ResponseEntity<ExportJob.Status> reviewer(@RequestBody GuiderEvaluationDto.Root payload,
+                                                     @RequestParam(name = "engine", required = false) ExportEngine engine) {
+        return submit(ExportMetrics.REVIEWER, "phieu_cham_pb.xlsx", engine,
+                () -> reviewerSvc.estimate(payload), selected -> reviewerSvc.buildDocument(payload, selected));
+    }
+
+    @GetMapping("/{id}")
+    public ResponseEntity<ExportJob.Status> status(@PathVariable("id") String id) {
+        return jobSvc.find(id)
+                .map(job -> ResponseEntity.ok(job.snapshot()))
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    /** Download a finished job. Returns 409 while the job is still queued or running, or if it failed. */
+    @GetMapping("/{id}/file")
+    public ResponseEntity<StreamingResponseBody> download(@PathVariable("id") String id) {
+        ExportJob job = jobSvc.find(id).orElse(null);
+        if (job == null) {
+            return ResponseEntity.notFound().build();
+        }
+        if (job.state() != ExportJob.State.DONE) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        }
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(XLSX);
+        headers.setContentDisposition(ContentDisposition.attachment().filename(job.filename()).build());
+        headers.setContentLength(job.size());
+        return new ResponseEntity<>(out -> {
+            try (InputStream in = Files.newInputStream(job.result())) {
+                in.transferTo(out);
+            }
+        }, headers, HttpStatus.OK);
+    }
+
+    private ResponseEntity<ExportJob.Status> submit(String endpoint, String filename, ExportEngine engine,
+                                                    Supplier<ExportCostEstimate> estimate,
+                                                    ExportJobService.DocumentBuilder builder) {
+        ExportJob job;
+        try {
+            job = jobSvc.submit(endpoint, filename, engine, estimate, builder);
+        } catch (RejectedExecutionException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, Long.toString(admission.retryAfterSeconds()))
+                    .build();
+        }
+        return ResponseEntity.accepted()
+                .location(URI.create("/api/export/jobs/" + job.id()))
+                .body(job.snapshot());
+    }
+}
@@ -0,0 +1,47 @@
+package com.javaweb.controller;
+
+import com.javaweb.service.ExportProfile;
+import jakarta.servlet.DispatcherType;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+
+/**
+ * Binds an {@link ExportProfile} to the request thread for the export endpoints, before the request
+ * body is read, so parsing is part of the profile. {@code ?profile=true} asks for the detailed profile
+ * in {@code X-Export-Profile}; such responses are spooled unless {@code ?mode=CHUNKED} is given, in which
+ * case the profile arrives as a trailer. The response body is written on another thread, which binds the profile
+ * itself; see {@link ExportController}.
+ */
+@Component
+public class ExportProfileInterceptor implements AsyncHandlerInterceptor {
+
+    private static final String SCOPE = ExportProfileInterceptor.class.getName() + ".scope";
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        if (request.getDispatcherType() != DispatcherType.ASYNC) {
+            ExportProfile profile = new ExportProfile(Boolean.parseBoolean(request.getParameter("profile")));
+            request.setAttribute(SCOPE, profile.bind());
+        }
+        return true;
+    }
+
+    @Override
+    public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        unbind(request);
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        unbind(request);
+    }
+
+    private static void unbind(HttpServletRequest request) {
+        if (request.getAttribute(SCOPE) instanceof ExportProfile.Scope scope) {
+            request.removeAttribute(SCOPE);
+            scope.close();
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.javaweb.controller;
+
+import com.javaweb.service.ExportMetrics;
+import org.springframework.core.MethodParameter;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.servlet.mvc.method.annotation.RequestBodyAdviceAdapter;
+
+import java.lang.reflect.Type;
+import java.util.Map;
+
+/**
+ * Times the binding of export request bodies as the {@link ExportMetrics.Phase#DESERIALIZE} phase.
+ * The streaming endpoints read their body themselves and are timed by the services.
+ */
+@ControllerAdvice(assignableTypes = {ExportController.class, ExportJobController.class})
+public class ExportRequestTimingAdvice extends RequestBodyAdviceAdapter {
+
+    private static final String STARTED = ExportRequestTimingAdvice.class.getName() + ".started";
+
+    /** Handler method name to the export it builds. */
+    private static final Map<String, String> ENDPOINTS = Map.of(
+            "council", ExportMetrics.COUNCIL,
+            "councilBatch", ExportMetrics.COUNCIL,
+            "guider", ExportMetrics.GUIDER,
+            "reviewer", ExportMetrics.REVIEWER);
+
+    private final ExportMetrics metrics;
+
+    public ExportRequestTimingAdvice(ExportMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public boolean supports(MethodParameter methodParameter, Type targetType,
+                            Class<? extends HttpMessageConverter<?>> converterType) {
+        return methodParameter.getMethod() != null && ENDPOINTS.containsKey(methodParameter.getMethod().getName());
+    }
+
+    @Override
+    public HttpInputMessage beforeBodyRead(HttpInputMessage inputMessage, MethodParameter parameter, Type targetType,
+                                           Class<? extends HttpMessageConverter<?>> converterType) {
+        RequestContextHolder.currentRequestAttributes()
+                .setAttribute(STARTED, System.nanoTime(), RequestAttributes.SCOPE_REQUEST);
+        return inputMessage;
+    }
+
+    @Override
+    public Object afterBodyRead(Object body, HttpInputMessage inputMessage, MethodParameter parameter, Type targetType,
+                                Class<? extends HttpMessageConverter<?>> converterType) {
+        RequestAttributes attributes = RequestContextHolder.currentRequestAttributes();
+        if (attributes.getAttribute(STARTED, RequestAttributes.SCOPE_REQUEST) instanceof Long started) {
+            attributes.removeAttribute(STARTED, RequestAttributes.SCOPE_REQUEST);
+            metrics.record(ENDPOINTS.get(parameter.getMethod().getName()), ExportMetrics.Phase.DESERIALIZE,
+                    System.nanoTime() - started);
+        }
+        return body;
+    }
+}
@@ -0,0 +1,70 @@
+package com.javaweb.service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Small thread-safe LRU cache with hit/miss/eviction counters.
+ * Values are computed outside the lock, so two concurrent misses may both build a value;
+ * the first one stored wins.
+ */
+public class BoundedLruCache<K, V> {
+
+    private final int maxEntries;
+    private final LinkedHashMap<K, V> entries;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public BoundedLruCache(int maxEntries) {
+        this.maxEntries = Math.max(1, maxEntries);
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                if (size() > BoundedLruCache.this.maxEntries) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    public V computeIfAbsent(K key, Function<? super K, ? extends V> loader) {
+        V value;
+        synchronized (entries) {
+            value = entries.get(key);
+        }
+        if (value != null) {
+            hits.incrementAndGet();
+            return value;
+        }
+        misses.incrementAndGet();
+        V computed = loader.apply(key);
+        if (computed == null) {
+            return null;
+        }
+        synchronized (entries) {
+            V existing = entries.putIfAbsent(key, computed);
+            return existing != null ? existing : computed;
+        }
+    }
+
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    public Stats stats() {
+        int size;
+        synchronized (entries) {
+            size = entries.size();
+        }
+        return new Stats(size, maxEntries, hits.get(), misses.get(), evictions.get());
+    }
+
+    public record Stats(int size, int maxEntries, long hits, long misses, long evictions) {}
+}
@@ -0,0 +1,26 @@
+package com.javaweb.service;
+
+import java.util.zip.Deflater;
+
+/**
+ * Deflate level used when packaging an export. Downloads mostly run over the LAN, where the CPU spent
+ * compressing can matter more than the bytes saved.
+ */
+public enum CompressionProfile {
+    /** Deflate level 1: roughly the speed of storing, at a somewhat larger file. */
+    FASTEST(Deflater.BEST_SPEED),
+    /** zlib's default level 6, what POI uses on its own. */
+    BALANCED(Deflater.DEFAULT_COMPRESSION),
+    /** Deflate level 9. */
+    SMALLEST(Deflater.BEST_COMPRESSION);
+
+    private final int level;
+
+    CompressionProfile(int level) {
+        this.level = level;
+    }
+
+    public int level() {
+        return level;
+    }
+}
@@ -0,0 +1,333 @@
+package com.javaweb.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.javaweb.dto.CouncilEvaluationDto;
+import com.javaweb.dto.CouncilEvaluationDto.EvaluationForm;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.ToLongFunction;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Builds many council workbooks into a single ZIP archive. Workbooks are built on a bounded pool
+ * and spooled to temp files; the archive is written in payload order as soon as each entry is ready.
+ * A failing council does not abort the archive, it is reported in {@value #MANIFEST_NAME}.
+ */
+@Service
+public class CouncilBatchExportService {
+
+    private static final Logger log = LoggerFactory.getLogger(CouncilBatchExportService.class);
+
+    static final String MANIFEST_NAME = "manifest.json";
+    private static final int MAX_NAME_LENGTH = 80;
+
+    private final CouncilEvaluationExportService councilSvc;
+    private final ObjectMapper objectMapper;
+    private final int parallelism;
+    private final ExecutorService executor;
+
+    public CouncilBatchExportService(CouncilEvaluationExportService councilSvc,
+                                     ObjectMapper objectMapper,
+                                     @Value("${export.batch.parallelism:2}") int parallelism) {
+        this.councilSvc = councilSvc;
+        this.objectMapper = objectMapper.copy().enable(SerializationFeature.INDENT_OUTPUT);
+        this.parallelism = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        AtomicInteger threadIds = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(this.parallelism, runnable -> {
+            Thread thread = new Thread(runnable, "council-batch-" + threadIds.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Heap to reserve for the archive of {@code payloads}: the {@code parallelism} largest workbooks,
+     * as many as may be built at once, each costing {@code workbookBytes}.
+     */
+    public long heapBytes(List<CouncilEvaluationDto.Root> payloads,
+                          ToLongFunction<CouncilEvaluationDto.Root> workbookBytes) {
+        return payloads.stream()
+                .map(workbookBytes::applyAsLong)
+                .sorted(Comparator.reverseOrder())
+                .limit(parallelism)
+                .mapToLong(Long::longValue)
+                .sum();
+    }
+
+    /**
+     * Write the archive for {@code payloads} to {@code out}. At most {@code 2 x parallelism} workbooks
+     * are built or waiting on disk at any time, so memory stays bounded regardless of batch size.
+     * Each workbook is packaged with {@code compression}, which also applies to the manifest.
+     * The stream is finished but not closed; when the archive fails partway nothing more is written to it.
+     */
+    public void writeArchive(List<CouncilEvaluationDto.Root> payloads, ExportEngine engine,
+                             CompressionProfile compression, OutputStream out) throws IOException {
+        List<CouncilEvaluationDto.Root> roots = payloads != null ? payloads : List.of();
+        AtomicBoolean abandoned = new AtomicBoolean();
+        List<Future<BatchEntry>> pending = new ArrayList<>(roots.size());
+        List<ManifestEntry> manifest = new ArrayList<>(roots.size());
+        int window = Math.max(2, parallelism * 2);
+        int submitted = 0;
+
+        ArchiveOutput archive = new ArchiveOutput(out);
+        try (ZipOutputStream zip = new ZipOutputStream(archive)) {
+            try {
+                zip.setLevel(compression.level());
+                while (submitted < roots.size() && submitted < window) {
+                    pending.add(submit(submitted, roots.get(submitted), engine, compression, abandoned));
+                    submitted++;
+                }
+                for (int i = 0; i < roots.size(); i++) {
+                    ExportCancellation.checkpoint();
+                    BatchEntry entry = await(pending.get(i), i);
+                    pending.set(i, null);
+                    if (submitted < roots.size()) {
+                        pending.add(submit(submitted, roots.get(submitted), engine, compression, abandoned));
+                        submitted++;
+                    }
+                    manifest.add(writeEntry(zip, entry));
+                }
+
+                zip.putNextEntry(new ZipEntry(MANIFEST_NAME));
+                zip.write(objectMapper.writeValueAsBytes(
+                        new Manifest(roots.size(), countFailed(manifest), compression.name(), manifest)));
+                zip.closeEntry();
+                zip.finish();
+            } catch (Throwable e) {
+                // Closing the zip writes its central directory, which would pass a partial archive off as whole
+                archive.discard();
+                throw e;
+            }
+        } finally {
+            abandoned.set(true);
+            for (Future<BatchEntry> future : pending) {
+                if (future != null && !future.cancel(true) && !future.isCancelled()) {
+                    discard(future);
+                }
+            }
+        }
+    }
+
+    private Future<BatchEntry> submit(int index, CouncilEvaluationDto.Root root, ExportEngine engine,
+                                      CompressionProfile compression, AtomicBoolean abandoned) {
+        String name = entryName(index, root);
+        return executor.submit(ExportCancellation.propagate(() -> {
+            BatchEntry entry = build(index, name, root, engine, compression);
+            if (abandoned.get()) {
+                entry.delete();
+            }
+            return entry;
+        }));
+    }
+
+    private BatchEntry build(int index, String name, CouncilEvaluationDto.Root root, ExportEngine engine,
+                             CompressionProfile compression) {
+        Path spool = null;
+        try {
+            ExportDocument document = councilSvc.buildDocument(root, engine);
+            spool = Files.createTempFile("export-batch-", ".xlsx");
+            CRC32 crc = new CRC32();
+            PackageStats stats;
+            try (document;
+                 OutputStream file = Files.newOutputStream(spool);
+                 CheckedOutputStream checked = new CheckedOutputStream(file, crc)) {
+                stats = document.write(checked, compression);
+            }
+            return new BatchEntry(index, name, spool, Files.size(spool), crc.getValue(), stats, null);
+        } catch (CancellationException e) {
+            // The whole archive is being abandoned, not just this entry
+            deleteQuietly(spool);
+            throw e;
+        } catch (Exception e) {
+            log.warn("Council batch entry {} ({}) failed", index, name, e);
+            deleteQuietly(spool);
+            return new BatchEntry(index, name, null, 0, 0, null, describe(e));
+        }
+    }
+
+    /** Copy a built workbook into the archive. Xlsx packages are already deflated, so they are stored as-is. */
+    private ManifestEntry writeEntry(ZipOutputStream zip, BatchEntry entry) throws IOException {
+        if (entry.failed()) {
+            return new ManifestEntry(entry.index(), entry.name(), ManifestEntry.FAILED, 0, null, null, entry.error());
+        }
+        try (InputStream in = Files.newInputStream(entry.spool())) {
+            ZipEntry zipEntry = new ZipEntry(entry.name());
+            zipEntry.setMethod(ZipEntry.STORED);
+            zipEntry.setSize(entry.size());
+            zipEntry.setCompressedSize(entry.size());
+            zipEntry.setCrc(entry.crc());
+            zip.putNextEntry(zipEntry);
+            in.transferTo(zip);
+            zip.closeEntry();
+        } finally {
+            entry.delete();
+        }
+        PackageStats stats = entry.stats();
+        return stats.measured()
+                ? new ManifestEntry(entry.index(), entry.name(), ManifestEntry.OK, entry.size(),
+                        stats.ratio(), stats.compressionMillis(), null)
+                : new ManifestEntry(entry.index(), entry.name(), ManifestEntry.OK, entry.size(), null, null, null);
+    }
+
+    private BatchEntry await(Future<BatchEntry> future, int index) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while building council batch entry " + index, e);
+        } catch (ExecutionException e) {
+            // build() reports its own failures; only errors and cancellation escape to here
+            if (e.getCause() instanceof CancellationException cancelled) {
+                throw cancelled;
+            }
+            if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw new IllegalStateException("Failed to build council batch entry " + index, e.getCause());
+        }
+    }
+
+    private void discard(Future<BatchEntry> future) {
+        try {
+            future.get().delete();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException ignored) {
+            // nothing was spooled
+        }
+    }
+
+    private static int countFailed(List<ManifestEntry> manifest) {
+        int failed = 0;
+        for (ManifestEntry entry : manifest) {
+            if (ManifestEntry.FAILED.equals(entry.status())) {
+                failed++;
+            }
+        }
+        return failed;
+    }
+
+    /** Archive entry name, prefixed with the payload position so names are unique and ordered. */
+    static String entryName(int index, CouncilEvaluationDto.Root root) {
+        EvaluationForm form = root != null ? root.getEvaluationForm() : null;
+        String label = null;
+        if (form != null) {
+            label = form.getTitle() != null && !form.getTitle().isBlank() ? form.getTitle() : form.getEvaluationId();
+        }
+        if (label == null || label.isBlank()) {
+            label = "hoi_dong";
+        }
+        String safe = label.strip().replaceAll("[\\\\/:*?\"<>|\\p{Cntrl}]+", "_");
+        if (safe.length() > MAX_NAME_LENGTH) {
+            safe = safe.substring(0, MAX_NAME_LENGTH);
+        }
+        return String.format("%03d-%s.xlsx", index + 1, safe);
+    }
+
+    private static String describe(Exception e) {
+        return e.getMessage() != null ? e.getClass().getSimpleName() + ": " + e.getMessage() : e.getClass().getSimpleName();
+    }
+
+    private static void deleteQuietly(Path path) {
+        if (path == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            log.warn("Could not delete batch spool {}", path, e);
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * The caller's stream as the zip sees it: closing it leaves the caller's stream open, and once the
+     * archive is discarded nothing more reaches the caller.
+     */
+    private static final class ArchiveOutput extends FilterOutputStream {
+        private boolean discarded;
+
+        ArchiveOutput(OutputStream out) {
+            super(out);
+        }
+
+        void discard() {
+            discarded = true;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (!discarded) {
+                out.write(b);
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (!discarded) {
+                out.write(b, off, len);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (!discarded) {
+                out.flush();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+
+    private record BatchEntry(int index, String name, Path spool, long size, long crc, PackageStats stats,
+                              String error) {
+        boolean failed() {
+            return error != null;
+        }
+
+        void delete() {
+            deleteQuietly(spool);
+        }
+    }
+
+    record Manifest(int total, int failed, String compression, List<ManifestEntry> entries) {
+    }
+
+    /** {@code compressionRatio} and {@code compressionMillis} are null when the engine packaged the file itself. */
+    record ManifestEntry(int index, String file, String status, long bytes,
+                         Double compressionRatio, Double compressionMillis, String error) {
+        static final String OK = "OK";
+        static final String FAILED = "FAILED";
+    }
+}
@@ -7,27 +7,147 @@ import com.javaweb.dto.CouncilEvaluationDto.Lecturer;
 import com.javaweb.dto.CouncilEvaluationDto.Pi;
 import com.javaweb.dto.CouncilEvaluationDto.Score;
 import com.javaweb.dto.CouncilEvaluationDto.StudentEvaluation;
+import com.javaweb.service.ExportMetrics.Phase;
+import com.javaweb.service.SheetModel.RowModel;
+import jakarta.annotation.PreDestroy;
 import org.apache.poi.ss.usermodel.*;
 import org.apache.poi.ss.util.CellRangeAddress;
-import org.apache.poi.ss.util.RegionUtil;
 import org.apache.poi.ss.util.WorkbookUtil;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.apache.poi.xssf.streaming.SXSSFSheet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
 
 @Service
 public class CouncilEvaluationExportService {
 
+    private static final Logger log = LoggerFactory.getLogger(CouncilEvaluationExportService.class);
+
+    private static final Styles STYLES = new Styles();
+
+    /** Header and footer templates kept per column layout; a form only ever uses a handful. */
+    private static final int TEMPLATE_CACHE_SIZE = 32;
+
+    /** TT, M\u00e3 SV, H\u1ecd, T\u00ean, L\u1edbp: the student columns before the scores. */
+    private static final int BASE_COLUMNS = 5;
+
+    private static final String SUMMARY_SHEET_NAME = WorkbookUtil.createSafeSheetName("00-Tong hop");
+
+    /** Placeholders of the sheet header template, in the order {@link #buildSheetHeaderBlock} fills them. */
+    private static final int HEADER_FORM_TITLE = 0;
+    private static final int HEADER_ACADEMIC_YEAR = 1;
+    private static final int HEADER_LECTURER_NAME = 2;
+    private static final int HEADER_LECTURER_ROLE = 3;
+    private static final int HEADER_LECTURER_DEPARTMENT = 4;
+
+    private final ExportWorkbookFactory workbookFactory;
+    private final ExportPackager packager;
+    private final ExportMetrics metrics;
+    private final ExportEngineSelector engineSelector;
+    private final int parallelism;
+    /** Pool for laying out sheet models; null when sheets are built sequentially. */
+    private final ExecutorService sheetExecutor;
+    private final BoundedLruCache<HeaderLayout, SheetTemplate> headerTemplates =
+            new BoundedLruCache<>(TEMPLATE_CACHE_SIZE);
+    /** Note list and signature block, keyed by the last column of the score table. */
+    private final BoundedLruCache<Integer, SheetTemplate> footerTemplates = new BoundedLruCache<>(TEMPLATE_CACHE_SIZE);
+
+    public CouncilEvaluationExportService(ExportWorkbookFactory workbookFactory,
+                                          ExportPackager packager,
+                                          ExportMetrics metrics,
+                                          ExportEngineSelector engineSelector,
+                                          @Value("${export.council.parallelism:1}") int parallelism) {
+        this.workbookFactory = workbookFactory;
+        this.packager = packager;
+        this.metrics = metrics;
+        this.engineSelector = engineSelector;
+        this.parallelism = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        this.sheetExecutor = this.parallelism > 1 ? new ForkJoinPool(this.parallelism) : null;
+        metrics.layoutCache(ExportMetrics.COUNCIL, "header-templates", headerTemplates);
+        metrics.layoutCache(ExportMetrics.COUNCIL, "footer-templates", footerTemplates);
+    }
+
     /** Build the Excel workbook from the payload. Each lecturer gets a dedicated sheet. */
     public Workbook buildWorkbook(CouncilEvaluationDto.Root root) {
-        Workbook workbook = new XSSFWorkbook();
-        Styles styles = new Styles(workbook);
+        return buildWorkbook(root, workbookFactory.defaultEngine());
+    }
+
+    /**
+     * Build the workbook with an explicit engine. {@link ExportEngine#SXSSF} keeps only the
+     * configured row window in memory; merged regions and styles are identical to XSSF. Built
+     * sequentially, it renders score rows as they are laid out and never holds a whole sheet model.
+     * Sheet models may be laid out in parallel, but they are always rendered in sheet order.
+     * {@link ExportEngine#DIRECT} has no POI workbook and is rendered as XSSF here; use
+     * {@link #buildDocument(CouncilEvaluationDto.Root, ExportEngine)} to bypass POI.
+     */
+    public Workbook buildWorkbook(CouncilEvaluationDto.Root root, ExportEngine engine) {
+        Workbook workbook = workbookFactory.create(engine);
+        try {
+            StyleRegistry registry = new StyleRegistry(workbook);
+            PoiSheetRenderer renderer = new PoiSheetRenderer(registry);
+
+            boolean placeholder = engine == ExportEngine.SXSSF && sheetExecutor == null
+                    ? streamSheets(root, workbook, renderer)
+                    : layoutSheets(root, (name, model) -> metrics.time(ExportMetrics.COUNCIL, Phase.POPULATE,
+                            () -> renderer.render(model, workbook.createSheet(name))));
+            if (placeholder) {
+                Sheet sheet = workbook.getSheetAt(0);
+                if (sheet instanceof SXSSFSheet streamingSheet) {
+                    streamingSheet.trackColumnForAutoSizing(0);
+                }
+                sheet.autoSizeColumn(0);
+            }
+
+            logStyleStats(registry);
+            metrics.styles(registry.stats().styles());
+            return workbook;
+        } catch (RuntimeException | Error e) {
+            ExportWorkbookFactory.discard(workbook, e);
+            throw e;
+        }
+    }
+
+    /**
+     * Size of the export {@code root} would produce, estimated without laying anything out. SXSSF only
+     * streams its rows when sheets are built sequentially.
+     */
+    public ExportCostEstimate estimate(CouncilEvaluationDto.Root root) {
+        return ExportCostEstimate.of(root, sheetExecutor == null);
+    }
+
+    /**
+     * Build the export with {@code engine}. {@link ExportEngine#DIRECT} writes the same sheet models
+     * straight to SpreadsheetML; the other engines go through {@link #buildWorkbook}.
+     */
+    public ExportDocument buildDocument(CouncilEvaluationDto.Root root, ExportEngine engine) {
+        ExportEngine effective = engineSelector.select(ExportMetrics.COUNCIL, engine, () -> estimate(root));
+        if (effective != ExportEngine.DIRECT) {
+            return ExportDocument.of(buildWorkbook(root, effective));
+        }
+        List<SpreadsheetMLDocument.SheetPart> parts = new ArrayList<>();
+        layoutSheets(root, (name, model) -> parts.add(new SpreadsheetMLDocument.SheetPart(name, model)));
+        return packager.document(parts);
+    }
+
+    /**
+     * Lay out every sheet and pass it to {@code consumer} in sheet order. Returns true when the payload
+     * had no lecturers and only the placeholder sheet was produced.
+     */
+    private boolean layoutSheets(CouncilEvaluationDto.Root root, SheetConsumer consumer) {
+        Styles styles = STYLES;
 
         EvaluationForm form = root != null ? root.getEvaluationForm() : null;
         List<Lecturer> lecturers = root != null && root.getLecturers() != null
@@ -38,32 +158,198 @@ public class CouncilEvaluationExportService {
                 : Collections.emptyList();
 
         if (lecturers.isEmpty()) {
-            Sheet sheet = workbook.createSheet("Export");
-            Row row = sheet.createRow(0);
-            setCell(row, 0, "Kh\u00f4ng c\u00f3 d\u1eef li\u1ec7u \u0111\u1ec3 xu\u1ea5t", styles.normalLeft);
-            sheet.autoSizeColumn(0);
-            return workbook;
+            SheetModel model = placeholderSheet(styles);
+            metrics.sheet(ExportMetrics.COUNCIL, model);
+            consumer.accept("Export", model);
+            return true;
         }
 
+        long planStart = System.nanoTime();
+        List<Pi> scoreColumns = flattenPis(indicators);
+        PiColumnIndex piColumns = PiColumnIndex.of(piIds(scoreColumns), 0);
+        metrics.record(ExportMetrics.COUNCIL, Phase.LAYOUT, System.nanoTime() - planStart);
+
+        List<String> sheetNames = new ArrayList<>(lecturers.size() + 1);
+        List<Callable<SheetModel>> sheetTasks = new ArrayList<>(lecturers.size() + 1);
         int sheetIndex = 1;
         for (Lecturer lecturer : lecturers) {
-            String name = lecturer.getLecturerName() != null ? lecturer.getLecturerName() : "Gi\u1ea3ng vi\u00ean";
-            String sheetName = WorkbookUtil.createSafeSheetName(String.format("%02d-%s", sheetIndex++, name));
-            Sheet sheet = workbook.createSheet(sheetName);
-            buildLecturerSheet(sheet, form, lecturer, indicators, styles);
+            String sheetName = lecturerSheetName(sheetIndex++, lecturer);
+            sheetNames.add(sheetName);
+            sheetTasks.add(() -> ExportSheetEvent.record(ExportMetrics.COUNCIL, sheetName,
+                    () -> metrics.time(ExportMetrics.COUNCIL, Phase.POPULATE,
+                            () -> buildLecturerSheet(form, lecturer, indicators, scoreColumns, piColumns, styles))));
         }
+        String summaryName = SUMMARY_SHEET_NAME;
+        sheetNames.add(summaryName);
+        sheetTasks.add(() -> ExportSheetEvent.record(ExportMetrics.COUNCIL, summaryName,
+                () -> buildSummarySheet(form, lecturers, styles)));
+
+        assembleSheets(sheetNames, sheetTasks, consumer);
+        return false;
+    }
 
-        buildSummarySheet(workbook, form, lecturers, styles);
+    /**
+     * Sequential SXSSF build. Each sheet's header and footer are still laid out as small models, but
+     * score and summary rows are rendered into the row window as they are produced, as the guider's
+     * streaming export does, so heap stays flat however many students a lecturer has. Returns true when
+     * only the placeholder sheet was produced.
+     */
+    private boolean streamSheets(CouncilEvaluationDto.Root root, Workbook workbook, PoiSheetRenderer renderer) {
+        Styles styles = STYLES;
 
-        return workbook;
+        EvaluationForm form = root != null ? root.getEvaluationForm() : null;
+        List<Lecturer> lecturers = root != null && root.getLecturers() != null
+                ? root.getLecturers()
+                : Collections.emptyList();
+        List<Indicator> indicators = form != null && form.getIndicators() != null
+                ? form.getIndicators()
+                : Collections.emptyList();
+
+        if (lecturers.isEmpty()) {
+            StreamingSheet sheet = new StreamingSheet(workbook.createSheet("Export"), renderer);
+            sheet.render(placeholderSheet(styles));
+            sheet.finish();
+            return true;
+        }
+
+        long planStart = System.nanoTime();
+        List<Pi> scoreColumns = flattenPis(indicators);
+        PiColumnIndex piColumns = PiColumnIndex.of(piIds(scoreColumns), 0);
+        metrics.record(ExportMetrics.COUNCIL, Phase.LAYOUT, System.nanoTime() - planStart);
+
+        int sheetIndex = 1;
+        for (Lecturer lecturer : lecturers) {
+            StreamingSheet sheet = new StreamingSheet(
+                    workbook.createSheet(lecturerSheetName(sheetIndex++, lecturer)), renderer);
+            metrics.time(ExportMetrics.COUNCIL, Phase.POPULATE, () -> {
+                SheetModel header = new SheetModel();
+                int rowIndex = layoutLecturerHeader(header, form, lecturer, indicators, styles);
+                sheet.render(header);
+                rowIndex = populateScores(rowIndex, lecturer, scoreMatrix(lecturer, piColumns, scoreColumns.size()),
+                        styles, sheet::row);
+                SheetModel footer = new SheetModel();
+                stampScoreFooter(footer, rowIndex, lastDataColumn(scoreColumns.size()), lecturer, styles);
+                sheet.render(footer);
+            });
+            sheet.finish();
+        }
+
+        StreamingSheet summary = new StreamingSheet(workbook.createSheet(SUMMARY_SHEET_NAME), renderer);
+        List<SummaryEntry> summaries = metrics.time(ExportMetrics.COUNCIL, Phase.LAYOUT,
+                () -> buildSummaryEntries(lecturers));
+        metrics.time(ExportMetrics.COUNCIL, Phase.POPULATE, () -> {
+            SheetModel header = new SheetModel();
+            configureSummaryColumnWidths(header, lecturers.size());
+            int rowIndex = buildSummaryHeader(header, 0, lecturers, styles);
+            summary.render(header);
+            populateSummaryRows(rowIndex, summaries, styles, summary::row);
+        });
+        summary.finish();
+        return false;
     }
 
-    private void buildLecturerSheet(Sheet sheet,
-                                    EvaluationForm form,
-                                    Lecturer lecturer,
-                                    List<Indicator> indicators,
-                                    Styles styles) {
+    /**
+     * Lay out the sheet models and hand them to {@code consumer} strictly in task order. In parallel
+     * mode at most {@code 2 x parallelism} models are in flight, which bounds the memory held by
+     * models that finished ahead of the sheet currently being rendered.
+     */
+    private void assembleSheets(List<String> names, List<Callable<SheetModel>> tasks, SheetConsumer consumer) {
+        if (sheetExecutor == null) {
+            for (int i = 0; i < tasks.size(); i++) {
+                SheetModel model = call(tasks.get(i));
+                metrics.sheet(ExportMetrics.COUNCIL, model);
+                consumer.accept(names.get(i), model);
+            }
+            return;
+        }
 
+        int window = Math.max(2, parallelism * 2);
+        List<Future<SheetModel>> pending = new ArrayList<>(tasks.size());
+        int submitted = 0;
+        try {
+            while (submitted < tasks.size() && submitted < window) {
+                pending.add(sheetExecutor.submit(ExportCancellation.propagate(ExportProfile.propagate(tasks.get(submitted++)))));
+            }
+            for (int i = 0; i < tasks.size(); i++) {
+                SheetModel model = await(pending.get(i));
+                pending.set(i, null);
+                if (submitted < tasks.size()) {
+                    pending.add(sheetExecutor.submit(ExportCancellation.propagate(ExportProfile.propagate(tasks.get(submitted++)))));
+                }
+                metrics.sheet(ExportMetrics.COUNCIL, model);
+                consumer.accept(names.get(i), model);
+            }
+        } finally {
+            for (Future<SheetModel> future : pending) {
+                if (future != null) {
+                    future.cancel(true);
+                }
+            }
+        }
+    }
+
+    private SheetModel call(Callable<SheetModel> task) {
+        try {
+            return task.call();
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalStateException("Failed to lay out council sheet", e);
+        }
+    }
+
+    private SheetModel await(Future<SheetModel> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while laying out council sheets", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw new IllegalStateException("Failed to lay out council sheet", e.getCause());
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        if (sheetExecutor != null) {
+            sheetExecutor.shutdownNow();
+        }
+    }
+
+    private void logStyleStats(StyleRegistry registry) {
+        if (log.isDebugEnabled()) {
+            StyleRegistry.Stats stats = registry.stats();
+            log.debug("Council export created {} cell styles and {} fonts for {} style lookups",
+                    stats.styles(), stats.fonts(), stats.lookups());
+        }
+    }
+
+    private SheetModel buildLecturerSheet(EvaluationForm form,
+                                          Lecturer lecturer,
+                                          List<Indicator> indicators,
+                                          List<Pi> scoreColumns,
+                                          PiColumnIndex piColumns,
+                                          Styles styles) {
+        SheetModel sheet = new SheetModel();
+        int rowIndex = layoutLecturerHeader(sheet, form, lecturer, indicators, styles);
+        rowIndex = populateScores(rowIndex, lecturer, scoreMatrix(lecturer, piColumns, scoreColumns.size()),
+                styles, sheet::addRow);
+        stampScoreFooter(sheet, rowIndex, lastDataColumn(scoreColumns.size()), lecturer, styles);
+        return sheet;
+    }
+
+    /** Column widths, sheet header and score table header of a lecturer sheet; returns the first score row. */
+    private int layoutLecturerHeader(SheetModel sheet,
+                                     EvaluationForm form,
+                                     Lecturer lecturer,
+                                     List<Indicator> indicators,
+                                     Styles styles) {
         List<Indicator> indicatorList = indicators != null ? indicators : Collections.emptyList();
         List<List<Pi>> groupedPis = new ArrayList<>();
         int totalPiColumns = 0;
@@ -76,37 +362,39 @@ public class CouncilEvaluationExportService {
             totalPiColumns += Math.max(1, pis.size());
         }
 
-        int baseColumns = 5; // TT, M\u00e3 SV, H\u1ecd, T\u00ean, L\u1edbp
+        int baseColumns = BASE_COLUMNS;
         int totalColumns = baseColumns + totalPiColumns + 2; // +1 T\u1ed5ng \u0111i\u1ec3m, +1 Nh\u1eadn x\u00e9t
 
         configureColumnWidths(sheet, totalColumns);
 
         int rowIndex = 0;
         rowIndex = buildSheetHeaderBlock(sheet, rowIndex, form, lecturer, totalColumns - 1, styles);
-        rowIndex = buildEvaluationTableHeader(sheet, rowIndex, indicatorList, groupedPis, styles, baseColumns);
-        populateScores(sheet, rowIndex, lecturer, groupedPis, styles, baseColumns);
+        return buildEvaluationTableHeader(sheet, rowIndex, indicatorList, groupedPis, styles, baseColumns);
     }
 
-    private void buildSummarySheet(Workbook workbook,
-                                   EvaluationForm form,
-                                   List<Lecturer> lecturers,
-                                   Styles styles) {
-        if (lecturers == null || lecturers.isEmpty()) {
-            return;
-        }
-
-        String summaryName = WorkbookUtil.createSafeSheetName("00-Tong hop");
-        Sheet sheet = workbook.createSheet(summaryName);
-        configureSummaryColumnWidths(sheet, lecturers.size());
-
-        int rowIndex = 0;
-        rowIndex = buildSummaryHeader(sheet, rowIndex, lecturers, styles);
+    /** Last column of the score table: the five student columns, one per PI, total and comment. */
+    private int lastDataColumn(int scoreColumns) {
+        return BASE_COLUMNS + scoreColumns + 1;
+    }
 
-        List<SummaryEntry> summaries = buildSummaryEntries(lecturers);
-        populateSummaryRows(sheet, rowIndex, summaries, styles);
+    private SheetModel buildSummarySheet(EvaluationForm form,
+                                         List<Lecturer> lecturers,
+                                         Styles styles) {
+        List<SummaryEntry> summaries = metrics.time(ExportMetrics.COUNCIL, Phase.LAYOUT,
+                () -> buildSummaryEntries(lecturers));
+
+        return metrics.time(ExportMetrics.COUNCIL, Phase.POPULATE, () -> {
+            SheetModel sheet = new SheetModel();
+            configureSummaryColumnWidths(sheet, lecturers.size());
+
+            int rowIndex = 0;
+            rowIndex = buildSummaryHeader(sheet, rowIndex, lecturers, styles);
+            populateSummaryRows(rowIndex, summaries, styles, sheet::addRow);
+            return sheet;
+        });
     }
 
-    private void configureSummaryColumnWidths(Sheet sheet, int lecturerCount) {
+    private void configureSummaryColumnWidths(SheetModel sheet, int lecturerCount) {
         sheet.setColumnWidth(0, 6 * 256);
         sheet.setColumnWidth(1, 18 * 256);
         sheet.setColumnWidth(2, 22 * 256);
@@ -120,15 +408,15 @@ public class CouncilEvaluationExportService {
         sheet.setColumnWidth(scoreStart + lecturerCount + 1, 28 * 256);
     }
 
-    private int buildSummaryHeader(Sheet sheet,
+    private int buildSummaryHeader(SheetModel sheet,
                                    int startRow,
                                    List<Lecturer> lecturers,
                                    Styles styles) {
         int lecturerCount = lecturers.size();
-        Row row0 = sheet.createRow(startRow);
-        Row row1 = sheet.createRow(startRow + 1);
-        Row row2 = sheet.createRow(startRow + 2);
-        Row row3 = sheet.createRow(startRow + 3);
+        RowModel row0 = sheet.createRow(startRow);
+        RowModel row1 = sheet.createRow(startRow + 1);
+        RowModel row2 = sheet.createRow(startRow + 2);
+        RowModel row3 = sheet.createRow(startRow + 3);
 
         merge(sheet, startRow, startRow + 3, 0, 0);
         setCell(row0, 0, "TT", styles.header);
@@ -242,14 +530,15 @@ public class CouncilEvaluationExportService {
         return new ArrayList<>(map.values());
     }
 
-    private void populateSummaryRows(Sheet sheet,
-                                     int startRow,
+    private void populateSummaryRows(int startRow,
                                      List<SummaryEntry> entries,
-                                     Styles styles) {
+                                     Styles styles,
+                                     Consumer<RowModel> rows) {
         int rowIndex = startRow;
         int order = 1;
         for (SummaryEntry entry : entries) {
-            Row row = sheet.createRow(rowIndex++);
+            ExportCancellation.checkpoint();
+            RowModel row = new RowModel(rowIndex++);
             setCell(row, 0, order++, styles.cellCenter);
             setCell(row, 1, nullSafe(entry.studentId), styles.cellCenter);
 
@@ -267,8 +556,9 @@ public class CouncilEvaluationExportService {
             setCell(row, colIdx++, average, styles.summaryGpaCell);
 
             String comments = String.join("\n", entry.comments).trim();
-            CellStyle commentStyle = comments.contains("\n") ? styles.cellLeftWrap : styles.cellLeft;
+            StyleSpec commentStyle = comments.contains("\n") ? styles.cellLeftWrap : styles.cellLeft;
             setCell(row, colIdx, comments, commentStyle);
+            rows.accept(row);
         }
     }
 
@@ -293,7 +583,7 @@ public class CouncilEvaluationExportService {
         return name.isEmpty() ? comment : name + ": " + comment;
     }
 
-    private int buildSheetHeaderBlock(Sheet sheet,
+    private int buildSheetHeaderBlock(SheetModel sheet,
                                       int rowIndex,
                                       EvaluationForm form,
                                       Lecturer lecturer,
@@ -302,6 +592,26 @@ public class CouncilEvaluationExportService {
 
         String academicYear = form != null ? nullSafe(form.getAcademicYear()) : "";
         String formTitle = form != null ? nullSafe(form.getTitle()) : "Phi\u1ebfu \u0111\u00e1nh gi\u00e1";
+        String lecturerName = lecturer != null ? nullSafe(lecturer.getLecturerName()) : "";
+        String lecturerRole = lecturer != null ? nullSafe(lecturer.getRole()) : "";
+        String lecturerDepartment = lecturer != null ? nullSafe(lecturer.getDepartment()) : "";
+
+        SheetTemplate template = headerTemplates.computeIfAbsent(
+                new HeaderLayout(lastColumnIndex, !academicYear.isEmpty()), layout -> layoutSheetHeader(layout, styles));
+        return template.stamp(sheet, rowIndex,
+                formTitle.toUpperCase(), academicYear, lecturerName, lecturerRole, lecturerDepartment);
+    }
+
+    /**
+     * Lay out the "Bi\u1ec3u m\u1eabu ATN.03A" header once per {@link HeaderLayout}; the form and lecturer
+     * fields are left as placeholders for {@link #buildSheetHeaderBlock}.
+     */
+    private SheetTemplate layoutSheetHeader(HeaderLayout layout, Styles styles) {
+        SheetModel sheet = new SheetModel();
+        int rowIndex = 0;
+        int lastColumnIndex = layout.lastColumnIndex();
+        String formTitle = SheetTemplate.slot(HEADER_FORM_TITLE);
+        String academicYear = layout.academicYear() ? SheetTemplate.slot(HEADER_ACADEMIC_YEAR) : "";
 
         int leftBlockEnd = Math.min(4, lastColumnIndex);
         final int minimumRightSpan = 4;
@@ -322,13 +632,13 @@ public class CouncilEvaluationExportService {
             rightBlockStart = leftBlockEnd + minimumGap;
         }
 
-        Row row0 = sheet.createRow(rowIndex++);
+        RowModel row0 = sheet.createRow(rowIndex++);
         if (leftBlockEnd > 0) {
             merge(sheet, row0.getRowNum(), row0.getRowNum(), 0, leftBlockEnd);
         }
         setCell(row0, 0, "Bi\u1ec3u m\u1eabu ATN.03A", styles.italicLeft);
 
-        Row row1 = sheet.createRow(rowIndex++);
+        RowModel row1 = sheet.createRow(rowIndex++);
         if (leftBlockEnd > 0) {
             merge(sheet, row1.getRowNum(), row1.getRowNum(), 0, leftBlockEnd);
         }
@@ -338,7 +648,7 @@ public class CouncilEvaluationExportService {
             setCell(row1, rightBlockStart, "C\u1ed8NG H\u00d2A X\u00c3 H\u1ed8I CH\u1ee6 NGH\u0128A VI\u1ec6T NAM", styles.boldCenter);
         }
 
-        Row row2 = sheet.createRow(rowIndex++);
+        RowModel row2 = sheet.createRow(rowIndex++);
         if (leftBlockEnd > 0) {
             merge(sheet, row2.getRowNum(), row2.getRowNum(), 0, leftBlockEnd);
         }
@@ -348,7 +658,7 @@ public class CouncilEvaluationExportService {
             setCell(row2, rightBlockStart, "\u0110\u1ed9c l\u1eadp - T\u1ef1 do - H\u1ea1nh ph\u00fac", styles.boldUnderlineCenter);
         }
 
-        Row row3 = sheet.createRow(rowIndex++);
+        RowModel row3 = sheet.createRow(rowIndex++);
         if (rightBlockStart != -1) {
             merge(sheet, row3.getRowNum(), row3.getRowNum(), rightBlockStart, lastColumnIndex);
             setCell(row3, rightBlockStart, "H\u00e0 N\u1ed9i, ng\u00e0y .... th\u00e1ng .... n\u0103m ....", styles.centerItalic);
@@ -356,22 +666,22 @@ public class CouncilEvaluationExportService {
 
         rowIndex++; // d\u00f2ng tr\u1ed1ng
 
-        Row titleRow = sheet.createRow(rowIndex++);
+        RowModel titleRow = sheet.createRow(rowIndex++);
         merge(sheet, titleRow.getRowNum(), titleRow.getRowNum(), 0, lastColumnIndex);
-        setCell(titleRow, 0, formTitle.toUpperCase(), styles.title);
+        setCell(titleRow, 0, formTitle, styles.title);
 
-        Row subTitle = sheet.createRow(rowIndex++);
+        RowModel subTitle = sheet.createRow(rowIndex++);
         merge(sheet, subTitle.getRowNum(), subTitle.getRowNum(), 0, lastColumnIndex);
         setCell(subTitle, 0, "\u0110\u1ed1i v\u1edbi \u0111\u1ed3 \u00e1n t\u1ed1t nghi\u1ec7p", styles.normalCenter);
 
         rowIndex++; // d\u00f2ng tr\u1ed1ng
 
-        Row section1 = sheet.createRow(rowIndex++);
+        RowModel section1 = sheet.createRow(rowIndex++);
         setCell(section1, 0, "I. TH\u00d4NG TIN CHUNG", styles.boldLeft);
 
-        String lecturerName = lecturer != null ? nullSafe(lecturer.getLecturerName()) : "";
-        String lecturerRole = lecturer != null ? nullSafe(lecturer.getRole()) : "";
-        String lecturerDepartment = lecturer != null ? nullSafe(lecturer.getDepartment()) : "";
+        String lecturerName = SheetTemplate.slot(HEADER_LECTURER_NAME);
+        String lecturerRole = SheetTemplate.slot(HEADER_LECTURER_ROLE);
+        String lecturerDepartment = SheetTemplate.slot(HEADER_LECTURER_DEPARTMENT);
 
         rowIndex = writeInfoRow(sheet, rowIndex,
                 "Ch\u01b0\u01a1ng tr\u00ecnh \u0111\u00e0o t\u1ea1o \u0111\u1ea1i h\u1ecdc ch\u00ednh quy:", "",
@@ -388,34 +698,34 @@ public class CouncilEvaluationExportService {
                 "Ch\u1ee9c danh trong h\u1ed9i \u0111\u1ed3ng: " + lecturerRole, null,
                 styles, lastColumnIndex);
 
-        Row unitRow = sheet.createRow(rowIndex++);
+        RowModel unitRow = sheet.createRow(rowIndex++);
         merge(sheet, unitRow.getRowNum(), unitRow.getRowNum(), 0, lastColumnIndex);
         setCell(unitRow, 0, "\u0110\u01a1n v\u1ecb c\u00f4ng t\u00e1c: " + lecturerDepartment, styles.normalLeft);
 
         rowIndex++; // d\u00f2ng tr\u1ed1ng
 
-        Row section2 = sheet.createRow(rowIndex++);
+        RowModel section2 = sheet.createRow(rowIndex++);
         setCell(section2, 0, "II. K\u1ebeT QU\u1ea2 \u0110\u00c1NH GI\u00c1", styles.boldLeft);
 
-        Row note = sheet.createRow(rowIndex++);
+        RowModel note = sheet.createRow(rowIndex++);
         merge(sheet, note.getRowNum(), note.getRowNum(), 0, lastColumnIndex);
         setCell(note, 0, "\u0110i\u1ec3m m\u1ed7i ti\u00eau ch\u00ed t\u00ednh theo thang \u0111i\u1ec3m 10, l\u00e0m tr\u00f2n \u0111\u1ebfn m\u1ed9t ch\u1eef s\u1ed1 th\u1eadp ph\u00e2n.", styles.note);
         rowIndex++; // d\u00f2ng tr\u1ed1ng gi\u1eefa ch\u00fa th\u00edch v\u00e0 b\u1ea3ng
 
-        return rowIndex;
+        return SheetTemplate.capture(sheet, rowIndex);
     }
 
-    private int buildEvaluationTableHeader(Sheet sheet,
+    private int buildEvaluationTableHeader(SheetModel sheet,
                                            int startRow,
                                            List<Indicator> indicators,
                                            List<List<Pi>> groupedPis,
                                            Styles styles,
                                            int baseColumns) {
         int headerRowIndex = startRow;
-        Row row0 = sheet.createRow(headerRowIndex);
-        Row row1 = sheet.createRow(headerRowIndex + 1);
-        Row row2 = sheet.createRow(headerRowIndex + 2);
-        Row row3 = sheet.createRow(headerRowIndex + 3);
+        RowModel row0 = sheet.createRow(headerRowIndex);
+        RowModel row1 = sheet.createRow(headerRowIndex + 1);
+        RowModel row2 = sheet.createRow(headerRowIndex + 2);
+        RowModel row3 = sheet.createRow(headerRowIndex + 3);
 
         merge(sheet, headerRowIndex, headerRowIndex + 3, 0, 0);
         setCell(row0, 0, "TT", styles.header);
@@ -501,32 +811,24 @@ public class CouncilEvaluationExportService {
         return headerRowIndex + 4;
     }
 
-    private void populateScores(Sheet sheet,
-                                int startRow,
-                                Lecturer lecturer,
-                                List<List<Pi>> groupedPis,
-                                Styles styles,
-                                int baseColumns) {
+    /** Lay out one row per student and pass each to {@code rows}; returns the row after the table. */
+    private int populateScores(int startRow,
+                               Lecturer lecturer,
+                               ScoreMatrix scores,
+                               Styles styles,
+                               Consumer<RowModel> rows) {
 
         List<StudentEvaluation> evaluations = lecturer.getEvaluations() != null
                 ? lecturer.getEvaluations()
                 : Collections.emptyList();
 
-        List<Pi> flattenedPis = new ArrayList<>();
-        for (List<Pi> pis : groupedPis) {
-            if (pis.isEmpty()) {
-                flattenedPis.add(null);
-            } else {
-                flattenedPis.addAll(pis);
-            }
-        }
-
-        int lastDataColumn = baseColumns + flattenedPis.size() + 1;
-
+        int baseColumns = BASE_COLUMNS;
         int rowIdx = startRow;
         int order = 1;
+        int scoreRow = 0;
         for (StudentEvaluation evaluation : evaluations) {
-            Row row = sheet.createRow(rowIdx++);
+            ExportCancellation.checkpoint();
+            RowModel row = new RowModel(rowIdx++);
             setCell(row, 0, order++, styles.cellCenter);
             setCell(row, 1, nullSafe(evaluation.getStudentId()), styles.cellCenter);
             String[] nameParts = splitStudentName(evaluation.getStudentName());
@@ -534,27 +836,40 @@ public class CouncilEvaluationExportService {
             setCell(row, 3, nameParts[1], styles.cellLeft);
             setCell(row, 4, nullSafe(evaluation.getClassName()), styles.cellCenter);
 
-            Map<String, Double> scores = toScoreMap(evaluation);
             int colIdx = baseColumns;
-            for (Pi pi : flattenedPis) {
-                Double value = null;
-                if (pi != null && pi.getCloPisId() != null) {
-                    value = scores.get(pi.getCloPisId());
-                }
-                setCell(row, colIdx++, value, styles.cellCenter);
+            for (int column = 0; column < scores.columns(); column++) {
+                setScoreCell(row, colIdx++, scores.get(scoreRow, column), styles.cellCenter);
             }
+            scoreRow++;
 
             Double total = evaluation.getEvaluations() != null
                     ? evaluation.getEvaluations().getTotalScore()
                     : null;
             setCell(row, colIdx++, total, styles.cellCenter);
             setCell(row, colIdx, nullSafe(evaluation.getComment()), styles.cellLeft);
+            rows.accept(row);
         }
+        return rowIdx;
+    }
 
+    /** Stamp the note list and signature block below a score table that ends before {@code rowIdx}. */
+    private void stampScoreFooter(SheetModel sheet, int rowIdx, int lastDataColumn, Lecturer lecturer, Styles styles) {
         int noteRow = rowIdx + 1;
 
         noteRow++; // spacer
 
+        footerTemplates.computeIfAbsent(lastDataColumn, column -> layoutScoreFooter(column, styles))
+                .stamp(sheet, noteRow, nullSafe(lecturer.getLecturerName()).toUpperCase());
+    }
+
+    /**
+     * Lay out the note list and signature block under the score table once per table width; the
+     * signer's name is left as a placeholder.
+     */
+    private SheetTemplate layoutScoreFooter(int lastDataColumn, Styles styles) {
+        SheetModel sheet = new SheetModel();
+        int noteRow = 0;
+
         String[] notes = {
                 "Ghi ch\u00fa:",
                 "CLO 3 Thi\u1ebft k\u1ebf ph\u1ea7n c\u1ee9ng v\u00e0 ph\u1ea7n m\u1ec1m, ph\u00e2n t\u00edch d\u1eef li\u1ec7u \u0111\u1ec3 \u0111\u00e1nh gi\u00e1 hi\u1ec7u qu\u1ea3 ho\u1ea1t \u0111\u1ed9ng c\u1ee7a h\u1ec7 th\u1ed1ng \u0111i\u1ec7n t\u1eed \u0111i\u1ec7n t\u1eed.",
@@ -568,9 +883,9 @@ public class CouncilEvaluationExportService {
         };
 
         for (int i = 0; i < notes.length; i++) {
-            Row noteLine = sheet.createRow(noteRow++);
+            RowModel noteLine = sheet.createRow(noteRow++);
             merge(sheet, noteLine.getRowNum(), noteLine.getRowNum(), 0, lastDataColumn);
-            CellStyle noteStyle = (i == 0) ? styles.noteHeading : styles.noteEmphasis;
+            StyleSpec noteStyle = (i == 0) ? styles.noteHeading : styles.noteEmphasis;
             setCell(noteLine, 0, notes[i], noteStyle);
         }
 
@@ -579,24 +894,25 @@ public class CouncilEvaluationExportService {
         int signatureStartColumn = Math.min(1, lastDataColumn);
         int signatureEndColumn = Math.max(signatureStartColumn, Math.min(signatureStartColumn + 3, lastDataColumn));
 
-        Row signerTitle = sheet.createRow(noteRow++);
+        RowModel signerTitle = sheet.createRow(noteRow++);
         merge(sheet, signerTitle.getRowNum(), signerTitle.getRowNum(), signatureStartColumn, signatureEndColumn);
         setCell(signerTitle, signatureStartColumn, "NG\u01af\u1edcI \u0110\u00c1NH GI\u00c1", styles.boldLeft);
 
-        Row signerSpace = sheet.createRow(noteRow++);
+        RowModel signerSpace = sheet.createRow(noteRow++);
         merge(sheet, signerSpace.getRowNum(), signerSpace.getRowNum(), signatureStartColumn, signatureEndColumn);
         setCell(signerSpace, signatureStartColumn, "", styles.normalLeft);
 
-        Row signerSpace2 = sheet.createRow(noteRow++);
+        RowModel signerSpace2 = sheet.createRow(noteRow++);
         merge(sheet, signerSpace2.getRowNum(), signerSpace2.getRowNum(), signatureStartColumn, signatureEndColumn);
         setCell(signerSpace2, signatureStartColumn, "", styles.normalLeft);
 
-        Row signerName = sheet.createRow(noteRow);
+        RowModel signerName = sheet.createRow(noteRow++);
         merge(sheet, signerName.getRowNum(), signerName.getRowNum(), signatureStartColumn, signatureEndColumn);
-        setCell(signerName, signatureStartColumn, nullSafe(lecturer.getLecturerName()).toUpperCase(), styles.boldLeft);
+        setCell(signerName, signatureStartColumn, SheetTemplate.slot(0), styles.boldLeft);
+        return SheetTemplate.capture(sheet, noteRow);
     }
 
-    private int writeInfoRow(Sheet sheet,
+    private int writeInfoRow(SheetModel sheet,
                              int rowIndex,
                              String leftLabel,
                              String leftValue,
@@ -605,7 +921,7 @@ public class CouncilEvaluationExportService {
                              Styles styles,
                              int lastColumnIndex) {
 
-        Row row = sheet.createRow(rowIndex);
+        RowModel row = sheet.createRow(rowIndex);
         int nextColumn = 0;
 
         if (leftLabel != null && !leftLabel.isEmpty()) {
@@ -646,7 +962,7 @@ public class CouncilEvaluationExportService {
         return rowIndex + 1;
     }
 
-    private void configureColumnWidths(Sheet sheet, int totalColumns) {
+    private void configureColumnWidths(SheetModel sheet, int totalColumns) {
         sheet.setColumnWidth(0, 6 * 256);
         sheet.setColumnWidth(1, 18 * 256);
         sheet.setColumnWidth(2, 22 * 256);
@@ -665,6 +981,22 @@ public class CouncilEvaluationExportService {
         }
     }
 
+    /** The only sheet of an export without lecturers. */
+    private SheetModel placeholderSheet(Styles styles) {
+        String message = "Kh\u00f4ng c\u00f3 d\u1eef li\u1ec7u \u0111\u1ec3 xu\u1ea5t";
+        SheetModel model = new SheetModel();
+        RowModel row = model.createRow(0);
+        setCell(row, 0, message, styles.normalLeft);
+        // POI workbooks auto-size this column afterwards; the direct writer cannot measure text.
+        model.setColumnWidth(0, (message.length() + 2) * 256);
+        return model;
+    }
+
+    private String lecturerSheetName(int sheetIndex, Lecturer lecturer) {
+        String name = lecturer.getLecturerName() != null ? lecturer.getLecturerName() : "Gi\u1ea3ng vi\u00ean";
+        return WorkbookUtil.createSafeSheetName(String.format("%02d-%s", sheetIndex, name));
+    }
+
     private String[] splitStudentName(String fullName) {
         if (fullName == null) {
             return new String[]{"", ""};
@@ -682,20 +1014,55 @@ public class CouncilEvaluationExportService {
         return new String[]{lastName, firstName};
     }
 
-    private Map<String, Double> toScoreMap(StudentEvaluation evaluation) {
-        Map<String, Double> map = new HashMap<>();
-        if (evaluation.getEvaluations() == null || evaluation.getEvaluations().getScores() == null) {
-            return map;
+    /** PI columns in sheet order; an indicator without PIs still occupies one (blank) column. */
+    private List<Pi> flattenPis(List<Indicator> indicators) {
+        List<Pi> flattened = new ArrayList<>();
+        for (Indicator indicator : indicators) {
+            List<Pi> pis = indicator != null && indicator.getPis() != null
+                    ? indicator.getPis()
+                    : Collections.emptyList();
+            if (pis.isEmpty()) {
+                flattened.add(null);
+            } else {
+                flattened.addAll(pis);
+            }
+        }
+        return flattened;
+    }
+
+    private List<String> piIds(List<Pi> pis) {
+        List<String> ids = new ArrayList<>(pis.size());
+        for (Pi pi : pis) {
+            ids.add(pi != null ? pi.getCloPisId() : null);
         }
-        for (Score score : evaluation.getEvaluations().getScores()) {
-            if (score.getPiId() != null && score.getScore() != null) {
-                map.putIfAbsent(score.getPiId(), score.getScore());
+        return ids;
+    }
+
+    /** Resolve a lecturer's scores into a dense matrix; the first non-null score per PI wins. */
+    private ScoreMatrix scoreMatrix(Lecturer lecturer, PiColumnIndex piColumns, int columnCount) {
+        List<StudentEvaluation> evaluations = lecturer != null && lecturer.getEvaluations() != null
+                ? lecturer.getEvaluations()
+                : Collections.emptyList();
+        ScoreMatrix matrix = new ScoreMatrix(evaluations.size(), columnCount);
+        for (int row = 0; row < evaluations.size(); row++) {
+            StudentEvaluation evaluation = evaluations.get(row);
+            if (evaluation == null || evaluation.getEvaluations() == null
+                    || evaluation.getEvaluations().getScores() == null) {
+                continue;
+            }
+            for (Score score : evaluation.getEvaluations().getScores()) {
+                if (score == null || score.getScore() == null) {
+                    continue;
+                }
+                for (int column : piColumns.columnsOf(score.getPiId())) {
+                    matrix.offer(row, column, score.getScore());
+                }
             }
         }
-        return map;
+        return matrix;
     }
 
-    private void merge(Sheet sheet, int firstRow, int lastRow, int firstCol, int lastCol) {
+    private void merge(SheetModel sheet, int firstRow, int lastRow, int firstCol, int lastCol) {
         if (firstRow > lastRow || firstCol > lastCol) {
             return;
         }
@@ -705,23 +1072,20 @@ public class CouncilEvaluationExportService {
         sheet.addMergedRegion(new CellRangeAddress(firstRow, lastRow, firstCol, lastCol));
     }
 
-    private void setCell(Row row, int columnIndex, Object value, CellStyle style) {
-        Cell cell = row.getCell(columnIndex);
-        if (cell == null) {
-            cell = row.createCell(columnIndex);
-        }
+    private void setCell(RowModel row, int columnIndex, Object value, StyleSpec style) {
         if (value == null) {
-            cell.setBlank();
+            row.setBlank(columnIndex, style);
         } else if (value instanceof Number) {
-            cell.setCellValue(((Number) value).doubleValue());
+            row.setNumber(columnIndex, ((Number) value).doubleValue(), style);
         } else {
-            cell.setCellValue(String.valueOf(value));
-        }
-        if (style != null) {
-            cell.setCellStyle(style);
+            row.setText(columnIndex, String.valueOf(value), style);
         }
     }
 
+    private void setScoreCell(RowModel row, int columnIndex, double value, StyleSpec style) {
+        row.setNumber(columnIndex, value, style);
+    }
+
     private String nullSafe(String value) {
         return value != null ? value : "";
     }
@@ -730,11 +1094,66 @@ public class CouncilEvaluationExportService {
         return value != null ? String.format("%.0f%%", value * 100) : "";
     }
 
-    private void applyHeaderBorder(Sheet sheet, CellRangeAddress region) {
-        RegionUtil.setBorderTop(BorderStyle.THIN, region, sheet);
-        RegionUtil.setBorderBottom(BorderStyle.THIN, region, sheet);
-        RegionUtil.setBorderLeft(BorderStyle.THIN, region, sheet);
-        RegionUtil.setBorderRight(BorderStyle.THIN, region, sheet);
+    private void applyHeaderBorder(SheetModel sheet, CellRangeAddress region) {
+        sheet.addBorderedRegion(region);
+    }
+
+    /** What shapes the sheet header: its width, and whether the academic year row has a value cell. */
+    private record HeaderLayout(int lastColumnIndex, boolean academicYear) {
+    }
+
+    @FunctionalInterface
+    private interface SheetConsumer {
+        void accept(String sheetName, SheetModel model);
+    }
+
+    /**
+     * One sheet of the sequential SXSSF build, rendered block by block and row by row. It counts what
+     * it wrote so the metrics and the JFR event report the sheet as a whole model would.
+     */
+    private final class StreamingSheet {
+        private final Sheet sheet;
+        private final PoiSheetRenderer renderer;
+        private final ExportSheetEvent event = new ExportSheetEvent();
+        private long rows;
+        private long cells;
+        private int columns;
+        private int mergedRegions;
+
+        StreamingSheet(Sheet sheet, PoiSheetRenderer renderer) {
+            this.sheet = sheet;
+            this.renderer = renderer;
+            event.begin();
+        }
+
+        /** Render a laid-out block: column widths, merges, borders and rows. */
+        void render(SheetModel block) {
+            renderer.render(block, sheet);
+            rows += block.rows().size();
+            cells += block.cellCount();
+            columns = Math.max(columns, block.columnCount());
+            mergedRegions += block.mergedRegions().size();
+        }
+
+        void row(RowModel row) {
+            renderer.renderRow(row, sheet);
+            rows++;
+            cells += row.cellCount();
+            columns = Math.max(columns, row.width());
+        }
+
+        void finish() {
+            event.end();
+            if (event.shouldCommit()) {
+                event.export = ExportMetrics.COUNCIL;
+                event.sheet = sheet.getSheetName();
+                event.rows = (int) rows;
+                event.columns = columns;
+                event.mergedRegions = mergedRegions;
+                event.commit();
+            }
+            metrics.sheets(ExportMetrics.COUNCIL, 1, rows, columns, cells, mergedRegions);
+        }
     }
 
     private static class SummaryEntry {
@@ -754,180 +1173,66 @@ public class CouncilEvaluationExportService {
     }
 
     private static class Styles {
-        final CellStyle boldLeft;
-        final CellStyle boldCenter;
-        final CellStyle boldUnderlineCenter;
-        final CellStyle normalLeft;
-        final CellStyle normalCenter;
-        final CellStyle centerItalic;
-        final CellStyle italicLeft;
-        final CellStyle title;
-        final CellStyle header;
-        final CellStyle headerRed;
-        final CellStyle cellCenter;
-        final CellStyle cellLeft;
-        final CellStyle cellLeftWrap;
-        final CellStyle summaryGpaHeader;
-        final CellStyle summaryGpaCell;
-        final CellStyle note;
-        final CellStyle noteHeading;
-        final CellStyle noteEmphasis;
-
-        Styles(Workbook workbook) {
-            Font normal = workbook.createFont();
-            normal.setFontName("Times New Roman");
-            normal.setFontHeightInPoints((short) 12);
-
-            Font bold = workbook.createFont();
-            bold.setBold(true);
-            bold.setFontName("Times New Roman");
-            bold.setFontHeightInPoints((short) 12);
-
-            Font boldUnderline = workbook.createFont();
-            boldUnderline.setBold(true);
-            boldUnderline.setUnderline(Font.U_SINGLE);
-            boldUnderline.setFontName("Times New Roman");
-            boldUnderline.setFontHeightInPoints((short) 12);
-
-            Font redBold = workbook.createFont();
-            redBold.setBold(true);
-            redBold.setFontName("Times New Roman");
-            redBold.setFontHeightInPoints((short) 12);
-            redBold.setColor(IndexedColors.RED.getIndex());
-
-            Font titleFont = workbook.createFont();
-            titleFont.setBold(true);
-            titleFont.setFontName("Times New Roman");
-            titleFont.setFontHeightInPoints((short) 14);
-
-            Font italic = workbook.createFont();
-            italic.setItalic(true);
-            italic.setFontName("Times New Roman");
-            italic.setFontHeightInPoints((short) 12);
-
-            Font noteFont = workbook.createFont();
-            noteFont.setItalic(true);
-            noteFont.setFontName("Times New Roman");
-            noteFont.setFontHeightInPoints((short) 12);
-            noteFont.setColor(IndexedColors.BLACK.getIndex());
-
-            Font noteHeadingFont = workbook.createFont();
-            noteHeadingFont.setBold(true);
-            noteHeadingFont.setItalic(true);
-            noteHeadingFont.setFontName("Times New Roman");
-            noteHeadingFont.setFontHeightInPoints((short) 12);
-            noteHeadingFont.setColor(IndexedColors.BLACK.getIndex());
-
-            Font noteEmphasisFont = workbook.createFont();
-            noteEmphasisFont.setBold(true);
-            noteEmphasisFont.setItalic(true);
-            noteEmphasisFont.setFontName("Times New Roman");
-            noteEmphasisFont.setFontHeightInPoints((short) 12);
-            noteEmphasisFont.setColor(IndexedColors.BLACK.getIndex());
-
-            boldLeft = workbook.createCellStyle();
-            boldLeft.setFont(bold);
-            boldLeft.setAlignment(HorizontalAlignment.LEFT);
-            boldLeft.setVerticalAlignment(VerticalAlignment.CENTER);
-
-            boldCenter = workbook.createCellStyle();
-            boldCenter.setFont(bold);
-            boldCenter.setAlignment(HorizontalAlignment.CENTER);
-            boldCenter.setVerticalAlignment(VerticalAlignment.CENTER);
-
-            boldUnderlineCenter = workbook.createCellStyle();
-            boldUnderlineCenter.setFont(boldUnderline);
-            boldUnderlineCenter.setAlignment(HorizontalAlignment.CENTER);
-            boldUnderlineCenter.setVerticalAlignment(VerticalAlignment.CENTER);
-
-            normalLeft = workbook.createCellStyle();
-            normalLeft.setFont(normal);
-            normalLeft.setAlignment(HorizontalAlignment.LEFT);
-            normalLeft.setVerticalAlignment(VerticalAlignment.CENTER);
-
-            normalCenter = workbook.createCellStyle();
-            normalCenter.setFont(normal);
-            normalCenter.setAlignment(HorizontalAlignment.CENTER);
-            normalCenter.setVerticalAlignment(VerticalAlignment.CENTER);
-
-            centerItalic = workbook.createCellStyle();
-            centerItalic.setFont(italic);
-            centerItalic.setAlignment(HorizontalAlignment.CENTER);
-            centerItalic.setVerticalAlignment(VerticalAlignment.CENTER);
-
-            italicLeft = workbook.createCellStyle();
-            italicLeft.setFont(italic);
-            italicLeft.setAlignment(HorizontalAlignment.LEFT);
-            italicLeft.setVerticalAlignment(VerticalAlignment.CENTER);
-
-            title = workbook.createCellStyle();
-            title.setFont(titleFont);
-            title.setAlignment(HorizontalAlignment.CENTER);
-            title.setVerticalAlignment(VerticalAlignment.CENTER);
-
-            header = workbook.createCellStyle();
-            header.setFont(bold);
-            header.setAlignment(HorizontalAlignment.CENTER);
-            header.setVerticalAlignment(VerticalAlignment.CENTER);
-            header.setWrapText(true);
-            addBorder(header);
-
-            headerRed = workbook.createCellStyle();
-            headerRed.setFont(redBold);
-            headerRed.setAlignment(HorizontalAlignment.CENTER);
-            headerRed.setVerticalAlignment(VerticalAlignment.CENTER);
-            headerRed.setWrapText(true);
-            addBorder(headerRed);
-
-            cellCenter = workbook.createCellStyle();
-            cellCenter.setFont(normal);
-            cellCenter.setAlignment(HorizontalAlignment.CENTER);
-            cellCenter.setVerticalAlignment(VerticalAlignment.CENTER);
-            addBorder(cellCenter);
-
-            cellLeft = workbook.createCellStyle();
-            cellLeft.setFont(normal);
-            cellLeft.setAlignment(HorizontalAlignment.LEFT);
-            cellLeft.setVerticalAlignment(VerticalAlignment.CENTER);
-            addBorder(cellLeft);
-
-            cellLeftWrap = workbook.createCellStyle();
-            cellLeftWrap.cloneStyleFrom(cellLeft);
-            cellLeftWrap.setWrapText(true);
-
-            summaryGpaCell = workbook.createCellStyle();
-            summaryGpaCell.cloneStyleFrom(cellCenter);
-            summaryGpaCell.setFillForegroundColor(IndexedColors.LIGHT_YELLOW.getIndex());
-            summaryGpaCell.setFillPattern(FillPatternType.SOLID_FOREGROUND);
-
-            summaryGpaHeader = workbook.createCellStyle();
-            summaryGpaHeader.cloneStyleFrom(header);
-            summaryGpaHeader.setFillForegroundColor(IndexedColors.LIGHT_YELLOW.getIndex());
-            summaryGpaHeader.setFillPattern(FillPatternType.SOLID_FOREGROUND);
-
-            note = workbook.createCellStyle();
-            note.setFont(noteFont);
-            note.setAlignment(HorizontalAlignment.LEFT);
-            note.setVerticalAlignment(VerticalAlignment.CENTER);
-
-            noteHeading = workbook.createCellStyle();
-            noteHeading.setFont(noteHeadingFont);
-            noteHeading.setAlignment(HorizontalAlignment.LEFT);
-            noteHeading.setVerticalAlignment(VerticalAlignment.CENTER);
-            noteHeading.setWrapText(true);
-
-            noteEmphasis = workbook.createCellStyle();
-            noteEmphasis.setFont(noteEmphasisFont);
-            noteEmphasis.setAlignment(HorizontalAlignment.LEFT);
-            noteEmphasis.setVerticalAlignment(VerticalAlignment.CENTER);
-            noteEmphasis.setWrapText(true);
-        }
-
-        private void addBorder(CellStyle style) {
-            style.setBorderTop(BorderStyle.THIN);
-            style.setBorderBottom(BorderStyle.THIN);
-            style.setBorderLeft(BorderStyle.THIN);
-            style.setBorderRight(BorderStyle.THIN);
+        final StyleSpec boldLeft;
+        final StyleSpec boldCenter;
+        final StyleSpec boldUnderlineCenter;
+        final StyleSpec normalLeft;
+        final StyleSpec normalCenter;
+        final StyleSpec centerItalic;
+        final StyleSpec italicLeft;
+        final StyleSpec title;
+        final StyleSpec header;
+        final StyleSpec headerRed;
+        final StyleSpec cellCenter;
+        final StyleSpec cellLeft;
+        final StyleSpec cellLeftWrap;
+        final StyleSpec summaryGpaHeader;
+        final StyleSpec summaryGpaCell;
+        final StyleSpec note;
+        final StyleSpec noteHeading;
+        final StyleSpec noteEmphasis;
+
+        Styles() {
+            FontSpec normal = FontSpec.of("Times New Roman", 12);
+            FontSpec bold = normal.withBold();
+            FontSpec boldUnderline = bold.withUnderline(Font.U_SINGLE);
+            FontSpec redBold = bold.withColor(IndexedColors.RED.getIndex());
+            FontSpec titleFont = FontSpec.of("Times New Roman", 14).withBold();
+            FontSpec italic = normal.withItalic();
+            FontSpec noteFont = italic.withColor(IndexedColors.BLACK.getIndex());
+            FontSpec noteEmphasisFont = bold.withItalic().withColor(IndexedColors.BLACK.getIndex());
+
+            StyleSpec headerSpec = StyleSpec.of(bold, HorizontalAlignment.CENTER, VerticalAlignment.CENTER)
+                    .withWrapText()
+                    .withThinBorder();
+            StyleSpec cellCenterSpec = StyleSpec.of(normal, HorizontalAlignment.CENTER, VerticalAlignment.CENTER)
+                    .withThinBorder();
+            StyleSpec cellLeftSpec = StyleSpec.of(normal, HorizontalAlignment.LEFT, VerticalAlignment.CENTER)
+                    .withThinBorder();
+
+            boldLeft = StyleSpec.of(bold, HorizontalAlignment.LEFT, VerticalAlignment.CENTER);
+            boldCenter = StyleSpec.of(bold, HorizontalAlignment.CENTER, VerticalAlignment.CENTER);
+            boldUnderlineCenter =
+                    StyleSpec.of(boldUnderline, HorizontalAlignment.CENTER, VerticalAlignment.CENTER);
+            normalLeft = StyleSpec.of(normal, HorizontalAlignment.LEFT, VerticalAlignment.CENTER);
+            normalCenter = StyleSpec.of(normal, HorizontalAlignment.CENTER, VerticalAlignment.CENTER);
+            centerItalic = StyleSpec.of(italic, HorizontalAlignment.CENTER, VerticalAlignment.CENTER);
+            italicLeft = StyleSpec.of(italic, HorizontalAlignment.LEFT, VerticalAlignment.CENTER);
+            title = StyleSpec.of(titleFont, HorizontalAlignment.CENTER, VerticalAlignment.CENTER);
+            header = headerSpec;
+            headerRed = StyleSpec.of(redBold, HorizontalAlignment.CENTER, VerticalAlignment.CENTER)
+                    .withWrapText()
+                    .withThinBorder();
+            cellCenter = cellCenterSpec;
+            cellLeft = cellLeftSpec;
+            cellLeftWrap = cellLeftSpec.withWrapText();
+            summaryGpaCell = cellCenterSpec.withSolidFill(IndexedColors.LIGHT_YELLOW.getIndex());
+            summaryGpaHeader = headerSpec.withSolidFill(IndexedColors.LIGHT_YELLOW.getIndex());
+            note = StyleSpec.of(noteFont, HorizontalAlignment.LEFT, VerticalAlignment.CENTER);
+            StyleSpec noteEmphasisSpec = StyleSpec.of(noteEmphasisFont, HorizontalAlignment.LEFT, VerticalAlignment.CENTER)
+                    .withWrapText();
+            noteHeading = noteEmphasisSpec;
+            noteEmphasis = noteEmphasisSpec;
         }
     }
 }
@@ -0,0 +1,112 @@
+package com.javaweb.service;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * One package part rendered and compressed in memory with its own raw deflate stream, ready to be
+ * copied into the archive by {@link DeflatedZipWriter}. Because every part is self-contained, parts
+ * can be deflated on different threads.
+ */
+final class DeflatedPart {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final String name;
+    private final ByteArrayOutputStream compressed;
+    private final long crc;
+    private final long size;
+    private final long deflateNanos;
+
+    private DeflatedPart(String name, ByteArrayOutputStream compressed, long crc, long size, long deflateNanos) {
+        this.name = name;
+        this.compressed = compressed;
+        this.crc = crc;
+        this.size = size;
+        this.deflateNanos = deflateNanos;
+    }
+
+    /** Render {@code content} as UTF-8 and deflate it at {@code level}. */
+    static DeflatedPart deflate(String name, int level, PartContent content) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(BUFFER_SIZE);
+        Deflater deflater = new Deflater(level, true);
+        CRC32 crc = new CRC32();
+        TimedDeflaterOutputStream deflating;
+        try {
+            deflating = new TimedDeflaterOutputStream(compressed, deflater);
+            CheckedOutputStream checked = new CheckedOutputStream(deflating, crc);
+            Writer writer = new BufferedWriter(new OutputStreamWriter(checked, StandardCharsets.UTF_8), BUFFER_SIZE);
+            content.write(writer);
+            writer.flush();
+            deflating.finish();
+        } finally {
+            deflater.end();
+        }
+        return new DeflatedPart(name, compressed, crc.getValue(), deflating.count, deflating.nanos);
+    }
+
+    String name() {
+        return name;
+    }
+
+    long crc() {
+        return crc;
+    }
+
+    /** Uncompressed size. */
+    long size() {
+        return size;
+    }
+
+    /** Time spent in the deflater, excluding rendering the content. */
+    long deflateNanos() {
+        return deflateNanos;
+    }
+
+    long compressedSize() {
+        return compressed.size();
+    }
+
+    void writeCompressedTo(OutputStream out) throws IOException {
+        compressed.writeTo(out);
+    }
+
+    @FunctionalInterface
+    interface PartContent {
+        void write(Writer out) throws IOException;
+    }
+
+    /** Counts the uncompressed bytes and the time spent compressing them. */
+    private static final class TimedDeflaterOutputStream extends DeflaterOutputStream {
+        private long count;
+        private long nanos;
+
+        TimedDeflaterOutputStream(OutputStream out, Deflater deflater) {
+            super(out, deflater, BUFFER_SIZE);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            long start = System.nanoTime();
+            super.write(b, off, len);
+            nanos += System.nanoTime() - start;
+            count += len;
+        }
+
+        @Override
+        public void finish() throws IOException {
+            long start = System.nanoTime();
+            super.finish();
+            nanos += System.nanoTime() - start;
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.javaweb.service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.ZipEntry;
+
+/**
+ * Minimal ZIP container writer for parts that were already deflated by {@link DeflatedPart}.
+ * {@code ZipOutputStream} can only compress on the calling thread, so the local headers, the
+ * central directory and the end record are written here directly. Entries carry a fixed
+ * timestamp, so the same sheets always give the same bytes.
+ */
+final class DeflatedZipWriter {
+
+    private static final int LOCAL_HEADER = 0x04034b50;
+    private static final int CENTRAL_HEADER = 0x02014b50;
+    private static final int END_OF_CENTRAL_DIRECTORY = 0x06054b50;
+    private static final int VERSION = 20;
+    /** General purpose flag bit 11: names are UTF-8. */
+    private static final int UTF8_NAMES = 0x0800;
+    /** 1980-01-01 00:00 in MS-DOS date/time format. */
+    private static final int DOS_DATE = (1 << 5) | 1;
+    private static final int DOS_TIME = 0;
+    private static final long MAX_32 = 0xFFFFFFFFL;
+
+    private final OutputStream out;
+    private final List<Entry> entries = new ArrayList<>();
+    private final byte[] header = new byte[46];
+    private long offset;
+    private long uncompressedBytes;
+    private long deflateNanos;
+
+    DeflatedZipWriter(OutputStream out) {
+        this.out = out;
+    }
+
+    void add(DeflatedPart part) throws IOException {
+        if (part.size() > MAX_32 || part.compressedSize() > MAX_32 || offset > MAX_32) {
+            throw new IOException("Part " + part.name() + " needs ZIP64, which this writer does not support");
+        }
+        byte[] name = part.name().getBytes(StandardCharsets.UTF_8);
+        Entry entry = new Entry(name, part.crc(), part.compressedSize(), part.size(), offset);
+        entries.add(entry);
+
+        int p = 0;
+        p = putInt(header, p, LOCAL_HEADER);
+        p = putShort(header, p, VERSION);
+        p = putShort(header, p, UTF8_NAMES);
+        p = putShort(header, p, ZipEntry.DEFLATED);
+        p = putShort(header, p, DOS_TIME);
+        p = putShort(header, p, DOS_DATE);
+        p = putInt(header, p, (int) entry.crc());
+        p = putInt(header, p, (int) entry.compressedSize());
+        p = putInt(header, p, (int) entry.size());
+        p = putShort(header, p, name.length);
+        p = putShort(header, p, 0);
+        out.write(header, 0, p);
+        out.write(name);
+        part.writeCompressedTo(out);
+        offset += p + name.length + entry.compressedSize();
+        uncompressedBytes += part.size();
+        deflateNanos += part.deflateNanos();
+    }
+
+    /** Write the central directory. The underlying stream is left open. */
+    void finish() throws IOException {
+        if (entries.size() > 0xFFFF || offset > MAX_32) {
+            throw new IOException("Archive needs ZIP64, which this writer does not support");
+        }
+        long directoryStart = offset;
+        for (Entry entry : entries) {
+            int p = 0;
+            p = putInt(header, p, CENTRAL_HEADER);
+            p = putShort(header, p, VERSION);
+            p = putShort(header, p, VERSION);
+            p = putShort(header, p, UTF8_NAMES);
+            p = putShort(header, p, ZipEntry.DEFLATED);
+            p = putShort(header, p, DOS_TIME);
+            p = putShort(header, p, DOS_DATE);
+            p = putInt(header, p, (int) entry.crc());
+            p = putInt(header, p, (int) entry.compressedSize());
+            p = putInt(header, p, (int) entry.size());
+            p = putShort(header, p, entry.name().length);
+            p = putShort(header, p, 0);
+            p = putShort(header, p, 0);
+            p = putShort(header, p, 0);
+            p = putShort(header, p, 0);
+            p = putInt(header, p, 0);
+            p = putInt(header, p, (int) entry.offset());
+            out.write(header, 0, p);
+            out.write(entry.name());
+            offset += p + entry.name().length;
+        }
+
+        int p = 0;
+        p = putInt(header, p, END_OF_CENTRAL_DIRECTORY);
+        p = putShort(header, p, 0);
+        p = putShort(header, p, 0);
+        p = putShort(header, p, entries.size());
+        p = putShort(header, p, entries.size());
+        p = putInt(header, p, (int) (offset - directoryStart));
+        p = putInt(header, p, (int) directoryStart);
+        p = putShort(header, p, 0);
+        out.write(header, 0, p);
+        offset += p;
+        out.flush();
+    }
+
+    /** Totals over the parts added so far; the compressed size includes the zip structures written. */
+    PackageStats stats(CompressionProfile profile) {
+        return new PackageStats(profile, uncompressedBytes, offset, deflateNanos);
+    }
+
+    private static int putShort(byte[] buffer, int position, int value) {
+        buffer[position] = (byte) value;
+        buffer[position + 1] = (byte) (value >>> 8);
+        return position + 2;
+    }
+
+    private static int putInt(byte[] buffer, int position, int value) {
+        putShort(buffer, position, value);
+        putShort(buffer, position + 2, value >>> 16);
+        return position + 4;
+    }
+
+    private record Entry(byte[] name, long crc, long compressedSize, long size, long offset) {}
+}
@@ -0,0 +1,132 @@
+package com.javaweb.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Admission control for synchronous exports. Each request reserves the heap its export is expected to
+ * need from one pool shared by all requests before anything is built, and gives it back once the response
+ * is written. The pool is a fraction of {@link Runtime#maxMemory()}, which the JVM derives from the
+ * container's cgroup memory limit, so a burst of exports queues instead of running the container out of
+ * memory.
+ * <p>
+ * Requests wait in arrival order for at most {@code export.admission.max-wait}; after that they are
+ * rejected with {@link RejectedExecutionException} and the client is told to retry. A single export
+ * larger than the whole pool is still admitted, alone.
+ */
+@Component
+public class ExportAdmission {
+
+    /** Reservations are counted in KiB so the pool fits a semaphore's int permits. */
+    private static final int UNIT = 1024;
+
+    private final ExportMetrics metrics;
+    private final boolean enabled;
+    private final int poolUnits;
+    private final Semaphore pool;
+    private final long streamingBytes;
+    private final Duration maxWait;
+    private final Duration retryAfter;
+
+    public ExportAdmission(ExportMetrics metrics,
+                           @Value("${export.admission.enabled:true}") boolean enabled,
+                           @Value("${export.admission.heap-fraction:0.6}") double heapFraction,
+                           @Value("${export.admission.streaming-bytes:16777216}") long streamingBytes,
+                           @Value("${export.admission.max-wait:PT10S}") Duration maxWait,
+                           @Value("${export.admission.retry-after:PT5S}") Duration retryAfter) {
+        this.metrics = metrics;
+        this.enabled = enabled;
+        long poolBytes = (long) (Runtime.getRuntime().maxMemory() * Math.min(1.0, Math.max(0.0, heapFraction)));
+        this.poolUnits = (int) Math.max(1, Math.min(Integer.MAX_VALUE, poolBytes / UNIT));
+        this.pool = new Semaphore(poolUnits, true);
+        this.streamingBytes = streamingBytes;
+        this.maxWait = maxWait;
+        this.retryAfter = retryAfter;
+        metrics.admissionPool(() -> (long) pool.availablePermits() * UNIT, (long) poolUnits * UNIT);
+    }
+
+    /**
+     * Reserve {@code bytes} of the pool for {@code endpoint}'s export, waiting up to the configured
+     * deadline. The returned permit must be closed when the export's memory has been released.
+     *
+     * @throws RejectedExecutionException when the reservation does not fit within the deadline
+     */
+    public Permit acquire(String endpoint, long bytes) {
+        if (!enabled) {
+            return new Permit(null, 0);
+        }
+        int units = units(bytes);
+        long start = System.nanoTime();
+        boolean admitted;
+        try {
+            admitted = pool.tryAcquire(units, maxWait.toNanos(), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            admitted = false;
+        }
+        metrics.admission(endpoint, admitted, System.nanoTime() - start);
+        if (!admitted) {
+            throw new RejectedExecutionException("Export memory pool is busy; " + endpoint + " export of ~"
+                    + bytes / (1024 * 1024) + " MB was not admitted within " + maxWait);
+        }
+        return new Permit(pool, units);
+    }
+
+    /**
+     * Reserve {@code bytes} for a background export, waiting as long as it takes: nobody is holding a
+     * request open for it, so it queues behind the interactive exports instead of failing.
+     */
+    public Permit await(String endpoint, long bytes) throws InterruptedException {
+        if (!enabled) {
+            return new Permit(null, 0);
+        }
+        int units = units(bytes);
+        long start = System.nanoTime();
+        pool.acquire(units);
+        metrics.admission(endpoint, true, System.nanoTime() - start);
+        return new Permit(pool, units);
+    }
+
+    /**
+     * Reserve for an export read from a stream, whose size is unknown up front; it keeps only a row
+     * window in memory, so a fixed {@code export.admission.streaming-bytes} stands in for the estimate.
+     */
+    public Permit acquireStreaming(String endpoint) {
+        return acquire(endpoint, streamingBytes);
+    }
+
+    /** Pool units for {@code bytes}; an export larger than the pool reserves all of it. */
+    private int units(long bytes) {
+        return (int) Math.max(1, Math.min(poolUnits, (bytes + UNIT - 1) / UNIT));
+    }
+
+    /** Seconds a rejected client should wait before retrying, for {@code Retry-After}. */
+    public long retryAfterSeconds() {
+        return Math.max(1, retryAfter.toSeconds());
+    }
+
+    /** A reservation from the pool; closing it more than once gives the memory back only once. */
+    public static final class Permit implements AutoCloseable {
+        private final Semaphore pool;
+        private final int units;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Permit(Semaphore pool, int units) {
+            this.pool = pool;
+            this.units = units;
+        }
+
+        @Override
+        public void close() {
+            if (pool != null && released.compareAndSet(false, true)) {
+                pool.release(units);
+            }
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package com.javaweb.service;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+/**
+ * Cooperative cancellation of one export request. Layout and rendering loops call {@link #checkpoint()}
+ * once per row; after the request's deadline passes or its client went away, the next checkpoint throws
+ * {@link CancellationException}, which unwinds the build like any other failure so the workbook, its
+ * temp files and the request's admission are released straight away instead of when the build would
+ * have finished.
+ * <p>
+ * Like {@link ExportProfile}, the cancellation is bound to the request thread, the thread writing the
+ * response and, through {@link #propagate(Callable)}, to pool threads working on the same export.
+ * <p>
+ * Work that other requests are waiting on can {@linkplain #deferDeadlineWhile defer} the deadline, so
+ * one client's short timeout does not fail everybody else's export.
+ */
+public final class ExportCancellation {
+
+    private static final ThreadLocal<ExportCancellation> CURRENT = new ThreadLocal<>();
+
+    public enum Reason {
+        /** The client stopped reading: writing the response failed. */
+        DISCONNECT,
+        /** The deadline the client gave in its request passed. */
+        DEADLINE;
+
+        final String tag = name().toLowerCase(Locale.ROOT);
+    }
+
+    private final long deadlineNanos;
+    private final boolean hasDeadline;
+    private final Consumer<Reason> onCancel;
+    private final AtomicReference<Reason> reason = new AtomicReference<>();
+    private volatile BooleanSupplier deadlineDeferred = () -> false;
+
+    /**
+     * @param timeout  time left for the export, or null for none
+     * @param onCancel told once, on the thread that first notices the cancellation
+     */
+    public ExportCancellation(Duration timeout, Consumer<Reason> onCancel) {
+        this.hasDeadline = timeout != null;
+        this.deadlineNanos = hasDeadline ? System.nanoTime() + timeout.toNanos() : 0;
+        this.onCancel = onCancel;
+    }
+
+    /** The cancellation bound to this thread, or null. */
+    public static ExportCancellation current() {
+        return CURRENT.get();
+    }
+
+    /** Throw {@link CancellationException} if the export bound to this thread has been cancelled. */
+    public static void checkpoint() {
+        ExportCancellation cancellation = CURRENT.get();
+        if (cancellation != null) {
+            cancellation.check();
+        }
+    }
+
+    /** Wrap {@code task} so it runs bound to the current cancellation, if there is one. */
+    public static <T> Callable<T> propagate(Callable<T> task) {
+        ExportCancellation cancellation = CURRENT.get();
+        if (cancellation == null) {
+            return task;
+        }
+        return () -> {
+            Scope scope = cancellation.bind();
+            try {
+                return task.call();
+            } finally {
+                scope.close();
+            }
+        };
+    }
+
+    /** Bind this cancellation to the current thread until the scope is closed. */
+    public Scope bind() {
+        return new Scope(this);
+    }
+
+    /**
+     * Bind {@code cancellation} to the current thread until the scope is closed; when it is null the thread
+     * has no cancellation for that long.
+     */
+    public static Scope scope(ExportCancellation cancellation) {
+        return new Scope(cancellation);
+    }
+
+    /**
+     * Do not enforce the deadline while {@code deferred} answers true, for instance while other requests
+     * follow this export's build. A disconnect still cancels.
+     */
+    public void deferDeadlineWhile(BooleanSupplier deferred) {
+        this.deadlineDeferred = deferred;
+    }
+
+    public void check() {
+        Reason cancelled = reason.get();
+        if (cancelled == null && hasDeadline && System.nanoTime() - deadlineNanos >= 0
+                && !deadlineDeferred.getAsBoolean()) {
+            cancel(Reason.DEADLINE);
+            cancelled = reason.get();
+        }
+        if (cancelled != null) {
+            throw new CancellationException("Export cancelled: " + cancelled.tag);
+        }
+    }
+
+    /** Cancel the export; only the first reason counts. */
+    public void cancel(Reason cancelled) {
+        if (reason.compareAndSet(null, cancelled)) {
+            onCancel.accept(cancelled);
+        }
+    }
+
+    /** Why the export was cancelled, or null while it is not. */
+    public Reason reason() {
+        return reason.get();
+    }
+
+    /**
+     * Wrap the response stream: every write is a checkpoint, so serializing a large package stops at the
+     * deadline too, and a failed write cancels the work still running for the export on other threads.
+     */
+    public OutputStream guard(OutputStream out) {
+        return new FilterOutputStream(out) {
+            @Override
+            public void write(int b) throws IOException {
+                check();
+                try {
+                    out.write(b);
+                } catch (IOException e) {
+                    cancel(Reason.DISCONNECT);
+                    throw e;
+                }
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                check();
+                try {
+                    out.write(b, off, len);
+                } catch (IOException e) {
+                    cancel(Reason.DISCONNECT);
+                    throw e;
+                }
+            }
+
+            @Override
+            public void flush() throws IOException {
+                try {
+                    out.flush();
+                } catch (IOException e) {
+                    cancel(Reason.DISCONNECT);
+                    throw e;
+                }
+            }
+
+            @Override
+            public void close() {
+                // The servlet container owns the response stream.
+            }
+        };
+    }
+
+    /** A thread's binding to a cancellation; closing it restores the previous binding. */
+    public static final class Scope implements AutoCloseable {
+        private final ExportCancellation previous;
+
+        private Scope(ExportCancellation cancellation) {
+            this.previous = CURRENT.get();
+            CURRENT.set(cancellation);
+        }
+
+        @Override
+        public void close() {
+            if (previous != null) {
+                CURRENT.set(previous);
+            } else {
+                CURRENT.remove();
+            }
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package com.javaweb.service;
+
+import com.javaweb.dto.CouncilEvaluationDto;
+import com.javaweb.dto.GuiderEvaluationDto;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Rough size of an export, read off the request payload before anything is laid out, and the heap
+ * each engine is expected to need for it. The per-item costs are deliberately coarse: they only have
+ * to rank payloads against {@link ExportEngineSelector}'s budget.
+ *
+ * @param sheets        worksheets the export will have
+ * @param columns       cells in the widest row
+ * @param cells         cells that will be set, header and footer rows included
+ * @param mergedRegions merged regions across all sheets
+ * @param stringBytes   characters of payload text that ends up in cells, as UTF-16 bytes
+ * @param streamed      whether an SXSSF build renders rows as they are laid out instead of from whole
+ *                      sheet models
+ */
+public record ExportCostEstimate(int sheets, int columns, long cells, long mergedRegions, long stringBytes,
+                                 boolean streamed) {
+
+    /** Heap per cell of an {@code XSSFWorkbook}: the XMLBeans cell, its row slot and the POI wrapper. */
+    private static final long XSSF_CELL_BYTES = 800;
+    private static final long XSSF_MERGED_REGION_BYTES = 300;
+    /** Heap per cell of a row in the SXSSF window; strings are written inline, so none are retained. */
+    private static final long SXSSF_CELL_BYTES = 200;
+    /** Heap per cell of a {@link SheetModel}: one slot in each of the row's parallel arrays. */
+    private static final long MODEL_CELL_BYTES = 48;
+    private static final long MODEL_MERGED_REGION_BYTES = 40;
+    /** Deflated worksheet XML per cell, held until the part is copied into the archive. */
+    private static final long PACKAGED_CELL_BYTES = 8;
+    /** Header, notes and signature rows of a council lecturer sheet, and the merges they use. */
+    private static final int COUNCIL_FIXED_ROWS = 35;
+    private static final int COUNCIL_FIXED_MERGES = 40;
+    /** Title and column-header rows of the guider and reviewer sheet. */
+    private static final int GUIDER_HEADER_ROWS = 6;
+
+    /** Heap needed to hold the whole workbook in memory with XSSF. */
+    public long xssfBytes() {
+        return cells * XSSF_CELL_BYTES + mergedRegions * XSSF_MERGED_REGION_BYTES + stringBytes;
+    }
+
+    /** Heap needed by the direct writer: the sheet models plus their compressed worksheet parts. */
+    public long directBytes() {
+        return modelBytes() + cells * PACKAGED_CELL_BYTES;
+    }
+
+    /**
+     * Heap needed by SXSSF with a window of {@code rowWindow} rows: the window of the widest rows and the
+     * merged regions, which stay in memory. An export that is not {@link #streamed()} also holds its
+     * sheet models while they are rendered.
+     */
+    public long sxssfBytes(int rowWindow) {
+        long window = (long) rowWindow * columns * SXSSF_CELL_BYTES + mergedRegions * XSSF_MERGED_REGION_BYTES;
+        return streamed ? window : window + modelBytes();
+    }
+
+    /** Heap to reserve for building the export with {@code engine} and an SXSSF window of {@code rowWindow}. */
+    public long heapBytes(ExportEngine engine, int rowWindow) {
+        return switch (engine) {
+            case XSSF -> xssfBytes();
+            case SXSSF -> sxssfBytes(rowWindow);
+            case DIRECT -> directBytes();
+        };
+    }
+
+    private long modelBytes() {
+        return cells * MODEL_CELL_BYTES + mergedRegions * MODEL_MERGED_REGION_BYTES + stringBytes;
+    }
+
+    static ExportCostEstimate of(CouncilEvaluationDto.Root root, boolean streamed) {
+        CouncilEvaluationDto.EvaluationForm form = root != null ? root.getEvaluationForm() : null;
+        List<CouncilEvaluationDto.Lecturer> lecturers = root != null && root.getLecturers() != null
+                ? root.getLecturers()
+                : Collections.emptyList();
+        List<CouncilEvaluationDto.Indicator> indicators = form != null && form.getIndicators() != null
+                ? form.getIndicators()
+                : Collections.emptyList();
+        if (lecturers.isEmpty()) {
+            return new ExportCostEstimate(1, 1, 1, 0, 0, streamed);
+        }
+
+        int scoreColumns = 0;
+        for (CouncilEvaluationDto.Indicator indicator : indicators) {
+            int pis = indicator != null && indicator.getPis() != null ? indicator.getPis().size() : 0;
+            scoreColumns += Math.max(1, pis);
+        }
+        int columns = 5 + scoreColumns + 2;
+
+        long cells = 0;
+        long merged = 0;
+        long stringBytes = 0;
+        long students = 0;
+        for (CouncilEvaluationDto.Lecturer lecturer : lecturers) {
+            List<CouncilEvaluationDto.StudentEvaluation> evaluations = lecturer != null && lecturer.getEvaluations() != null
+                    ? lecturer.getEvaluations()
+                    : Collections.emptyList();
+            cells += (long) evaluations.size() * columns + COUNCIL_FIXED_ROWS * 2L + columns * 4L;
+            merged += COUNCIL_FIXED_MERGES + indicators.size();
+            students += evaluations.size();
+            for (CouncilEvaluationDto.StudentEvaluation evaluation : evaluations) {
+                if (evaluation != null) {
+                    stringBytes += chars(evaluation.getStudentId()) + chars(evaluation.getStudentName())
+                            + chars(evaluation.getClassName()) + chars(evaluation.getComment());
+                }
+            }
+        }
+        // The summary sheet repeats every student once with a score column per lecturer.
+        cells += students * (5 + lecturers.size() + 3);
+        merged += COUNCIL_FIXED_MERGES + lecturers.size();
+        int widest = Math.max(columns, 5 + lecturers.size() + 2);
+        return new ExportCostEstimate(lecturers.size() + 1, widest, cells, merged, stringBytes * 2, streamed);
+    }
+
+    static ExportCostEstimate of(GuiderEvaluationDto.Root root, int fixedColumns) {
+        List<GuiderEvaluationDto.EvaluationForm> forms = root != null && root.getEvaluationForm() != null
+                ? root.getEvaluationForm()
+                : Collections.emptyList();
+        List<GuiderEvaluationDto.Student> students = root != null && root.getStudents() != null
+                ? root.getStudents()
+                : Collections.emptyList();
+
+        int columns = fixedColumns;
+        long merged = fixedColumns;
+        for (GuiderEvaluationDto.EvaluationForm form : forms) {
+            if (form == null || form.getIndicators() == null) {
+                continue;
+            }
+            for (GuiderEvaluationDto.Indicator indicator : form.getIndicators()) {
+                int pis = indicator != null && indicator.getPis() != null ? indicator.getPis().size() : 0;
+                columns += Math.max(1, pis);
+                merged++;
+            }
+            columns++;
+            merged++;
+        }
+
+        long stringBytes = 0;
+        for (GuiderEvaluationDto.Student student : students) {
+            if (student != null) {
+                stringBytes += chars(student.getStudentId()) + chars(student.getStudentName())
+                        + chars(student.getStudentClassName()) + chars(student.getGuiderName())
+                        + chars(student.getReviewerName()) + chars(student.getProjectName());
+            }
+        }
+        long cells = (students.size() + (long) GUIDER_HEADER_ROWS) * columns;
+        return new ExportCostEstimate(1, columns, cells, merged, stringBytes * 2, false);
+    }
+
+    private static int chars(String value) {
+        return value != null ? value.length() : 0;
+    }
+}
@@ -0,0 +1,21 @@
+package com.javaweb.service;
+
+import org.apache.poi.ss.usermodel.Workbook;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * A finished export ready to be written as an xlsx file, either a POI workbook or a sheet model
+ * for the direct SpreadsheetML writer. Close it once written to release what it holds.
+ */
+public interface ExportDocument extends Closeable {
+
+    /** Write the package deflated with {@code profile}; the stream is left open. */
+    PackageStats write(OutputStream out, CompressionProfile profile) throws IOException;
+
+    static ExportDocument of(Workbook workbook) {
+        return new PoiExportDocument(workbook);
+    }
+}
@@ -0,0 +1,16 @@
+package com.javaweb.service;
+
+/**
+ * Workbook backend used to render an export.
+ */
+public enum ExportEngine {
+    /** Fully in-memory {@code XSSFWorkbook}; fastest for small payloads. */
+    XSSF,
+    /** Row-windowed {@code SXSSFWorkbook}; rows beyond the window are flushed to a temp file. */
+    SXSSF,
+    /**
+     * SpreadsheetML parts written straight into the zip from the sheet model, without a POI
+     * workbook. Callers that need a {@code Workbook} object get XSSF instead.
+     */
+    DIRECT
+}
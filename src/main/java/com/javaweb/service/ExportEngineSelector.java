@@ -0,0 +1,83 @@
+package com.javaweb.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.function.Supplier;
+
+/**
+ * Picks the engine for a request that did not ask for one. With automatic selection on, the payload's
+ * {@link ExportCostEstimate} is held against a per-request heap budget: plain XSSF while the whole
+ * workbook fits, then the direct writer, whose sheet models are far smaller than POI's, and SXSSF
+ * when even those would not fit. With it off, every such request uses {@code export.engine}.
+ * {@link #heapBytes} prices each engine for admission, SXSSF by its configured row window.
+ * <p>
+ * Every automatic decision is logged and counted in {@code export.engine.selected} so the budget can be
+ * tuned against what the exports actually cost.
+ */
+@Component
+public class ExportEngineSelector {
+
+    private static final Logger log = LoggerFactory.getLogger(ExportEngineSelector.class);
+
+    private final ExportWorkbookFactory workbookFactory;
+    private final ExportMetrics metrics;
+    private final boolean enabled;
+    private final long heapBudgetBytes;
+
+    public ExportEngineSelector(ExportWorkbookFactory workbookFactory,
+                                ExportMetrics metrics,
+                                @Value("${export.auto-engine.enabled:true}") boolean enabled,
+                                @Value("${export.auto-engine.heap-budget:67108864}") long heapBudgetBytes) {
+        this.workbookFactory = workbookFactory;
+        this.metrics = metrics;
+        this.enabled = enabled;
+        this.heapBudgetBytes = heapBudgetBytes;
+    }
+
+    /**
+     * The engine to build {@code endpoint}'s export with: {@code requested} when given, otherwise the
+     * automatic choice for the estimated payload, or the configured default.
+     */
+    public ExportEngine select(String endpoint, ExportEngine requested, Supplier<ExportCostEstimate> estimate) {
+        if (requested != null) {
+            return requested;
+        }
+        if (!enabled) {
+            return workbookFactory.defaultEngine();
+        }
+        ExportCostEstimate cost = estimate.get();
+        ExportEngine engine = choose(null, cost);
+        log.info("{} export: {} sheets, ~{} cells, ~{} merged regions, ~{} KB of text; "
+                        + "estimated XSSF {} KB, direct {} KB, SXSSF {} KB against a {} KB budget, using {}",
+                endpoint, cost.sheets(), cost.cells(), cost.mergedRegions(), cost.stringBytes() / 1024,
+                cost.xssfBytes() / 1024, cost.directBytes() / 1024,
+                cost.sxssfBytes(workbookFactory.rowWindow()) / 1024, heapBudgetBytes / 1024, engine);
+        metrics.engineSelected(endpoint, engine, cost);
+        return engine;
+    }
+
+    /** Heap to reserve for building an export that costs {@code cost} with {@code engine}. */
+    public long heapBytes(ExportEngine engine, ExportCostEstimate cost) {
+        return cost.heapBytes(engine, workbookFactory.rowWindow());
+    }
+
+    /** The engine {@link #select} would use for {@code cost}, without logging or counting the choice. */
+    public ExportEngine choose(ExportEngine requested, ExportCostEstimate cost) {
+        if (requested != null) {
+            return requested;
+        }
+        if (!enabled) {
+            return workbookFactory.defaultEngine();
+        }
+        if (cost.xssfBytes() <= heapBudgetBytes) {
+            return ExportEngine.XSSF;
+        }
+        if (cost.directBytes() <= heapBudgetBytes) {
+            return ExportEngine.DIRECT;
+        }
+        return ExportEngine.SXSSF;
+    }
+}
@@ -0,0 +1,106 @@
+package com.javaweb.service;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * A queued export. Mutated only by the worker that runs it; readers take a {@link #snapshot()}.
+ */
+public final class ExportJob {
+
+    public enum State { QUEUED, RUNNING, DONE, FAILED }
+
+    private final String id;
+    private final String filename;
+    private final Instant submittedAt;
+
+    private volatile State state = State.QUEUED;
+    private volatile Instant startedAt;
+    private volatile Instant finishedAt;
+    private volatile Long buildMillis;
+    private volatile Long writeMillis;
+    private volatile Path result;
+    private volatile long size;
+    private volatile String error;
+
+    ExportJob(String id, String filename, Instant submittedAt) {
+        this.id = id;
+        this.filename = filename;
+        this.submittedAt = submittedAt;
+    }
+
+    public String id() {
+        return id;
+    }
+
+    public String filename() {
+        return filename;
+    }
+
+    public State state() {
+        return state;
+    }
+
+    public Path result() {
+        return result;
+    }
+
+    public long size() {
+        return size;
+    }
+
+    Instant finishedAt() {
+        return finishedAt;
+    }
+
+    void started(Instant now) {
+        startedAt = now;
+        state = State.RUNNING;
+    }
+
+    void built(long millis) {
+        buildMillis = millis;
+    }
+
+    void completed(Path file, long bytes, long millis, Instant now) {
+        writeMillis = millis;
+        result = file;
+        size = bytes;
+        finishedAt = now;
+        state = State.DONE;
+    }
+
+    void failed(String message, Instant now) {
+        error = message;
+        finishedAt = now;
+        state = State.FAILED;
+    }
+
+    public Status snapshot() {
+        Instant started = startedAt;
+        Instant finished = finishedAt;
+        Long queuedMillis = started != null ? Duration.between(submittedAt, started).toMillis() : null;
+        Long totalMillis = finished != null ? Duration.between(submittedAt, finished).toMillis() : null;
+        State current = state;
+        return new Status(id, current, filename, submittedAt, started, finished,
+                queuedMillis, buildMillis, writeMillis, totalMillis,
+                current == State.DONE ? size : null,
+                error);
+    }
+
+    /** Status view returned to pollers; timings are null until the corresponding phase has finished. */
+    public record Status(String id,
+                         State state,
+                         String filename,
+                         Instant submittedAt,
+                         Instant startedAt,
+                         Instant finishedAt,
+                         Long queuedMillis,
+                         Long buildMillis,
+                         Long writeMillis,
+                         Long totalMillis,
+                         Long size,
+                         String error) {
+    }
+}
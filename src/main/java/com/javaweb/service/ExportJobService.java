@@ -0,0 +1,181 @@
+package com.javaweb.service;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Runs exports in the background for clients that cannot hold a request open until the workbook is
+ * ready. Results are spooled to {@code export.jobs.dir} and kept for {@code export.jobs.ttl} after the
+ * job finishes; {@link #cleanup()} removes expired jobs and their files.
+ * <p>
+ * A worker picks the job's engine with {@link ExportEngineSelector} and reserves its estimated heap from
+ * {@link ExportAdmission} before building, like a synchronous export; it waits for the reservation
+ * rather than failing the job.
+ * <p>
+ * A job that fails for any reason, {@link Error}s included, is marked {@code FAILED} and expires like a
+ * finished one. Pollers only see a generic message; the cause is logged with the job id.
+ */
+@Service
+public class ExportJobService {
+
+    private static final Logger log = LoggerFactory.getLogger(ExportJobService.class);
+
+    /** Reported to pollers in place of the exception, which is only logged. */
+    static final String FAILURE_MESSAGE = "Export failed";
+
+    private final Map<String, ExportJob> jobs = new ConcurrentHashMap<>();
+    private final ThreadPoolExecutor executor;
+    private final Path spoolDir;
+    private final Duration ttl;
+    private final CompressionProfile compression;
+    private final ExportEngineSelector engineSelector;
+    private final ExportAdmission admission;
+
+    public ExportJobService(ExportEngineSelector engineSelector,
+                            ExportAdmission admission,
+                            @Value("${export.jobs.workers:2}") int workers,
+                            @Value("${export.jobs.queue-capacity:16}") int queueCapacity,
+                            @Value("${export.jobs.dir:${java.io.tmpdir}/ptit-dms-exports}") Path spoolDir,
+                            @Value("${export.jobs.ttl:PT30M}") Duration ttl,
+                            @Value("${export.compression.profile:BALANCED}") CompressionProfile compression) throws IOException {
+        int threads = Math.max(1, workers);
+        AtomicInteger threadIds = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueCapacity)),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "export-job-" + threadIds.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        this.spoolDir = Files.createDirectories(spoolDir);
+        this.ttl = ttl;
+        this.compression = compression;
+        this.engineSelector = engineSelector;
+        this.admission = admission;
+    }
+
+    /**
+     * Queue an export of {@code endpoint}. On a worker thread the engine is chosen from {@code engine}
+     * and the {@code estimate}, then {@code builder} runs with it; the document it returns is written to
+     * the spool directory and closed.
+     *
+     * @throws RejectedExecutionException when the queue is full
+     */
+    public ExportJob submit(String endpoint, String filename, ExportEngine engine,
+                            Supplier<ExportCostEstimate> estimate, DocumentBuilder builder) {
+        ExportJob job = new ExportJob(UUID.randomUUID().toString(), filename, Instant.now());
+        jobs.put(job.id(), job);
+        try {
+            executor.execute(() -> run(endpoint, job, engine, estimate, builder));
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job.id());
+            throw e;
+        }
+        return job;
+    }
+
+    public Optional<ExportJob> find(String id) {
+        return Optional.ofNullable(jobs.get(id));
+    }
+
+    /** Jobs waiting for a worker. */
+    public int queueDepth() {
+        return executor.getQueue().size();
+    }
+
+    private void run(String endpoint, ExportJob job, ExportEngine engine, Supplier<ExportCostEstimate> estimate,
+                     DocumentBuilder builder) {
+        job.started(Instant.now());
+        Path file = null;
+        try {
+            ExportCostEstimate cost = estimate.get();
+            ExportEngine selected = engineSelector.select(endpoint, engine, () -> cost);
+            PackageStats stats;
+            ExportAdmission.Permit permit = admission.await(endpoint, engineSelector.heapBytes(selected, cost));
+            try {
+                long start = System.nanoTime();
+                ExportDocument document = builder.build(selected);
+                job.built(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+
+                start = System.nanoTime();
+                file = Files.createTempFile(spoolDir, job.id() + "-", ".xlsx");
+                try (document; OutputStream out = Files.newOutputStream(file)) {
+                    stats = document.write(out, compression);
+                }
+                job.completed(file, Files.size(file), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start),
+                        Instant.now());
+            } finally {
+                permit.close();
+            }
+            log.debug("Export job {} finished: {}, {}", job.id(), job.snapshot(), stats);
+        } catch (Throwable e) {
+            // Errors too, OutOfMemoryError above all: a job left RUNNING would never expire
+            job.failed(FAILURE_MESSAGE, Instant.now());
+            delete(file);
+            log.warn("Export job {} failed", job.id(), e);
+            if (e instanceof Error error) {
+                throw error;
+            }
+        }
+    }
+
+    /** Drop finished jobs older than the TTL together with their spooled result. */
+    @Scheduled(fixedDelayString = "${export.jobs.cleanup-interval:60000}")
+    public void cleanup() {
+        Instant cutoff = Instant.now().minus(ttl);
+        jobs.values().removeIf(job -> {
+            Instant finished = job.finishedAt();
+            if (finished == null || finished.isAfter(cutoff)) {
+                return false;
+            }
+            delete(job.result());
+            return true;
+        });
+    }
+
+    private static void delete(Path file) {
+        if (file == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("Could not delete export spool {}", file, e);
+        }
+    }
+
+    /** Builds a job's document with the engine chosen for it. */
+    @FunctionalInterface
+    public interface DocumentBuilder {
+        ExportDocument build(ExportEngine engine) throws Exception;
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+        jobs.values().forEach(job -> delete(job.result()));
+        jobs.clear();
+    }
+}
@@ -0,0 +1,271 @@
+package com.javaweb.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+
+/**
+ * Micrometer meters for the export pipeline, exposed through Actuator's Prometheus endpoint. Every
+ * meter is tagged with the export it belongs to ({@code council}, {@code guider}, {@code reviewer}).
+ * <ul>
+ *   <li>{@code export.phase}: one timer per {@link Phase}, with a percentile histogram</li>
+ *   <li>{@code export.sheets}, {@code export.rows}, {@code export.cells}, {@code export.merged.regions}:
+ *       counters of what was laid out</li>
+ *   <li>{@code export.output.bytes}: counter of bytes written, plus the {@code export.output.size}
+ *       distribution of package sizes</li>
+ *   <li>{@code export.engine.selected}: counter of automatic engine choices, tagged with the engine,
+ *       plus the {@code export.estimated.heap} distribution they were based on</li>
+ *   <li>{@code export.admission.wait}: timer of the wait for {@link ExportAdmission}, tagged with the
+ *       outcome; {@code export.admission.rejected} counts 503s, and the {@code export.admission.pool} and
+ *       {@code export.admission.available} gauges show the pool</li>
+ *   <li>{@code export.coalesced}: counter of requests that joined an identical running export instead of
+ *       building their own</li>
+ *   <li>{@code export.result.cache.hits}, {@code export.result.cache.misses},
+ *       {@code export.result.cache.evictions}: counters of {@link ExportResultCache}, and the
+ *       {@code export.result.cache.entries} and {@code export.result.cache.bytes} gauges; all but misses are
+ *       tagged with the {@code memory} or {@code disk} tier instead of an export</li>
+ *   <li>{@code export.cancelled}: counter of exports stopped by {@link ExportCancellation}, tagged with the
+ *       reason rather than the export, which is not known when the request thread binds it</li>
+ *   <li>{@code export.layout.cache.hits}, {@code export.layout.cache.misses},
+ *       {@code export.layout.cache.evictions} and the {@code export.layout.cache.size} gauge: the
+ *       layout-plan and template caches of each export, also tagged with the cache</li>
+ * </ul>
+ * Everything recorded here is also added to the {@link ExportProfile} bound to the calling thread.
+ */
+@Component
+public class ExportMetrics {
+
+    public static final String COUNCIL = "council";
+    public static final String GUIDER = "guider";
+    public static final String REVIEWER = "reviewer";
+
+    private static final String TAG = "endpoint";
+
+    public enum Phase {
+        /** Binding the JSON request body, or reading students for the streaming exports. */
+        DESERIALIZE,
+        /** Planning columns and blocks before any cell is set ({@code buildBlocks}, {@code buildSummaryEntries}). */
+        LAYOUT,
+        /** Filling sheet models and rendering them into POI sheets. */
+        POPULATE,
+        /** Serializing the package; for {@link ExportEngine#DIRECT} this includes rendering the worksheets. */
+        WRITE,
+        /** Delivering the written package: the final flush, or copying the spooled file in SIZED mode. */
+        FLUSH;
+
+        private final String tag = name().toLowerCase(Locale.ROOT);
+    }
+
+    private final MeterRegistry registry;
+
+    public ExportMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    public <T> T time(String endpoint, Phase phase, Supplier<T> action) {
+        long start = System.nanoTime();
+        try {
+            return action.get();
+        } finally {
+            record(endpoint, phase, System.nanoTime() - start);
+        }
+    }
+
+    public void time(String endpoint, Phase phase, Runnable action) {
+        long start = System.nanoTime();
+        try {
+            action.run();
+        } finally {
+            record(endpoint, phase, System.nanoTime() - start);
+        }
+    }
+
+    public void record(String endpoint, Phase phase, long nanos) {
+        ExportProfile profile = ExportProfile.current();
+        if (profile != null) {
+            profile.phase(phase, nanos);
+        }
+        Timer.builder("export.phase")
+                .description("Time spent in one phase of an export")
+                .tag(TAG, endpoint)
+                .tag("phase", phase.tag)
+                .publishPercentileHistogram()
+                .register(registry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /** Count a laid-out sheet with its rows, cells and merged regions. */
+    public void sheet(String endpoint, SheetModel model) {
+        sheets(endpoint, 1, model.rows().size(), model.columnCount(), model.cellCount(), model.mergedRegions().size());
+    }
+
+    public void sheets(String endpoint, int sheets, long rows, int columns, long cells, long mergedRegions) {
+        counter("export.sheets", "Worksheets laid out", endpoint).increment(sheets);
+        counter("export.rows", "Rows laid out", endpoint).increment(rows);
+        counter("export.cells", "Cells laid out", endpoint).increment(cells);
+        counter("export.merged.regions", "Merged regions laid out", endpoint).increment(mergedRegions);
+        ExportProfile profile = ExportProfile.current();
+        if (profile != null) {
+            profile.sheets(sheets, rows, columns, cells, mergedRegions);
+        }
+    }
+
+    /** Distinct cell styles of a finished workbook. Only reported per request, in {@link ExportProfile}. */
+    public void styles(int count) {
+        ExportProfile profile = ExportProfile.current();
+        if (profile != null) {
+            profile.styles(count);
+        }
+    }
+
+    public void outputBytes(String endpoint, long bytes) {
+        counter("export.output.bytes", "Bytes of export packages written", endpoint).increment(bytes);
+        DistributionSummary.builder("export.output.size")
+                .description("Size of one export package")
+                .baseUnit("bytes")
+                .tag(TAG, endpoint)
+                .register(registry)
+                .record(bytes);
+    }
+
+    /** An engine picked by {@link ExportEngineSelector}, with the heap it estimated for XSSF. */
+    public void engineSelected(String endpoint, ExportEngine engine, ExportCostEstimate cost) {
+        Counter.builder("export.engine.selected")
+                .description("Engines picked automatically from the payload cost estimate")
+                .tag(TAG, endpoint)
+                .tag("engine", engine.name().toLowerCase(Locale.ROOT))
+                .register(registry)
+                .increment();
+        DistributionSummary.builder("export.estimated.heap")
+                .description("Estimated XSSF heap of an automatically routed export")
+                .baseUnit("bytes")
+                .tag(TAG, endpoint)
+                .register(registry)
+                .record(cost.xssfBytes());
+    }
+
+    /** Time a request waited for {@link ExportAdmission}, and whether it got in. */
+    public void admission(String endpoint, boolean admitted, long waitNanos) {
+        Timer.builder("export.admission.wait")
+                .description("Time export requests waited for heap to be reserved")
+                .tag(TAG, endpoint)
+                .tag("outcome", admitted ? "admitted" : "rejected")
+                .publishPercentileHistogram()
+                .register(registry)
+                .record(waitNanos, TimeUnit.NANOSECONDS);
+        if (!admitted) {
+            counter("export.admission.rejected", "Export requests turned away with 503", endpoint).increment();
+        }
+    }
+
+    /** Gauges of {@link ExportAdmission}'s pool: its size and the bytes not reserved right now. */
+    public void admissionPool(Supplier<Number> availableBytes, long poolBytes) {
+        Gauge.builder("export.admission.available", availableBytes)
+                .description("Heap of the export admission pool not reserved by running exports")
+                .baseUnit("bytes")
+                .register(registry);
+        Gauge.builder("export.admission.pool", () -> poolBytes)
+                .description("Heap of the export admission pool")
+                .baseUnit("bytes")
+                .register(registry);
+    }
+
+    /** A request that followed an identical export already being built; see {@link ExportSingleFlight}. */
+    public void coalesced(String endpoint) {
+        counter("export.coalesced", "Export requests served by an identical running export", endpoint).increment();
+    }
+
+    /** An export abandoned part-way because its client went away or its deadline passed. */
+    public void cancelled(ExportCancellation.Reason reason) {
+        Counter.builder("export.cancelled")
+                .description("Exports stopped before they completed")
+                .tag("reason", reason.tag)
+                .register(registry)
+                .increment();
+    }
+
+    /** Meters of {@code cache}, read from its {@link ExportResultCache#stats()} when they are scraped. */
+    public void resultCache(ExportResultCache cache) {
+        cacheCounter("export.result.cache.hits", "Exports served from the result cache", cache, "memory",
+                ExportResultCache.Stats::memoryHits);
+        cacheCounter("export.result.cache.hits", "Exports served from the result cache", cache, "disk",
+                ExportResultCache.Stats::diskHits);
+        cacheCounter("export.result.cache.misses", "Result cache lookups that found nothing", cache, null,
+                ExportResultCache.Stats::misses);
+        cacheCounter("export.result.cache.evictions", "Entries evicted from a result cache tier", cache, "memory",
+                ExportResultCache.Stats::memoryEvictions);
+        cacheCounter("export.result.cache.evictions", "Entries evicted from a result cache tier", cache, "disk",
+                ExportResultCache.Stats::diskEvictions);
+        cacheGauge("export.result.cache.entries", "Entries held by a result cache tier", null, cache, "memory",
+                ExportResultCache.Stats::memoryEntries);
+        cacheGauge("export.result.cache.entries", "Entries held by a result cache tier", null, cache, "disk",
+                ExportResultCache.Stats::diskEntries);
+        cacheGauge("export.result.cache.bytes", "Bytes held by a result cache tier", "bytes", cache, "memory",
+                ExportResultCache.Stats::memoryBytes);
+        cacheGauge("export.result.cache.bytes", "Bytes held by a result cache tier", "bytes", cache, "disk",
+                ExportResultCache.Stats::diskBytes);
+    }
+
+    /**
+     * Meters of a layout or template cache named {@code cache}, read from its {@link BoundedLruCache#stats()}
+     * when they are scraped.
+     */
+    public void layoutCache(String endpoint, String cache, BoundedLruCache<?, ?> lru) {
+        layoutCacheCounter("export.layout.cache.hits", "Layout cache lookups that found an entry", endpoint, cache,
+                lru, BoundedLruCache.Stats::hits);
+        layoutCacheCounter("export.layout.cache.misses", "Layout cache lookups that built an entry", endpoint, cache,
+                lru, BoundedLruCache.Stats::misses);
+        layoutCacheCounter("export.layout.cache.evictions", "Entries evicted from a layout cache", endpoint, cache,
+                lru, BoundedLruCache.Stats::evictions);
+        Gauge.builder("export.layout.cache.size", lru, c -> c.stats().size())
+                .description("Entries held by a layout cache")
+                .tag(TAG, endpoint)
+                .tag("cache", cache)
+                .register(registry);
+    }
+
+    private void layoutCacheCounter(String name, String description, String endpoint, String cache,
+                                    BoundedLruCache<?, ?> lru, ToLongFunction<BoundedLruCache.Stats> value) {
+        FunctionCounter.builder(name, lru, c -> value.applyAsLong(c.stats()))
+                .description(description)
+                .tag(TAG, endpoint)
+                .tag("cache", cache)
+                .register(registry);
+    }
+
+    private void cacheCounter(String name, String description, ExportResultCache cache, String tier,
+                              ToLongFunction<ExportResultCache.Stats> value) {
+        FunctionCounter.Builder<ExportResultCache> builder = FunctionCounter
+                .builder(name, cache, c -> value.applyAsLong(c.stats()))
+                .description(description);
+        if (tier != null) {
+            builder.tag("tier", tier);
+        }
+        builder.register(registry);
+    }
+
+    private void cacheGauge(String name, String description, String baseUnit, ExportResultCache cache, String tier,
+                            ToLongFunction<ExportResultCache.Stats> value) {
+        Gauge.builder(name, cache, c -> value.applyAsLong(c.stats()))
+                .description(description)
+                .baseUnit(baseUnit)
+                .tag("tier", tier)
+                .register(registry);
+    }
+
+    private Counter counter(String name, String description, String endpoint) {
+        return Counter.builder(name)
+                .description(description)
+                .tag(TAG, endpoint)
+                .register(registry);
+    }
+}
@@ -0,0 +1,59 @@
+package com.javaweb.service;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Packaging stage for {@link ExportEngine#DIRECT} workbooks. Sheet parts are rendered and deflated on
+ * this pool, pigz-style, each into its own deflate stream, while the writing thread copies finished
+ * parts into the archive in sheet order. At most {@code 2 x parallelism} compressed parts are held
+ * in memory ahead of the writer.
+ */
+@Component
+public class ExportPackager {
+
+    private final int parallelism;
+    /** Null when parts are deflated on the writing thread. */
+    private final ExecutorService executor;
+
+    public ExportPackager(@Value("${export.packaging.parallelism:2}") int parallelism) {
+        this.parallelism = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        if (this.parallelism > 1) {
+            AtomicInteger threadIds = new AtomicInteger();
+            this.executor = Executors.newFixedThreadPool(this.parallelism, runnable -> {
+                Thread thread = new Thread(runnable, "export-deflate-" + threadIds.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        } else {
+            this.executor = null;
+        }
+    }
+
+    /** Document that writes {@code sheets} through this packager. */
+    ExportDocument document(List<SpreadsheetMLDocument.SheetPart> sheets) {
+        return new SpreadsheetMLDocument(sheets, this);
+    }
+
+    ExecutorService executor() {
+        return executor;
+    }
+
+    /** Compressed parts that may wait for the writer. */
+    int window() {
+        return Math.max(2, parallelism * 2);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package com.javaweb.service;
+
+import com.javaweb.service.ExportMetrics.Phase;
+
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * What one export request cost, reported back to the client in {@code Server-Timing} and, when asked
+ * for, {@code X-Export-Profile}. {@link ExportMetrics} feeds the profile bound to the current thread
+ * alongside its meters. Work handed to a pool joins the profile through {@link #propagate(Callable)}.
+ * <p>
+ * Phase times are summed over every thread that worked on the export, so with parallel layout or
+ * packaging they can add up to more than the wall-clock time. CPU time and allocated bytes are only
+ * sampled for detailed profiles, and only on threads bound with {@link #bind()}.
+ * <p>
+ * The profile also spans the request's {@link ExportRequestEvent} for JDK Flight Recorder, begun when
+ * the profile is created and committed by {@link #finish(String, long)}.
+ */
+public final class ExportProfile {
+
+    private static final ThreadLocal<ExportProfile> CURRENT = new ThreadLocal<>();
+    private static final com.sun.management.ThreadMXBean THREADS = threadBean();
+
+    /** {@code Server-Timing} metric name of each phase. */
+    private static final Map<Phase, String> TIMING_NAMES = new EnumMap<>(Map.of(
+            Phase.DESERIALIZE, "parse",
+            Phase.LAYOUT, "plan",
+            Phase.POPULATE, "render",
+            Phase.WRITE, "serialize",
+            Phase.FLUSH, "write"));
+
+    private final boolean detailed;
+    private final Map<Phase, LongAdder> phaseNanos = new EnumMap<>(Phase.class);
+    private final LongAdder sheets = new LongAdder();
+    private final LongAdder rows = new LongAdder();
+    private final LongAdder cells = new LongAdder();
+    private final LongAdder mergedRegions = new LongAdder();
+    private final AtomicInteger columns = new AtomicInteger();
+    private final AtomicInteger styles = new AtomicInteger();
+    private final LongAdder cpuNanos = new LongAdder();
+    private final LongAdder allocatedBytes = new LongAdder();
+    private final ExportRequestEvent event = new ExportRequestEvent();
+    private final AtomicBoolean finished = new AtomicBoolean();
+
+    public ExportProfile(boolean detailed) {
+        this.detailed = detailed;
+        for (Phase phase : Phase.values()) {
+            phaseNanos.put(phase, new LongAdder());
+        }
+        event.begin();
+    }
+
+    /** The profile bound to this thread, or null. */
+    public static ExportProfile current() {
+        return CURRENT.get();
+    }
+
+    /** Wrap {@code task} so it runs bound to the current profile, if there is one. */
+    public static <T> Callable<T> propagate(Callable<T> task) {
+        ExportProfile profile = CURRENT.get();
+        if (profile == null) {
+            return task;
+        }
+        return () -> {
+            Scope scope = profile.bind();
+            try {
+                return task.call();
+            } finally {
+                scope.close();
+            }
+        };
+    }
+
+    /** Bind this profile to the current thread until the scope is closed. */
+    public Scope bind() {
+        return new Scope(this);
+    }
+
+    /**
+     * Bind {@code profile} to the current thread until the scope is closed; when it is null the thread is
+     * not profiled for that long.
+     */
+    public static Scope scope(ExportProfile profile) {
+        return new Scope(profile);
+    }
+
+    public boolean detailed() {
+        return detailed;
+    }
+
+    void phase(Phase phase, long nanos) {
+        phaseNanos.get(phase).add(nanos);
+    }
+
+    void sheets(int sheetCount, long rowCount, int columnCount, long cellCount, long mergedRegionCount) {
+        sheets.add(sheetCount);
+        rows.add(rowCount);
+        columns.accumulateAndGet(columnCount, Math::max);
+        cells.add(cellCount);
+        mergedRegions.add(mergedRegionCount);
+    }
+
+    /** Number of distinct cell styles in the finished workbook. */
+    void styles(int count) {
+        styles.accumulateAndGet(count, Math::max);
+    }
+
+    /** The response was written: commit the request's JFR event. Later calls do nothing. */
+    public void finish(String endpoint, long bytes) {
+        if (!finished.compareAndSet(false, true)) {
+            return;
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.export = endpoint;
+            event.sheets = sheets.sum();
+            event.rows = rows.sum();
+            event.columns = columns.get();
+            event.mergedRegions = mergedRegions.sum();
+            event.bytes = bytes;
+            event.commit();
+        }
+    }
+
+    /**
+     * {@code Server-Timing} value for {@code phases}, in milliseconds; phases that did not run in this
+     * request are left out.
+     */
+    public String serverTiming(Phase... phases) {
+        StringBuilder timing = new StringBuilder();
+        for (Phase phase : phases) {
+            long nanos = phaseNanos.get(phase).sum();
+            if (nanos == 0) {
+                continue;
+            }
+            if (!timing.isEmpty()) {
+                timing.append(", ");
+            }
+            timing.append(TIMING_NAMES.get(phase))
+                    .append(";dur=")
+                    .append(String.format(Locale.ROOT, "%.1f", nanos / 1_000_000.0));
+        }
+        return timing.toString();
+    }
+
+    public Summary summary() {
+        return new Summary(sheets.sum(), rows.sum(), cells.sum(), styles.get(), mergedRegions.sum(),
+                detailed && THREADS != null ? allocatedBytes.sum() : -1,
+                detailed && THREADS != null ? cpuNanos.sum() / 1_000_000.0 : -1);
+    }
+
+    private static com.sun.management.ThreadMXBean threadBean() {
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean bean
+                && bean.isCurrentThreadCpuTimeSupported() && bean.isThreadAllocatedMemorySupported()) {
+            return bean;
+        }
+        return null;
+    }
+
+    /** Contents of {@code X-Export-Profile}; {@code allocatedBytes} and {@code cpuMillis} are -1 when not sampled. */
+    public record Summary(long sheets,
+                          long rows,
+                          long cells,
+                          int styles,
+                          long mergedRegions,
+                          long allocatedBytes,
+                          double cpuMillis) {
+    }
+
+    /** A thread's binding to a profile; closing it restores the previous binding. */
+    public static final class Scope implements AutoCloseable {
+        private final ExportProfile profile;
+        private final ExportProfile previous;
+        private final long cpuStart;
+        private final long allocatedStart;
+
+        private Scope(ExportProfile profile) {
+            this.profile = profile;
+            this.previous = CURRENT.get();
+            boolean sample = sampled(profile);
+            this.cpuStart = sample ? THREADS.getCurrentThreadCpuTime() : 0;
+            this.allocatedStart = sample ? THREADS.getCurrentThreadAllocatedBytes() : 0;
+            CURRENT.set(profile);
+        }
+
+        @Override
+        public void close() {
+            if (sampled(profile)) {
+                profile.cpuNanos.add(THREADS.getCurrentThreadCpuTime() - cpuStart);
+                profile.allocatedBytes.add(THREADS.getCurrentThreadAllocatedBytes() - allocatedStart);
+            }
+            if (previous != null) {
+                CURRENT.set(previous);
+            } else {
+                CURRENT.remove();
+            }
+        }
+
+        /** Whether the thread's CPU time and allocations are attributed to {@code profile}. */
+        private static boolean sampled(ExportProfile profile) {
+            return profile != null && profile.detailed && THREADS != null;
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.javaweb.service;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR event spanning one export request, from reading the body to the last byte of the response.
+ * It is begun and committed by the request's {@link ExportProfile}; switch it off in a recording with
+ * {@code com.javaweb.ExportRequest#enabled=false}.
+ */
+@Name("com.javaweb.ExportRequest")
+@Label("Export Request")
+@Category({"PTIT DMS", "Export"})
+@Description("One xlsx export request")
+@StackTrace(false)
+final class ExportRequestEvent extends Event {
+
+    @Label("Export")
+    String export;
+
+    @Label("Sheets")
+    long sheets;
+
+    @Label("Rows")
+    long rows;
+
+    @Label("Columns")
+    @Description("Widest sheet of the export")
+    int columns;
+
+    @Label("Merged Regions")
+    long mergedRegions;
+
+    @Label("Output Size")
+    @DataAmount
+    long bytes;
+}
@@ -0,0 +1,11 @@
+package com.javaweb.service;
+
+/**
+ * How a rendered workbook is delivered to the HTTP client.
+ */
+public enum ExportResponseMode {
+    /** Write the workbook straight into the servlet stream using chunked transfer encoding. */
+    CHUNKED,
+    /** Spool the workbook to a temp file first so the response carries a Content-Length. */
+    SIZED
+}
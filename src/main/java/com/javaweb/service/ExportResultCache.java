@@ -0,0 +1,377 @@
+package com.javaweb.service;
+
+import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Content-addressed cache of finished export files. Keys are a SHA-256 over the export type, the engine
+ * and compression profile that shape the package bytes, and the canonical JSON of the deserialized
+ * payload, so re-posting the same data with the same options skips the workbook build.
+ * <p>
+ * The memory tier is bounded by total bytes. When {@code export.result-cache.disk.enabled} is set,
+ * entries evicted from memory are demoted to a size-bounded directory and served through a read-only
+ * memory mapping. Files are written and mapped outside the cache lock: a demotion writes a temporary
+ * file and renames it into place, and the entry is served from its bytes until the rename is done.
+ * Files left in the directory by an earlier run are deleted at startup.
+ */
+@Service
+public class ExportResultCache {
+
+    private static final Logger log = LoggerFactory.getLogger(ExportResultCache.class);
+
+    /** Canonical form: property and map-key order must not depend on how the client built the JSON. */
+    private static final ObjectMapper CANONICAL = JsonMapper.builder()
+            .enable(MapperFeature.SORT_PROPERTIES_ALPHABETICALLY)
+            .enable(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS)
+            .build();
+
+    private final boolean enabled;
+    private final long maxMemoryBytes;
+    private final long maxEntryBytes;
+    private final Path diskDir;
+    private final long maxDiskBytes;
+    private final ExportMetrics metrics;
+
+    private final LinkedHashMap<String, byte[]> memory = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<String, Long> disk = new LinkedHashMap<>(16, 0.75f, true);
+    /** Entries being written to disk, served from memory until their file is in place. */
+    private final Map<String, byte[]> demoting = new HashMap<>();
+    private long memoryBytes;
+    private long diskBytes;
+
+    private final AtomicLong memoryHits = new AtomicLong();
+    private final AtomicLong diskHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong memoryEvictions = new AtomicLong();
+    private final AtomicLong diskEvictions = new AtomicLong();
+
+    public ExportResultCache(ExportMetrics metrics,
+                             @Value("${export.result-cache.enabled:true}") boolean enabled,
+                             @Value("${export.result-cache.max-bytes:67108864}") long maxMemoryBytes,
+                             @Value("${export.result-cache.max-entry-bytes:16777216}") long maxEntryBytes,
+                             @Value("${export.result-cache.disk.enabled:false}") boolean diskEnabled,
+                             @Value("${export.result-cache.disk.dir:${java.io.tmpdir}/ptit-dms-result-cache}") Path diskDir,
+                             @Value("${export.result-cache.disk.max-bytes:536870912}") long maxDiskBytes)
+            throws IOException {
+        this.enabled = enabled && maxMemoryBytes > 0;
+        this.maxMemoryBytes = maxMemoryBytes;
+        this.maxEntryBytes = Math.min(maxEntryBytes, maxMemoryBytes);
+        this.diskDir = this.enabled && diskEnabled ? Files.createDirectories(diskDir) : null;
+        this.maxDiskBytes = maxDiskBytes;
+        this.metrics = metrics;
+        if (this.diskDir != null) {
+            clearDiskDir();
+        }
+    }
+
+    @PostConstruct
+    void registerMetrics() {
+        metrics.resultCache(this);
+    }
+
+    /** Files of an earlier run are not in the index and would sit outside the byte bound. */
+    private void clearDiskDir() throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(diskDir, "*.{bin,tmp}")) {
+            for (Path file : files) {
+                deleteQuietly(file);
+            }
+        }
+    }
+
+    public boolean enabled() {
+        return enabled;
+    }
+
+    /**
+     * Cache key for {@code payload} exported as {@code type} with {@code engine}, null for the automatic
+     * choice, and {@code compression}; also used as the response ETag value.
+     */
+    public String key(String type, ExportEngine engine, CompressionProfile compression, Object payload) {
+        try {
+            MessageDigest sha = MessageDigest.getInstance("SHA-256");
+            for (String part : new String[]{type, engine != null ? engine.name() : "AUTO", compression.name()}) {
+                sha.update(part.getBytes(StandardCharsets.UTF_8));
+                sha.update((byte) 0);
+            }
+            try (OutputStream out = new DigestOutputStream(OutputStream.nullOutputStream(), sha)) {
+                CANONICAL.writeValue(out, payload);
+            }
+            return HexFormat.of().formatHex(sha.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** Cached result for {@code key}, or null. A disk hit is served from a memory mapping of the file. */
+    public CachedExport get(String key) {
+        if (!enabled) {
+            return null;
+        }
+        synchronized (this) {
+            byte[] bytes = memory.get(key);
+            if (bytes == null) {
+                bytes = demoting.get(key);
+            }
+            if (bytes != null) {
+                memoryHits.incrementAndGet();
+                return new MemoryEntry(bytes);
+            }
+            if (diskDir == null || !disk.containsKey(key)) {
+                misses.incrementAndGet();
+                return null;
+            }
+        }
+        try {
+            MappedByteBuffer mapped = map(diskFile(key));
+            diskHits.incrementAndGet();
+            return new MappedEntry(mapped);
+        } catch (NoSuchFileException e) {
+            // evicted from disk between the lookup and the mapping
+        } catch (IOException e) {
+            log.warn("Dropping unreadable result cache file for {}", key, e);
+            synchronized (this) {
+                removeFromDisk(key);
+            }
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Wrap {@code out} so the bytes written through it are captured for {@code key}. The result is
+     * stored only when {@link CapturingOutputStream#commit()} is called after a complete write, and
+     * dropped if it grows beyond {@code export.result-cache.max-entry-bytes}.
+     */
+    public CapturingOutputStream capture(String key, OutputStream out) {
+        return new CapturingOutputStream(key, out);
+    }
+
+    private void put(String key, byte[] bytes) {
+        List<Map.Entry<String, byte[]>> demoted = new ArrayList<>();
+        synchronized (this) {
+            byte[] previous = memory.put(key, bytes);
+            if (previous != null) {
+                memoryBytes -= previous.length;
+            }
+            memoryBytes += bytes.length;
+            Iterator<Map.Entry<String, byte[]>> it = memory.entrySet().iterator();
+            while (memoryBytes > maxMemoryBytes && it.hasNext()) {
+                Map.Entry<String, byte[]> eldest = it.next();
+                it.remove();
+                memoryBytes -= eldest.getValue().length;
+                memoryEvictions.incrementAndGet();
+                if (diskDir != null && eldest.getValue().length <= maxDiskBytes
+                        && !disk.containsKey(eldest.getKey()) && !demoting.containsKey(eldest.getKey())) {
+                    demoting.put(eldest.getKey(), eldest.getValue());
+                    demoted.add(Map.entry(eldest.getKey(), eldest.getValue()));
+                }
+            }
+        }
+        demoted.forEach(entry -> demote(entry.getKey(), entry.getValue()));
+    }
+
+    /** Write an entry claimed in {@link #demoting} to disk, then index it. Called without the lock. */
+    private void demote(String key, byte[] bytes) {
+        boolean written = false;
+        Path temp = null;
+        try {
+            temp = Files.createTempFile(diskDir, key, ".tmp");
+            Files.write(temp, bytes);
+            Files.move(temp, diskFile(key), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            written = true;
+        } catch (IOException e) {
+            log.warn("Could not demote result cache entry {} to disk", key, e);
+            if (temp != null) {
+                deleteQuietly(temp);
+            }
+        }
+        synchronized (this) {
+            demoting.remove(key);
+            if (!written) {
+                return;
+            }
+            disk.put(key, (long) bytes.length);
+            diskBytes += bytes.length;
+            Iterator<Map.Entry<String, Long>> it = disk.entrySet().iterator();
+            while (diskBytes > maxDiskBytes && it.hasNext()) {
+                Map.Entry<String, Long> eldest = it.next();
+                it.remove();
+                diskBytes -= eldest.getValue();
+                diskEvictions.incrementAndGet();
+                deleteQuietly(diskFile(eldest.getKey()));
+            }
+        }
+    }
+
+    private void removeFromDisk(String key) {
+        Long size = disk.remove(key);
+        if (size != null) {
+            diskBytes -= size;
+        }
+        deleteQuietly(diskFile(key));
+    }
+
+    private Path diskFile(String key) {
+        return diskDir.resolve(key + ".bin");
+    }
+
+    private static MappedByteBuffer map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("Could not delete result cache file {}", file, e);
+        }
+    }
+
+    public synchronized Stats stats() {
+        return new Stats(memory.size(), memoryBytes, disk.size(), diskBytes,
+                memoryHits.get(), diskHits.get(), misses.get(),
+                memoryEvictions.get(), diskEvictions.get());
+    }
+
+    @PreDestroy
+    synchronized void shutdown() {
+        memory.clear();
+        demoting.clear();
+        memoryBytes = 0;
+        if (diskDir != null) {
+            disk.keySet().forEach(key -> deleteQuietly(diskFile(key)));
+            disk.clear();
+            diskBytes = 0;
+        }
+    }
+
+    /** A cached export file. */
+    public interface CachedExport {
+        long size();
+
+        void writeTo(OutputStream out) throws IOException;
+    }
+
+    private record MemoryEntry(byte[] bytes) implements CachedExport {
+        @Override
+        public long size() {
+            return bytes.length;
+        }
+
+        @Override
+        public void writeTo(OutputStream out) throws IOException {
+            out.write(bytes);
+        }
+    }
+
+    private record MappedEntry(MappedByteBuffer buffer) implements CachedExport {
+        @Override
+        public long size() {
+            return buffer.capacity();
+        }
+
+        @Override
+        public void writeTo(OutputStream out) throws IOException {
+            WritableByteChannel channel = Channels.newChannel(out);
+            ByteBuffer view = buffer.duplicate();
+            while (view.hasRemaining()) {
+                channel.write(view);
+            }
+        }
+    }
+
+    /** Tees the response into a buffer that becomes the cache entry once the write completed. */
+    public final class CapturingOutputStream extends FilterOutputStream {
+        private final String key;
+        private ByteArrayOutputStream copy = new ByteArrayOutputStream();
+
+        private CapturingOutputStream(String key, OutputStream out) {
+            super(out);
+            this.key = key;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            if (copy != null) {
+                copy.write(b);
+                checkLimit();
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            if (copy != null) {
+                copy.write(b, off, len);
+                checkLimit();
+            }
+        }
+
+        private void checkLimit() {
+            if (copy.size() > maxEntryBytes) {
+                copy = null;
+            }
+        }
+
+        /** Store the captured bytes. Closing the stream is left to the caller. */
+        public void commit() {
+            if (enabled && copy != null) {
+                put(key, copy.toByteArray());
+            }
+            copy = null;
+        }
+    }
+
+    public record Stats(int memoryEntries,
+                        long memoryBytes,
+                        int diskEntries,
+                        long diskBytes,
+                        long memoryHits,
+                        long diskHits,
+                        long misses,
+                        long memoryEvictions,
+                        long diskEvictions) {
+    }
+}
@@ -0,0 +1,55 @@
+package com.javaweb.service;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+import java.util.function.Supplier;
+
+/**
+ * JFR event for one worksheet laid out by an export, so slow sheets can be lined up with GC and
+ * allocation events in a recording. Enabled by default; a recording can switch it off or set a
+ * threshold with {@code com.javaweb.ExportSheet#enabled=false} or {@code #threshold=20 ms}.
+ */
+@Name("com.javaweb.ExportSheet")
+@Label("Export Sheet")
+@Category({"PTIT DMS", "Export"})
+@Description("A worksheet laid out for an xlsx export")
+@StackTrace(false)
+final class ExportSheetEvent extends Event {
+
+    @Label("Export")
+    String export;
+
+    @Label("Sheet")
+    String sheet;
+
+    @Label("Rows")
+    int rows;
+
+    @Label("Columns")
+    int columns;
+
+    @Label("Merged Regions")
+    int mergedRegions;
+
+    /** Build a sheet with {@code builder}, recording an event around it when the event is enabled. */
+    static SheetModel record(String export, String sheet, Supplier<SheetModel> builder) {
+        ExportSheetEvent event = new ExportSheetEvent();
+        event.begin();
+        SheetModel model = builder.get();
+        event.end();
+        if (event.shouldCommit()) {
+            event.export = export;
+            event.sheet = sheet;
+            event.rows = model.rows().size();
+            event.columns = model.columnCount();
+            event.mergedRegions = model.mergedRegions().size();
+            event.commit();
+        }
+        return model;
+    }
+}
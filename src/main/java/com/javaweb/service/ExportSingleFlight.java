@@ -0,0 +1,389 @@
+package com.javaweb.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Coalesces identical exports that run at the same time. The first request for a payload key leads:
+ * it builds the workbook and tees the package into a spool file as it is written. Requests for the
+ * same key that arrive while it runs follow: they build nothing and stream the spool, tailing it until
+ * the leader completes, so every client receives the same bytes.
+ * <p>
+ * Nothing outlives the build. A flight leaves the table when the leader completes or fails, and its
+ * spool is deleted once the leader and every follower are done with it; finished files are kept by
+ * {@link ExportResultCache}, not here. When the leader's client disconnects, the build carries on for
+ * the followers; with no followers it is abandoned like any other export. Likewise the leader's
+ * {@link ExportCancellation} deadline is not enforced on the build while anyone follows it.
+ * <p>
+ * Followers wait on their own terms: they check their own cancellation while waiting, and give up
+ * when the build writes nothing for {@code export.single-flight.stall-timeout}.
+ */
+@Service
+public class ExportSingleFlight {
+
+    private static final Logger log = LoggerFactory.getLogger(ExportSingleFlight.class);
+
+    private final ExportMetrics metrics;
+    private final boolean enabled;
+    private final long stallNanos;
+    private final ConcurrentHashMap<String, Build> builds = new ConcurrentHashMap<>();
+
+    public ExportSingleFlight(ExportMetrics metrics,
+                              @Value("${export.single-flight.enabled:true}") boolean enabled,
+                              @Value("${export.single-flight.stall-timeout:PT5M}") Duration stallTimeout) {
+        this.metrics = metrics;
+        this.enabled = enabled;
+        this.stallNanos = stallTimeout.toNanos();
+    }
+
+    public boolean enabled() {
+        return enabled;
+    }
+
+    /**
+     * Take part in the export of {@code key}: follow the running build when there is one, otherwise
+     * lead a new one. Returns null when single-flight is off or there is no key. The flight must be
+     * closed once the caller's response is written.
+     * <p>
+     * Both take the {@link ExportCancellation} bound to the calling thread: a leader's deadline is
+     * deferred while the build has followers, a follower's is checked while it waits.
+     */
+    public Flight join(String endpoint, String key) {
+        if (!enabled || key == null) {
+            return null;
+        }
+        ExportCancellation cancellation = ExportCancellation.current();
+        while (true) {
+            Build running = builds.get(key);
+            if (running == null) {
+                Build created = new Build(key, stallNanos);
+                if (builds.putIfAbsent(key, created) == null) {
+                    if (cancellation != null) {
+                        cancellation.deferDeadlineWhile(created::followed);
+                    }
+                    return new Flight(created, true, null);
+                }
+            } else if (running.follow()) {
+                metrics.coalesced(endpoint);
+                log.debug("{} export {} joined the running build", endpoint, key);
+                return new Flight(running, false, cancellation);
+            } else {
+                builds.remove(key, running);
+            }
+        }
+    }
+
+    /** One request's part in a build: its leader, or one of its followers. */
+    public final class Flight implements AutoCloseable {
+        private final Build build;
+        private final boolean leader;
+        /** A follower's own cancellation, checked while it waits for the leader. */
+        private final ExportCancellation cancellation;
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        private Flight(Build build, boolean leader, ExportCancellation cancellation) {
+            this.build = build;
+            this.leader = leader;
+            this.cancellation = cancellation;
+        }
+
+        public boolean leader() {
+            return leader;
+        }
+
+        /**
+         * Leader only: wrap the leader's response stream so everything written also reaches the
+         * followers. If the client goes away while followers are waiting, writing continues for them.
+         */
+        public OutputStream tee(OutputStream client) throws IOException {
+            build.open();
+            return new TeeOutputStream(build, client);
+        }
+
+        /** Leader only: the package is fully written. */
+        public void complete() {
+            build.complete();
+            builds.remove(build.key, build);
+        }
+
+        /** Leader only: the build failed; followers see {@code cause}. */
+        public void fail(Throwable cause) {
+            build.fail(cause);
+            builds.remove(build.key, build);
+        }
+
+        /**
+         * Follower only: wait for the leader to finish and return the package size.
+         *
+         * @throws java.util.concurrent.CancellationException when the follower's own export is cancelled
+         */
+        public long awaitSize() throws IOException {
+            return build.awaitSize(cancellation);
+        }
+
+        /** Follower only: stream the package to {@code out} as the leader writes it. */
+        public void writeTo(OutputStream out) throws IOException {
+            build.writeTo(out, cancellation);
+        }
+
+        /** Bytes of the package written so far; its size once the build completed. */
+        public long size() {
+            return build.written();
+        }
+
+        /** Let go of the build; a leader that did not complete it fails it. */
+        @Override
+        public void close() {
+            if (!closed.compareAndSet(false, true)) {
+                return;
+            }
+            if (leader) {
+                fail(new IOException("Export " + build.key + " was abandoned before it completed"));
+            }
+            build.release(leader);
+        }
+    }
+
+    private static final class Build {
+        /** Longest a follower sleeps before it checks its cancellation again. */
+        private static final long POLL_MILLIS = 250;
+
+        private final String key;
+        private final long stallNanos;
+        /** When the leader last wrote, finished or failed; followers give up once it is too long ago. */
+        private long progressNanos = System.nanoTime();
+        private Path spool;
+        private FileChannel writer;
+        private long written;
+        private boolean done;
+        private Throwable failure;
+        /** Set once the build may not be joined any more: it failed, or the leader gave up on it. */
+        private boolean closedToFollowers;
+        private int followers;
+        /** The leader plus every follower; the spool is deleted when this drops to zero. */
+        private int holders = 1;
+
+        private Build(String key, long stallNanos) {
+            this.key = key;
+            this.stallNanos = stallNanos;
+        }
+
+        synchronized boolean followed() {
+            return followers > 0;
+        }
+
+        synchronized boolean follow() {
+            if (closedToFollowers || holders == 0) {
+                return false;
+            }
+            followers++;
+            holders++;
+            return true;
+        }
+
+        synchronized void open() throws IOException {
+            if (spool == null) {
+                spool = Files.createTempFile("export-flight-", ".xlsx");
+                writer = FileChannel.open(spool, StandardOpenOption.WRITE);
+            }
+        }
+
+        void append(byte[] b, int off, int len) throws IOException {
+            ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+            while (buffer.hasRemaining()) {
+                writer.write(buffer);
+            }
+            synchronized (this) {
+                written += len;
+                progressNanos = System.nanoTime();
+                notifyAll();
+            }
+        }
+
+        /** The leader's client is gone: keep writing if someone is following, otherwise give up. */
+        synchronized boolean detachLeader() {
+            if (followers == 0) {
+                closedToFollowers = true;
+                return false;
+            }
+            return true;
+        }
+
+        synchronized void complete() {
+            if (failure == null) {
+                done = true;
+            }
+            closeWriter();
+            notifyAll();
+        }
+
+        synchronized void fail(Throwable cause) {
+            if (!done && failure == null) {
+                failure = cause;
+            }
+            closedToFollowers = true;
+            closeWriter();
+            notifyAll();
+        }
+
+        synchronized long written() {
+            return written;
+        }
+
+        synchronized long awaitSize(ExportCancellation cancellation) throws IOException {
+            while (!done) {
+                awaitChange(cancellation);
+            }
+            return written;
+        }
+
+        void writeTo(OutputStream out, ExportCancellation cancellation) throws IOException {
+            WritableByteChannel target = Channels.newChannel(out);
+            FileChannel reader = null;
+            long position = 0;
+            try {
+                while (true) {
+                    long available;
+                    boolean finished;
+                    synchronized (this) {
+                        while (written == position && !done) {
+                            awaitChange(cancellation);
+                        }
+                        available = written;
+                        finished = done;
+                    }
+                    if (position < available) {
+                        if (reader == null) {
+                            reader = FileChannel.open(spool, StandardOpenOption.READ);
+                        }
+                        while (position < available) {
+                            position += reader.transferTo(position, available - position, target);
+                        }
+                    } else if (finished) {
+                        return;
+                    }
+                }
+            } finally {
+                if (reader != null) {
+                    reader.close();
+                }
+            }
+        }
+
+        /**
+         * Wait a while for the leader to write more, finish or fail; callers loop until what they wait
+         * for has happened. Called holding the lock.
+         */
+        private void awaitChange(ExportCancellation cancellation) throws IOException {
+            if (failure != null) {
+                throw new IOException("Coalesced export " + key + " failed", failure);
+            }
+            if (cancellation != null) {
+                cancellation.check();
+            }
+            long stalled = System.nanoTime() - progressNanos;
+            if (stalled >= stallNanos) {
+                throw new IOException("Coalesced export " + key + " wrote nothing for "
+                        + Duration.ofNanos(stalled).toMillis() + " ms; giving up on it");
+            }
+            try {
+                wait(Math.max(1, Math.min(POLL_MILLIS, TimeUnit.NANOSECONDS.toMillis(stallNanos - stalled))));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while following export " + key);
+            }
+            if (failure != null) {
+                throw new IOException("Coalesced export " + key + " failed", failure);
+            }
+        }
+
+        synchronized void release(boolean leader) {
+            if (!leader) {
+                followers--;
+            }
+            if (--holders == 0 && spool != null) {
+                try {
+                    Files.deleteIfExists(spool);
+                } catch (IOException e) {
+                    log.warn("Could not delete single-flight spool {}", spool, e);
+                }
+            }
+        }
+
+        private void closeWriter() {
+            if (writer == null) {
+                return;
+            }
+            try {
+                writer.close();
+            } catch (IOException e) {
+                log.warn("Could not close single-flight spool {}", spool, e);
+            }
+        }
+    }
+
+    /** Writes to the spool first, then to the leader's client for as long as it is there. */
+    private static final class TeeOutputStream extends OutputStream {
+        private final Build build;
+        private final OutputStream client;
+        private boolean clientOpen = true;
+
+        private TeeOutputStream(Build build, OutputStream client) {
+            this.build = build;
+            this.client = client;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            build.append(b, off, len);
+            if (clientOpen) {
+                try {
+                    client.write(b, off, len);
+                } catch (IOException e) {
+                    clientLost(e);
+                }
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (clientOpen) {
+                try {
+                    client.flush();
+                } catch (IOException e) {
+                    clientLost(e);
+                }
+            }
+        }
+
+        private void clientLost(IOException e) throws IOException {
+            clientOpen = false;
+            if (!build.detachLeader()) {
+                throw e;
+            }
+            log.debug("Client of export {} went away; finishing it for the requests following it", build.key);
+        }
+    }
+}
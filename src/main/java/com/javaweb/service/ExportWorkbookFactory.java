@@ -0,0 +1,111 @@
+package com.javaweb.service;
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.streaming.SXSSFSheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+
+/**
+ * Creates workbooks for the configured {@link ExportEngine}.
+ */
+@Component
+public class ExportWorkbookFactory {
+
+    /** Smallest streaming window accepted from configuration; a few header blocks deep. */
+    private static final int MIN_ROW_WINDOW = 8;
+
+    private final ExportEngine defaultEngine;
+    private final int rowWindow;
+
+    public ExportWorkbookFactory(@Value("${export.engine:XSSF}") ExportEngine defaultEngine,
+                                 @Value("${export.sxssf.row-window:200}") int rowWindow) {
+        this.defaultEngine = defaultEngine != null ? defaultEngine : ExportEngine.XSSF;
+        this.rowWindow = Math.max(MIN_ROW_WINDOW, rowWindow);
+    }
+
+    public ExportEngine defaultEngine() {
+        return defaultEngine;
+    }
+
+    public int rowWindow() {
+        return rowWindow;
+    }
+
+    /** Create an empty workbook; {@link ExportEngine#DIRECT} has no POI workbook and falls back to XSSF. */
+    public Workbook create(ExportEngine engine) {
+        ExportEngine effective = engine != null ? engine : defaultEngine;
+        if (effective == ExportEngine.SXSSF) {
+            return new StreamingWorkbook(rowWindow);
+        }
+        return new XSSFWorkbook();
+    }
+
+    /**
+     * Release the workbook. Closing a streaming workbook also deletes the temp files it keeps on disk, which
+     * the deprecated {@code SXSSFWorkbook.dispose()} used to do. {@code close()} closes each sheet's writer
+     * before flushing its row window and logs a warning for every sheet with rows left, so the window of a
+     * workbook abandoned mid-build is flushed first.
+     */
+    public static void release(Workbook workbook) throws IOException {
+        if (workbook == null) {
+            return;
+        }
+        try {
+            if (workbook instanceof SXSSFWorkbook streaming) {
+                for (Sheet sheet : streaming) {
+                    ((SXSSFSheet) sheet).flushRows();
+                }
+            }
+        } finally {
+            workbook.close();
+        }
+    }
+
+    /**
+     * Release a workbook whose build failed with {@code failure}, so a cancelled or broken export gives
+     * back its memory and SXSSF temp files at once; a failure to release is added to {@code failure}.
+     */
+    static void discard(Workbook workbook, Throwable failure) {
+        try {
+            release(workbook);
+        } catch (IOException e) {
+            failure.addSuppressed(e);
+        }
+    }
+
+    /**
+     * SXSSF workbook that packages through a {@link PoiExportDocument.MeteredZipOutputStream} at a chosen
+     * deflate level, so compression profiles apply to streamed exports as they do to XSSF ones.
+     */
+    static final class StreamingWorkbook extends SXSSFWorkbook {
+        private int level = Deflater.DEFAULT_COMPRESSION;
+        private PoiExportDocument.MeteredZipOutputStream archive;
+
+        StreamingWorkbook(int rowWindow) {
+            super(rowWindow);
+        }
+
+        /** Write the package deflated at {@code level}; returns the stream it went through, for its counters. */
+        PoiExportDocument.MeteredZipOutputStream write(OutputStream out, int level) throws IOException {
+            this.level = level;
+            write(out);
+            return archive;
+        }
+
+        @Override
+        protected ZipArchiveOutputStream createArchiveOutputStream(OutputStream out) {
+            archive = new PoiExportDocument.MeteredZipOutputStream(out);
+            archive.setLevel(level);
+            archive.setUseZip64(zip64Mode);
+            return archive;
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.javaweb.service;
+
+import org.apache.poi.ss.usermodel.Font;
+
+/**
+ * Value description of a font; two equal specs always resolve to the same workbook font.
+ */
+public record FontSpec(String name,
+                       short heightInPoints,
+                       boolean bold,
+                       boolean italic,
+                       byte underline,
+                       short color) {
+
+    /** Marker for "leave the font colour unset". */
+    public static final short DEFAULT_COLOR = -1;
+
+    public static FontSpec of(String name, int heightInPoints) {
+        return new FontSpec(name, (short) heightInPoints, false, false, Font.U_NONE, DEFAULT_COLOR);
+    }
+
+    public FontSpec withBold() {
+        return new FontSpec(name, heightInPoints, true, italic, underline, color);
+    }
+
+    public FontSpec withItalic() {
+        return new FontSpec(name, heightInPoints, bold, true, underline, color);
+    }
+
+    public FontSpec withUnderline(byte underline) {
+        return new FontSpec(name, heightInPoints, bold, italic, underline, color);
+    }
+
+    public FontSpec withColor(short color) {
+        return new FontSpec(name, heightInPoints, bold, italic, underline, color);
+    }
+}
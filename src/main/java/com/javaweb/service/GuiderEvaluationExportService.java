@@ -1,5 +1,6 @@
 package com.javaweb.service;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.javaweb.dto.GuiderEvaluationDto;
 import com.javaweb.dto.GuiderEvaluationDto.EvaluationForm;
 import com.javaweb.dto.GuiderEvaluationDto.Indicator;
@@ -7,20 +8,33 @@ import com.javaweb.dto.GuiderEvaluationDto.Pi;
 import com.javaweb.dto.GuiderEvaluationDto.Score;
 import com.javaweb.dto.GuiderEvaluationDto.Student;
 import com.javaweb.dto.GuiderEvaluationDto.StudentEvaluation;
+import com.javaweb.service.ExportMetrics.Phase;
+import com.javaweb.service.SheetModel.RowModel;
 import org.apache.poi.ss.usermodel.*;
 import org.apache.poi.ss.util.CellRangeAddress;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 @Service
 public class GuiderEvaluationExportService {
 
+    private static final Logger log = LoggerFactory.getLogger(GuiderEvaluationExportService.class);
+
     private static final ColumnType[] GVHD_COLUMNS = {
             ColumnType.ORDER,
             ColumnType.STUDENT_ID,
@@ -40,16 +54,120 @@ public class GuiderEvaluationExportService {
             ColumnType.REVIEWER
     };
 
+    /** Style specs are immutable values, so one set serves every workbook. */
+    private static final Styles STYLES = new Styles();
+
     private static final SheetLayout GVHD_SHEET =
             new SheetLayout("GVHD_CaNhan", GVHD_COLUMNS, styles -> Collections.emptyList());
 
+    private final ExportWorkbookFactory workbookFactory;
+    private final ExportPackager packager;
+    private final ExportMetrics metrics;
+    private final ExportEngineSelector engineSelector;
+    private final ObjectMapper objectMapper;
+    /** Layout plans keyed by form/template structure; forms rarely change within a semester. */
+    private final BoundedLruCache<LayoutKey, LayoutPlan> layoutPlans;
+    /** Tee streamed students to disk so a layout change after the forms can be rebuilt. */
+    private final boolean spillOnLayoutChange;
+
+    public GuiderEvaluationExportService(ExportWorkbookFactory workbookFactory,
+                                         ExportPackager packager,
+                                         ExportMetrics metrics,
+                                         ExportEngineSelector engineSelector,
+                                         ObjectMapper objectMapper,
+                                         @Value("${export.layout-cache.size:64}") int layoutCacheSize,
+                                         @Value("${export.stream.spill-on-layout-change:false}") boolean spillOnLayoutChange) {
+        this.workbookFactory = workbookFactory;
+        this.packager = packager;
+        this.metrics = metrics;
+        this.engineSelector = engineSelector;
+        this.objectMapper = objectMapper;
+        this.layoutPlans = new BoundedLruCache<>(layoutCacheSize);
+        this.spillOnLayoutChange = spillOnLayoutChange;
+    }
+
+    /** Tagged with {@link #exportType()}, which subclasses override, so not called from the constructor. */
+    @PostConstruct
+    void registerMetrics() {
+        metrics.layoutCache(exportType(), "layout-plans", layoutPlans);
+    }
+
     public Workbook buildWorkbook(GuiderEvaluationDto.Root root) {
         return buildWorkbook(root, GVHD_SHEET);
     }
 
+    /**
+     * Build the export with {@code engine}; {@link ExportEngine#DIRECT} writes the sheet model straight
+     * to SpreadsheetML without a POI workbook.
+     */
+    public ExportDocument buildDocument(GuiderEvaluationDto.Root root, ExportEngine engine) {
+        return buildDocument(root, GVHD_SHEET, engine);
+    }
+
+    /**
+     * Build the workbook straight from a {@code GuiderEvaluationDto.Root} JSON body, one student at a time.
+     * See {@link #streamWorkbook(GuiderStudentSource, SheetLayout)}.
+     */
+    public Workbook buildWorkbook(InputStream json) throws IOException {
+        return streamJson(json, GVHD_SHEET);
+    }
+
+    /**
+     * Build the workbook from newline-delimited JSON: the evaluation forms on the first line, then one
+     * student per line. Rows are written as lines arrive.
+     */
+    public Workbook buildWorkbookFromNdjson(InputStream ndjson) throws IOException {
+        return streamNdjson(ndjson, GVHD_SHEET);
+    }
+
+    /** Size of the export {@code root} would produce, estimated without laying anything out. */
+    public ExportCostEstimate estimate(GuiderEvaluationDto.Root root) {
+        return estimate(root, GVHD_SHEET);
+    }
+
     protected Workbook buildWorkbook(GuiderEvaluationDto.Root root, SheetLayout sheetLayout) {
-        Workbook workbook = new XSSFWorkbook();
-        Styles styles = new Styles(workbook);
+        return buildWorkbook(root, sheetLayout, workbookFactory.defaultEngine());
+    }
+
+    protected ExportCostEstimate estimate(GuiderEvaluationDto.Root root, SheetLayout sheetLayout) {
+        return ExportCostEstimate.of(root, sheetLayout.columns().length);
+    }
+
+    protected ExportDocument buildDocument(GuiderEvaluationDto.Root root, SheetLayout sheetLayout, ExportEngine engine) {
+        ExportEngine effective = engineSelector.select(exportType(), engine, () -> estimate(root, sheetLayout));
+        if (effective == ExportEngine.DIRECT) {
+            return packager.document(List.of(
+                    new SpreadsheetMLDocument.SheetPart(sheetName(sheetLayout), layoutSheet(root, sheetLayout))));
+        }
+        return ExportDocument.of(buildWorkbook(root, sheetLayout, effective));
+    }
+
+    private Workbook buildWorkbook(GuiderEvaluationDto.Root root, SheetLayout sheetLayout, ExportEngine engine) {
+        SheetModel model = layoutSheet(root, sheetLayout);
+        String sheetName = sheetName(sheetLayout);
+
+        Workbook workbook = workbookFactory.create(engine);
+        try {
+            StyleRegistry registry = new StyleRegistry(workbook);
+            metrics.time(exportType(), Phase.POPULATE,
+                    () -> new PoiSheetRenderer(registry).render(model, workbook.createSheet(sheetName)));
+
+            logStyleStats(sheetName, registry);
+            metrics.styles(registry.stats().styles());
+            return workbook;
+        } catch (RuntimeException | Error e) {
+            ExportWorkbookFactory.discard(workbook, e);
+            throw e;
+        }
+    }
+
+    /** Lay the whole sheet out as a {@link SheetModel}; shared by the POI and direct backends. */
+    private SheetModel layoutSheet(GuiderEvaluationDto.Root root, SheetLayout sheetLayout) {
+        return ExportSheetEvent.record(exportType(), sheetName(sheetLayout), () -> buildSheet(root, sheetLayout));
+    }
+
+    private SheetModel buildSheet(GuiderEvaluationDto.Root root, SheetLayout sheetLayout) {
+        Styles styles = STYLES;
 
         List<EvaluationForm> forms = root != null && root.getEvaluationForm() != null
                 ? root.getEvaluationForm()
@@ -58,21 +176,163 @@ public class GuiderEvaluationExportService {
                 ? root.getStudents()
                 : Collections.emptyList();
 
-        List<FormBlock> blocks = buildBlocks(forms, students, styles, workbook);
-        List<ExtraColumn> extraColumns = sheetLayout != null && sheetLayout.extraColumnBuilder() != null
+        long start = System.nanoTime();
+        LayoutPlan layoutPlan = layoutPlan(forms, students);
+        List<FormBlock> blocks = buildBlocks(layoutPlan, styles);
+        ScoreMatrix scores = scoreMatrix(layoutPlan, students);
+        List<ExtraColumn> extraColumns = extraColumns(sheetLayout, styles);
+        ColumnType[] layout = columns(sheetLayout);
+        long planned = System.nanoTime();
+        metrics.record(exportType(), Phase.LAYOUT, planned - start);
+
+        SheetModel sheet = new SheetModel();
+        int rowIndex = writeSheetHeader(sheet, layout, blocks, extraColumns, styles);
+        populateRows(sheet, rowIndex, students, layout, blocks, scores, extraColumns, styles);
+        metrics.record(exportType(), Phase.POPULATE, System.nanoTime() - planned);
+        metrics.sheet(exportType(), sheet);
+        return sheet;
+    }
+
+    protected Workbook streamJson(InputStream json, SheetLayout sheetLayout) throws IOException {
+        return streamWorkbook(new JsonGuiderStudentSource(objectMapper, json), sheetLayout);
+    }
+
+    protected Workbook streamNdjson(InputStream ndjson, SheetLayout sheetLayout) throws IOException {
+        return streamWorkbook(new NdjsonGuiderStudentSource(objectMapper, ndjson), sheetLayout);
+    }
+
+    /**
+     * Streaming build: rows are written to an SXSSF sheet as students are read, so memory is bounded
+     * by one student plus the row window.
+     * <p>
+     * The column layout must be known before the first row. That holds when the forms precede the
+     * students and every form lists its PIs, and then nothing is written to disk. Otherwise the students
+     * are spilled to a {@link StudentSpill} and the sheet is built from it with the layout derived from
+     * the whole cohort, exactly as {@link #buildWorkbook(GuiderEvaluationDto.Root, SheetLayout)} would lay
+     * it out.
+     * <p>
+     * A student carrying an evaluation none of the leading forms covers, or forms that change after the
+     * students, make the rows already written wrong. Such a payload is rejected unless
+     * {@code export.stream.spill-on-layout-change} is set, which tees every student to the spill so the
+     * sheet can be rebuilt, at the cost of writing the cohort to disk on every streaming export.
+     */
+    private Workbook streamWorkbook(GuiderStudentSource source, SheetLayout sheetLayout) throws IOException {
+        TimedStudentSource timed = new TimedStudentSource(source);
+        List<EvaluationForm> leadingForms = timed.formsBeforeStudents();
+        boolean layoutKnown = leadingForms != null && formsDefineLayout(leadingForms);
+        try (StudentSpill spill = layoutKnown && !spillOnLayoutChange ? null : new StudentSpill(objectMapper)) {
+            if (layoutKnown) {
+                Workbook workbook = workbookFactory.create(ExportEngine.SXSSF);
+                boolean complete = false;
+                try {
+                    StudentRowWriter rows = openStreamingSheet(workbook,
+                            layoutPlan(leadingForms, Collections.emptyList()), sheetLayout);
+                    Student student;
+                    while ((student = timed.nextStudent()) != null) {
+                        if (spill != null) {
+                            spill.append(student);
+                        }
+                        if (!rows.covers(student)) {
+                            break;
+                        }
+                        rows.write(student);
+                    }
+                    complete = student == null && source.forms() == leadingForms;
+                    if (complete) {
+                        rows.finish();
+                        metrics.record(exportType(), Phase.DESERIALIZE, timed.nanos);
+                        return workbook;
+                    }
+                    if (spill == null) {
+                        throw new IllegalArgumentException("Streaming " + sheetName(sheetLayout)
+                                + " export: the forms before the students do not cover every evaluation; list them"
+                                + " all first or enable export.stream.spill-on-layout-change");
+                    }
+                    log.debug("Streaming {} export layout changed after {} students; rebuilding from spill",
+                            sheetName(sheetLayout), spill.size());
+                } finally {
+                    if (!complete) {
+                        ExportWorkbookFactory.release(workbook);
+                    }
+                }
+            }
+
+            Student student;
+            while ((student = timed.nextStudent()) != null) {
+                spill.append(student);
+            }
+            metrics.record(exportType(), Phase.DESERIALIZE, timed.nanos);
+            Workbook workbook = workbookFactory.create(ExportEngine.SXSSF);
+            try {
+                StudentRowWriter rows = openStreamingSheet(workbook, layoutPlan(source.forms(), spill), sheetLayout);
+                for (Student spilled : spill) {
+                    rows.write(spilled);
+                }
+                rows.finish();
+                return workbook;
+            } catch (RuntimeException | IOException e) {
+                ExportWorkbookFactory.release(workbook);
+                throw e;
+            }
+        }
+    }
+
+    /** True when no form needs student data (a score template) to know its columns. */
+    private boolean formsDefineLayout(List<EvaluationForm> forms) {
+        for (EvaluationForm form : forms) {
+            if (form != null && form.getEvaluationId() != null && expandPis(form).isEmpty()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private StudentRowWriter openStreamingSheet(Workbook workbook, LayoutPlan plan, SheetLayout sheetLayout) {
+        StyleRegistry registry = new StyleRegistry(workbook);
+        PoiSheetRenderer renderer = new PoiSheetRenderer(registry);
+        Styles styles = STYLES;
+        List<FormBlock> blocks = metrics.time(exportType(), Phase.LAYOUT, () -> buildBlocks(plan, styles));
+        List<ExtraColumn> extras = extraColumns(sheetLayout, styles);
+        ColumnType[] layout = columns(sheetLayout);
+
+        ExportSheetEvent event = new ExportSheetEvent();
+        event.begin();
+        long start = System.nanoTime();
+        SheetModel header = new SheetModel();
+        int firstRow = writeSheetHeader(header, layout, blocks, extras, styles);
+        Sheet sheet = workbook.createSheet(sheetName(sheetLayout));
+        renderer.render(header, sheet);
+        StudentRowWriter rows = new StudentRowWriter(sheet, renderer, firstRow, plan, layout, blocks, extras, styles,
+                registry, header, event);
+        rows.populateNanos = System.nanoTime() - start;
+        return rows;
+    }
+
+    private List<ExtraColumn> extraColumns(SheetLayout sheetLayout, Styles styles) {
+        return sheetLayout != null && sheetLayout.extraColumnBuilder() != null
                 ? sheetLayout.extraColumnBuilder().build(styles)
                 : Collections.emptyList();
+    }
 
-        String sheetName = sheetLayout != null ? sheetLayout.sheetName() : "Export";
-        ColumnType[] layout = sheetLayout != null ? sheetLayout.columns() : GVHD_COLUMNS;
+    private String sheetName(SheetLayout sheetLayout) {
+        return sheetLayout != null ? sheetLayout.sheetName() : "Export";
+    }
 
-        buildSheet(workbook, sheetName, layout, students, blocks, extraColumns, styles);
+    private ColumnType[] columns(SheetLayout sheetLayout) {
+        return sheetLayout != null ? sheetLayout.columns() : GVHD_COLUMNS;
+    }
 
-        if (workbook.getNumberOfSheets() == 0) {
-            workbook.createSheet("Empty");
+    private void logStyleStats(String sheetName, StyleRegistry registry) {
+        if (log.isDebugEnabled()) {
+            StyleRegistry.Stats stats = registry.stats();
+            log.debug("{} export created {} cell styles and {} fonts for {} style lookups",
+                    sheetName, stats.styles(), stats.fonts(), stats.lookups());
         }
+    }
 
-        return workbook;
+    /** Value of the {@code endpoint} tag on this service's metrics. */
+    protected String exportType() {
+        return ExportMetrics.GUIDER;
     }
 
     /**
@@ -82,15 +342,12 @@ public class GuiderEvaluationExportService {
         return 0;
     }
 
-    private void buildSheet(Workbook workbook,
-                            String sheetName,
-                            ColumnType[] layout,
-                            List<Student> students,
-                            List<FormBlock> blocks,
-                            List<ExtraColumn> extras,
-                            Styles styles) {
-
-        Sheet sheet = workbook.createSheet(sheetName);
+    /** Column widths, leading blank rows and the three header rows; returns the first data row. */
+    private int writeSheetHeader(SheetModel sheet,
+                                 ColumnType[] layout,
+                                 List<FormBlock> blocks,
+                                 List<ExtraColumn> extras,
+                                 Styles styles) {
         configureColumns(sheet, layout, blocks, extras);
 
         int headerRowIndex = headerStartRow();
@@ -102,11 +359,10 @@ public class GuiderEvaluationExportService {
             }
         }
 
-        int rowIndex = buildHeader(sheet, headerRowIndex, layout, blocks, extras, styles);
-        populateRows(sheet, rowIndex, students, layout, blocks, extras, styles);
+        return buildHeader(sheet, headerRowIndex, layout, blocks, extras, styles);
     }
 
-    private void configureColumns(Sheet sheet,
+    private void configureColumns(SheetModel sheet,
                                   ColumnType[] layout,
                                   List<FormBlock> blocks,
                                   List<ExtraColumn> extras) {
@@ -116,7 +372,7 @@ public class GuiderEvaluationExportService {
 
         int column = layout.length;
         for (FormBlock block : blocks) {
-            for (int i = 0; i < block.piEntries().size(); i++) {
+            for (int i = 0; i < block.plan().width(); i++) {
                 sheet.setColumnWidth(column++, 22 * 256);
             }
         }
@@ -128,16 +384,16 @@ public class GuiderEvaluationExportService {
         }
     }
 
-    private int buildHeader(Sheet sheet,
+    private int buildHeader(SheetModel sheet,
                             int startRow,
                             ColumnType[] layout,
                             List<FormBlock> blocks,
                             List<ExtraColumn> extras,
                             Styles styles) {
 
-        Row row0 = sheet.createRow(startRow);
-        Row row2 = sheet.createRow(startRow + 1);
-        Row row3 = sheet.createRow(startRow + 2);
+        RowModel row0 = sheet.createRow(startRow);
+        RowModel row2 = sheet.createRow(startRow + 1);
+        RowModel row3 = sheet.createRow(startRow + 2);
 
         for (int i = 0; i < layout.length; i++) {
             merge(sheet, startRow, startRow + 2, i, i);
@@ -146,36 +402,30 @@ public class GuiderEvaluationExportService {
             setCell(row3, i, "", styles.header);
         }
 
-        int columnIndex = layout.length;
+        int firstBlockColumn = layout.length;
+        int columnIndex = firstBlockColumn;
         for (FormBlock block : blocks) {
-            int blockSize = block.piEntries().size();
-            int blockStart = columnIndex;
-            int blockEnd = columnIndex + blockSize - 1;
+            BlockPlan plan = block.plan();
+            int blockStart = firstBlockColumn + plan.offset();
+            int blockEnd = blockStart + plan.width() - 1;
 
             merge(sheet, row0.getRowNum(), row0.getRowNum(), blockStart, blockEnd);
             applyHorizontalBorder(sheet, row0.getRowNum(), blockStart, blockEnd, block.headerStyle());
-            setCell(row0, blockStart, blockTitle(block.form()), block.headerStyle());
+            setCell(row0, blockStart, plan.title(), block.headerStyle());
 
-            String currentIndicator = null;
-            int indicatorStart = columnIndex;
-            for (PiEntry entry : block.piEntries()) {
-                if (currentIndicator == null) {
-                    currentIndicator = entry.indicatorLabel();
-                } else if (!currentIndicator.equals(entry.indicatorLabel())) {
-                    setIndicatorHeader(sheet, row2, indicatorStart, columnIndex - 1, currentIndicator, block.headerStyle());
-                    indicatorStart = columnIndex;
-                    currentIndicator = entry.indicatorLabel();
-                }
-                setCell(row3, columnIndex++, entry.label(), block.headerStyle());
+            for (IndicatorSpan span : plan.indicators()) {
+                setIndicatorHeader(sheet, row2, firstBlockColumn + span.start(), firstBlockColumn + span.end(),
+                        span.label(), block.headerStyle());
             }
-            if (currentIndicator != null) {
-                setIndicatorHeader(sheet, row2, indicatorStart, columnIndex - 1, currentIndicator, block.headerStyle());
+            columnIndex = blockStart;
+            for (PiEntry entry : plan.piEntries()) {
+                setCell(row3, columnIndex++, entry.label(), block.headerStyle());
             }
         }
 
         if (extras != null) {
             for (ExtraColumn extra : extras) {
-                CellStyle headerStyle = extra.headerStyle() != null ? extra.headerStyle() : styles.header;
+                StyleSpec headerStyle = extra.headerStyle() != null ? extra.headerStyle() : styles.header;
                 merge(sheet, startRow, startRow + 2, columnIndex, columnIndex);
                 setCell(row0, columnIndex, extra.header(), headerStyle);
                 setCell(row2, columnIndex, "", headerStyle);
@@ -187,75 +437,206 @@ public class GuiderEvaluationExportService {
         return startRow + 3;
     }
 
-    private void populateRows(Sheet sheet,
+    private void populateRows(SheetModel sheet,
                               int startRow,
                               List<Student> students,
                               ColumnType[] layout,
                               List<FormBlock> blocks,
+                              ScoreMatrix scores,
                               List<ExtraColumn> extras,
                               Styles styles) {
 
         int rowIndex = startRow;
         int order = 1;
+        int studentRow = 0;
 
         for (Student student : students) {
-            Row row = sheet.createRow(rowIndex++);
-            String[] nameParts = splitName(student.getStudentName());
-            int baseColumnIndex = 0;
-            for (ColumnType column : layout) {
-                switch (column) {
-                    case ORDER -> setCell(row, baseColumnIndex, order, styles.cellCenter);
-                    case STUDENT_ID -> setCell(row, baseColumnIndex, nullSafe(student.getStudentId()), styles.cellCenter);
-                    case STUDENT_LAST -> setCell(row, baseColumnIndex, nameParts[0], styles.cellLeft);
-                    case STUDENT_FIRST -> setCell(row, baseColumnIndex, nameParts[1], styles.cellLeft);
-                    case GUIDER -> setCell(row, baseColumnIndex, nullSafe(student.getGuiderName()), styles.cellLeftWrap);
-                    case PROJECT -> setCell(row, baseColumnIndex, nullSafe(student.getProjectName()), styles.cellLeftWrap);
-                    case REVIEWER -> setCell(row, baseColumnIndex, nullSafe(student.getReviewerName()), styles.cellLeftWrap);
-                }
+            ExportCancellation.checkpoint();
+            order = writeStudentRow(sheet.createRow(rowIndex++), order, student, layout, blocks,
+                    scores, studentRow++, extras, styles);
+        }
+    }
 
-                if (column == ColumnType.ORDER) {
-                    order++;
-                }
-                baseColumnIndex++;
+    /** Write one student's row; returns the next value of the running order number. */
+    private int writeStudentRow(RowModel row,
+                                int order,
+                                Student student,
+                                ColumnType[] layout,
+                                List<FormBlock> blocks,
+                                ScoreMatrix scores,
+                                int scoreRow,
+                                List<ExtraColumn> extras,
+                                Styles styles) {
+        String[] nameParts = splitName(student.getStudentName());
+        int baseColumnIndex = 0;
+        for (ColumnType column : layout) {
+            switch (column) {
+                case ORDER -> setCell(row, baseColumnIndex, order, styles.cellCenter);
+                case STUDENT_ID -> setCell(row, baseColumnIndex, nullSafe(student.getStudentId()), styles.cellCenter);
+                case STUDENT_LAST -> setCell(row, baseColumnIndex, nameParts[0], styles.cellLeft);
+                case STUDENT_FIRST -> setCell(row, baseColumnIndex, nameParts[1], styles.cellLeft);
+                case GUIDER -> setCell(row, baseColumnIndex, nullSafe(student.getGuiderName()), styles.cellLeftWrap);
+                case PROJECT -> setCell(row, baseColumnIndex, nullSafe(student.getProjectName()), styles.cellLeftWrap);
+                case REVIEWER -> setCell(row, baseColumnIndex, nullSafe(student.getReviewerName()), styles.cellLeftWrap);
             }
 
-            Map<String, StudentEvaluation> evaluationMap = student != null
-                    ? student.evaluationMap()
-                    : Collections.emptyMap();
-
-            int columnIndex = layout.length;
-            for (FormBlock block : blocks) {
-                StudentEvaluation evaluation = evaluationMap.get(
-                        block.form() != null ? block.form().getEvaluationId() : null);
-                Map<String, Double> scoreMap = evaluation != null ? evaluation.scoreMap() : Collections.emptyMap();
+            if (column == ColumnType.ORDER) {
+                order++;
+            }
+            baseColumnIndex++;
+        }
 
-                for (PiEntry entry : block.piEntries()) {
-                    Double value = scoreMap.get(entry.piId());
-                    setCell(row, columnIndex++, value, block.cellStyle());
-                }
+        int columnIndex = layout.length;
+        for (FormBlock block : blocks) {
+            int scoreColumn = block.plan().offset();
+            for (int i = 0; i < block.plan().width(); i++) {
+                setScoreCell(row, columnIndex++, scores.get(scoreRow, scoreColumn++), block.cellStyle());
             }
+        }
 
-            if (extras != null) {
-                for (ExtraColumn extra : extras) {
-                    Object value = extra.valueProvider() != null ? extra.valueProvider().apply(student) : "";
-                    setCell(row, columnIndex++, value, extra.cellStyle());
-                }
+        if (extras != null) {
+            for (ExtraColumn extra : extras) {
+                Object value = extra.valueProvider() != null ? extra.valueProvider().apply(student) : "";
+                setCell(row, columnIndex++, value, extra.cellStyle());
             }
         }
+        return order;
     }
 
-    private List<FormBlock> buildBlocks(List<EvaluationForm> forms,
-                                        List<Student> students,
-                                        Styles styles,
-                                        Workbook workbook) {
-        List<FormBlock> blocks = new ArrayList<>();
-        Map<String, EvaluationTemplate> templates = buildEvaluationTemplates(students);
+    private List<FormBlock> buildBlocks(LayoutPlan layoutPlan, Styles styles) {
         short[] palette = blockPalette();
         if (palette == null || palette.length == 0) {
             palette = new short[]{IndexedColors.ROSE.getIndex()};
         }
 
-        List<String> covered = new ArrayList<>();
+        List<FormBlock> blocks = new ArrayList<>(layoutPlan.blocks().size());
+        for (BlockPlan plan : layoutPlan.blocks()) {
+            short color = palette[plan.paletteSlot() % palette.length];
+            blocks.add(new FormBlock(plan, styles.header.withSolidFill(color), styles.cellCenter.withSolidFill(color)));
+        }
+        return blocks;
+    }
+
+    /**
+     * Pre-pass that resolves every student's scores into a dense matrix aligned with the plan's columns.
+     * Matches the previous map lookups: the first evaluation per id wins and, within it, the first
+     * non-null score per PI.
+     */
+    private ScoreMatrix scoreMatrix(LayoutPlan plan, List<Student> students) {
+        ScoreMatrix matrix = new ScoreMatrix(students.size(), plan.width());
+        int[] claimedByRow = new int[plan.blocks().size()];
+        for (int row = 0; row < students.size(); row++) {
+            fillScores(plan, students.get(row), matrix, row, claimedByRow, row + 1);
+        }
+        return matrix;
+    }
+
+    /**
+     * Resolve one student's scores into {@code row} of {@code matrix}. A block whose {@code claimed} slot
+     * already holds {@code token} was filled by an earlier evaluation of the same student.
+     */
+    private void fillScores(LayoutPlan plan, Student student, ScoreMatrix matrix, int row, int[] claimed, int token) {
+        if (student == null || student.getEvaluations() == null) {
+            return;
+        }
+        for (StudentEvaluation evaluation : student.getEvaluations()) {
+            if (evaluation == null) {
+                continue;
+            }
+            int[] blockIndexes = plan.blocksFor(evaluation.getEvaluationId());
+            if (blockIndexes.length == 0 || claimed[blockIndexes[0]] == token) {
+                continue;
+            }
+            for (int blockIndex : blockIndexes) {
+                claimed[blockIndex] = token;
+            }
+            if (evaluation.getScores() == null) {
+                continue;
+            }
+            for (Score score : evaluation.getScores()) {
+                if (score == null || score.getPiId() == null || score.getScore() == null) {
+                    continue;
+                }
+                for (int blockIndex : blockIndexes) {
+                    for (int column : plan.blocks().get(blockIndex).piColumns().columnsOf(score.getPiId())) {
+                        matrix.offer(row, column, score.getScore());
+                    }
+                }
+            }
+        }
+    }
+
+    private LayoutPlan layoutPlan(List<EvaluationForm> forms, Iterable<Student> students) {
+        return layoutPlans.computeIfAbsent(layoutKey(forms, students), key -> planLayout(forms, students));
+    }
+
+    /**
+     * Hash every input that influences the column layout: the form structure (ids, titles, indicators, PIs)
+     * and the first occurrence of each evaluation in the student list, which drives template blocks.
+     */
+    private LayoutKey layoutKey(List<EvaluationForm> forms, Iterable<Student> students) {
+        StructuralHash hash = new StructuralHash();
+        StringBuilder formKeys = new StringBuilder();
+        List<EvaluationForm> formList = forms != null ? forms : Collections.emptyList();
+        hash.add(formList.size());
+        for (EvaluationForm form : formList) {
+            if (form == null) {
+                hash.add(-1);
+                continue;
+            }
+            formKeys.append(nullSafe(form.getFormKey())).append(';');
+            hash.add(form.getFormKey())
+                    .add(form.getEvaluationId())
+                    .add(form.getTitle())
+                    .add(form.getReportWeek());
+            List<Indicator> indicators = form.getIndicators() != null ? form.getIndicators() : Collections.emptyList();
+            hash.add(indicators.size());
+            for (Indicator indicator : indicators) {
+                if (indicator == null) {
+                    hash.add(-1);
+                    continue;
+                }
+                hash.add(indicator.getCloId())
+                        .add(indicator.getCloName())
+                        .add(indicator.getCloDescription());
+                List<Pi> pis = indicator.getPis() != null ? indicator.getPis() : Collections.emptyList();
+                hash.add(pis.size());
+                for (Pi pi : pis) {
+                    if (pi == null) {
+                        hash.add(-1);
+                        continue;
+                    }
+                    hash.add(pi.getCloPisId()).add(pi.getCloPisDescription());
+                }
+            }
+        }
+
+        Set<String> seenEvaluations = new HashSet<>();
+        for (Student student : students != null ? students : Collections.<Student>emptyList()) {
+            if (student == null || student.getEvaluations() == null) {
+                continue;
+            }
+            for (StudentEvaluation evaluation : student.getEvaluations()) {
+                if (evaluation == null || evaluation.getEvaluationId() == null
+                        || !seenEvaluations.add(evaluation.getEvaluationId())) {
+                    continue;
+                }
+                hash.add(evaluation.getEvaluationId()).add(evaluation.getEvaluationTitle());
+                List<Score> scores = evaluation.getScores() != null ? evaluation.getScores() : Collections.emptyList();
+                hash.add(scores.size());
+                for (Score score : scores) {
+                    hash.add(score != null ? score.getPiId() : null);
+                }
+            }
+        }
+        return new LayoutKey(formKeys.toString(), hash.hex());
+    }
+
+    private LayoutPlan planLayout(List<EvaluationForm> forms, Iterable<Student> students) {
+        List<BlockPlan> blocks = new ArrayList<>();
+        Map<String, EvaluationTemplate> templates = buildEvaluationTemplates(students);
+        Set<String> covered = new HashSet<>();
+        int offset = 0;
 
         if (forms != null) {
             for (int i = 0; i < forms.size(); i++) {
@@ -270,17 +651,17 @@ public class GuiderEvaluationExportService {
                 if (piEntries.isEmpty()) {
                     piEntries.add(new PiEntry("N/A", "Ch\u00c3\u0192\u00c6\u2019\u00c3\u00a2\u00e2\u201a\u00ac\u00c2\u00a0\u00c3\u0192\u00e2\u20ac\u0161\u00c3\u201a\u00c2\u00b0a c\u00c3\u0192\u00c6\u2019\u00c3\u201a\u00c2\u00a1\u00c3\u0192\u00e2\u20ac\u0161\u00c3\u201a\u00c2\u00ba\u00c3\u0192\u00e2\u20ac\u0161\u00c3\u201a\u00c2\u00a5u h\u00c3\u0192\u00c6\u2019\u00c3\u2020\u00e2\u20ac\u2122\u00c3\u0192\u00e2\u20ac\u0161\u00c3\u201a\u00c2\u00acnh PI", "CLO"));
                 }
-                short color = palette[i % palette.length];
-                CellStyle blockHeader = createColoredStyle(workbook, styles.header, color);
-                CellStyle blockCell = createColoredStyle(workbook, styles.cellCenter, color);
-                blocks.add(new FormBlock(form, piEntries, blockHeader, blockCell));
-                if (form != null && form.getEvaluationId() != null) {
-                    covered.add(form.getEvaluationId());
+                String evaluationId = form != null ? form.getEvaluationId() : null;
+                BlockPlan block = BlockPlan.of(evaluationId, blockTitle(form), i, offset, piEntries);
+                blocks.add(block);
+                offset += block.width();
+                if (evaluationId != null) {
+                    covered.add(evaluationId);
                 }
             }
         }
 
-        int offset = blocks.size();
+        int paletteSlot = blocks.size();
         for (EvaluationTemplate template : templates.values()) {
             if (template.evaluationId() != null && covered.contains(template.evaluationId())) {
                 continue;
@@ -292,12 +673,11 @@ public class GuiderEvaluationExportService {
             fallback.setEvaluationId(template.evaluationId());
             fallback.setTitle(template.title());
 
-            short color = palette[(offset++) % palette.length];
-            CellStyle blockHeader = createColoredStyle(workbook, styles.header, color);
-            CellStyle blockCell = createColoredStyle(workbook, styles.cellCenter, color);
-            blocks.add(new FormBlock(fallback, new ArrayList<>(entries), blockHeader, blockCell));
+            BlockPlan block = BlockPlan.of(template.evaluationId(), blockTitle(fallback), paletteSlot++, offset, entries);
+            blocks.add(block);
+            offset += block.width();
         }
-        return blocks;
+        return LayoutPlan.of(blocks, offset);
     }
 
     protected short[] blockPalette() {
@@ -338,7 +718,7 @@ public class GuiderEvaluationExportService {
         return entries;
     }
 
-    private Map<String, EvaluationTemplate> buildEvaluationTemplates(List<Student> students) {
+    private Map<String, EvaluationTemplate> buildEvaluationTemplates(Iterable<Student> students) {
         Map<String, EvaluationTemplate> templates = new LinkedHashMap<>();
         if (students == null) {
             return templates;
@@ -421,15 +801,7 @@ public class GuiderEvaluationExportService {
         return "CLO";
     }
 
-    private CellStyle createColoredStyle(Workbook workbook, CellStyle template, short color) {
-        CellStyle style = workbook.createCellStyle();
-        style.cloneStyleFrom(template);
-        style.setFillForegroundColor(color);
-        style.setFillPattern(FillPatternType.SOLID_FOREGROUND);
-        return style;
-    }
-
-    private void merge(Sheet sheet, int firstRow, int lastRow, int firstCol, int lastCol) {
+    private void merge(SheetModel sheet, int firstRow, int lastRow, int firstCol, int lastCol) {
         if (firstRow > lastRow || firstCol > lastCol) {
             return;
         }
@@ -439,23 +811,24 @@ public class GuiderEvaluationExportService {
         sheet.addMergedRegion(new CellRangeAddress(firstRow, lastRow, firstCol, lastCol));
     }
 
-    private void setCell(Row row, int columnIndex, Object value, CellStyle style) {
+    private void setCell(RowModel row, int columnIndex, Object value, StyleSpec style) {
         if (row == null) {
             return;
         }
-        Cell cell = row.getCell(columnIndex);
-        if (cell == null) {
-            cell = row.createCell(columnIndex);
-        }
         if (value == null) {
-            cell.setBlank();
+            row.setBlank(columnIndex, style);
         } else if (value instanceof Number) {
-            cell.setCellValue(((Number) value).doubleValue());
+            row.setNumber(columnIndex, ((Number) value).doubleValue(), style);
         } else {
-            cell.setCellValue(String.valueOf(value));
+            row.setText(columnIndex, String.valueOf(value), style);
         }
-        if (style != null) {
-            cell.setCellStyle(style);
+    }
+
+    private void setScoreCell(RowModel row, int columnIndex, double value, StyleSpec style) {
+        if (ScoreMatrix.isBlank(value)) {
+            row.setBlank(columnIndex, style);
+        } else {
+            row.setNumber(columnIndex, value, style);
         }
     }
 
@@ -478,12 +851,12 @@ public class GuiderEvaluationExportService {
         return value != null ? value : "";
     }
 
-    private void setIndicatorHeader(Sheet sheet,
-                                    Row row,
+    private void setIndicatorHeader(SheetModel sheet,
+                                    RowModel row,
                                     int start,
                                     int end,
                                     String label,
-                                    CellStyle style) {
+                                    StyleSpec style) {
         if (start > end) {
             return;
         }
@@ -491,28 +864,212 @@ public class GuiderEvaluationExportService {
         setCell(row, start, label, style);
     }
 
-    private void applyHorizontalBorder(Sheet sheet, int rowIndex, int startColumn, int endColumn, CellStyle style) {
+    private void applyHorizontalBorder(SheetModel sheet, int rowIndex, int startColumn, int endColumn, StyleSpec style) {
         for (int col = startColumn; col <= endColumn; col++) {
-            Row row = sheet.getRow(rowIndex);
+            RowModel row = sheet.getRow(rowIndex);
             if (row == null) {
                 row = sheet.createRow(rowIndex);
             }
+            row.setStyle(col, style);
+        }
+    }
+
+    /**
+     * Writes rows for a streamed cohort. Scores are resolved into a single reused matrix row, so the
+     * writer holds no per-student state beyond the row being written.
+     */
+    private final class StudentRowWriter {
+        private final Sheet sheet;
+        private final PoiSheetRenderer renderer;
+        private final LayoutPlan plan;
+        private final ColumnType[] layout;
+        private final List<FormBlock> blocks;
+        private final List<ExtraColumn> extras;
+        private final Styles styles;
+        private final StyleRegistry registry;
+        private final SheetModel header;
+        private final ExportSheetEvent event;
+        private final ScoreMatrix scores;
+        private final int[] claimed;
+        private int rowIndex;
+        private int order = 1;
+        private int written;
+        private long cells;
+        private int columns;
+        /** Rows are timed here and recorded once, rather than one timer update per student. */
+        private long populateNanos;
+
+        StudentRowWriter(Sheet sheet, PoiSheetRenderer renderer, int firstRow, LayoutPlan plan, ColumnType[] layout,
+                         List<FormBlock> blocks, List<ExtraColumn> extras, Styles styles, StyleRegistry registry,
+                         SheetModel header, ExportSheetEvent event) {
+            this.sheet = sheet;
+            this.renderer = renderer;
+            this.rowIndex = firstRow;
+            this.plan = plan;
+            this.layout = layout;
+            this.blocks = blocks;
+            this.extras = extras;
+            this.styles = styles;
+            this.registry = registry;
+            this.header = header;
+            this.event = event;
+            this.columns = header.columnCount();
+            this.scores = new ScoreMatrix(1, plan.width());
+            this.claimed = new int[plan.blocks().size()];
+        }
+
+        /** True when every evaluation of {@code student} has a block in the plan. */
+        boolean covers(Student student) {
+            if (student == null || student.getEvaluations() == null) {
+                return true;
+            }
+            for (StudentEvaluation evaluation : student.getEvaluations()) {
+                if (evaluation != null && evaluation.getEvaluationId() != null
+                        && plan.blocksFor(evaluation.getEvaluationId()).length == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        void write(Student student) {
+            ExportCancellation.checkpoint();
+            long start = System.nanoTime();
+            scores.clear();
+            fillScores(plan, student, scores, 0, claimed, ++written);
+            RowModel row = new RowModel(rowIndex++);
+            order = writeStudentRow(row, order, student, layout, blocks, scores, 0, extras, styles);
+            renderer.renderRow(row, sheet);
+            cells += row.cellCount();
+            columns = Math.max(columns, row.width());
+            populateNanos += System.nanoTime() - start;
+        }
+
+        void finish() {
+            int rowCount = header.rows().size() + written;
+            event.end();
+            if (event.shouldCommit()) {
+                event.export = exportType();
+                event.sheet = sheet.getSheetName();
+                event.rows = rowCount;
+                event.columns = columns;
+                event.mergedRegions = header.mergedRegions().size();
+                event.commit();
+            }
+            metrics.record(exportType(), Phase.POPULATE, populateNanos);
+            metrics.sheets(exportType(), 1, rowCount, columns, header.cellCount() + cells,
+                    header.mergedRegions().size());
+            metrics.styles(registry.stats().styles());
+            logStyleStats(sheet.getSheetName(), registry);
+        }
+    }
 
-            Cell cell = row.getCell(col);
-            if (cell == null) {
-                cell = row.createCell(col);
+    /** Sums the time spent reading the payload, which the streaming exports interleave with writing rows. */
+    private static final class TimedStudentSource {
+        private final GuiderStudentSource source;
+        private long nanos;
+
+        TimedStudentSource(GuiderStudentSource source) {
+            this.source = source;
+        }
+
+        List<EvaluationForm> formsBeforeStudents() throws IOException {
+            long start = System.nanoTime();
+            try {
+                return source.formsBeforeStudents();
+            } finally {
+                nanos += System.nanoTime() - start;
             }
+        }
 
-            cell.setCellStyle(style);
+        Student nextStudent() throws IOException {
+            long start = System.nanoTime();
+            try {
+                return source.nextStudent();
+            } finally {
+                nanos += System.nanoTime() - start;
+            }
         }
     }
 
     private record PiEntry(String piId, String label, String indicatorLabel) {}
 
-    private record FormBlock(EvaluationForm form,
+    private record FormBlock(BlockPlan plan,
+                             StyleSpec headerStyle,
+                             StyleSpec cellStyle) {}
+
+    private record LayoutKey(String formKeys, String structureHash) {}
+
+    /**
+     * Immutable column layout for every block; offsets are relative to the first block column
+     * so the same plan serves sheet layouts with a different number of fixed columns.
+     */
+    private record LayoutPlan(List<BlockPlan> blocks, int width, Map<String, int[]> blocksByEvaluation) {
+
+        private static final int[] NO_BLOCKS = new int[0];
+
+        static LayoutPlan of(List<BlockPlan> blocks, int width) {
+            Map<String, int[]> blocksByEvaluation = new HashMap<>();
+            for (int i = 0; i < blocks.size(); i++) {
+                String evaluationId = blocks.get(i).evaluationId();
+                if (evaluationId == null) {
+                    continue;
+                }
+                int[] existing = blocksByEvaluation.get(evaluationId);
+                int[] updated = existing == null ? new int[1] : Arrays.copyOf(existing, existing.length + 1);
+                updated[updated.length - 1] = i;
+                blocksByEvaluation.put(evaluationId, updated);
+            }
+            return new LayoutPlan(List.copyOf(blocks), width, Map.copyOf(blocksByEvaluation));
+        }
+
+        int[] blocksFor(String evaluationId) {
+            if (evaluationId == null) {
+                return NO_BLOCKS;
+            }
+            int[] found = blocksByEvaluation.get(evaluationId);
+            return found != null ? found : NO_BLOCKS;
+        }
+    }
+
+    private record IndicatorSpan(int start, int end, String label) {}
+
+    private record BlockPlan(String evaluationId,
+                             String title,
+                             int paletteSlot,
+                             int offset,
                              List<PiEntry> piEntries,
-                             CellStyle headerStyle,
-                             CellStyle cellStyle) {}
+                             List<IndicatorSpan> indicators,
+                             PiColumnIndex piColumns) {
+
+        static BlockPlan of(String evaluationId, String title, int paletteSlot, int offset, List<PiEntry> piEntries) {
+            List<IndicatorSpan> indicators = new ArrayList<>();
+            List<String> piIds = new ArrayList<>(piEntries.size());
+            String currentIndicator = null;
+            int indicatorStart = offset;
+            int column = offset;
+            for (PiEntry entry : piEntries) {
+                if (currentIndicator == null) {
+                    currentIndicator = entry.indicatorLabel();
+                } else if (!currentIndicator.equals(entry.indicatorLabel())) {
+                    indicators.add(new IndicatorSpan(indicatorStart, column - 1, currentIndicator));
+                    indicatorStart = column;
+                    currentIndicator = entry.indicatorLabel();
+                }
+                piIds.add(entry.piId());
+                column++;
+            }
+            if (currentIndicator != null) {
+                indicators.add(new IndicatorSpan(indicatorStart, column - 1, currentIndicator));
+            }
+            return new BlockPlan(evaluationId, title, paletteSlot, offset,
+                    List.copyOf(piEntries), List.copyOf(indicators), PiColumnIndex.of(piIds, offset));
+        }
+
+        int width() {
+            return piEntries.size();
+        }
+    }
 
     private record EvaluationTemplate(String evaluationId,
                                       String title,
@@ -520,8 +1077,8 @@ public class GuiderEvaluationExportService {
 
     protected static record ExtraColumn(String header,
                                         int width,
-                                        CellStyle headerStyle,
-                                        CellStyle cellStyle,
+                                        StyleSpec headerStyle,
+                                        StyleSpec cellStyle,
                                         ExtraValueProvider valueProvider) {}
 
     protected static record SheetLayout(String sheetName,
@@ -565,76 +1122,28 @@ public class GuiderEvaluationExportService {
     }
 
     protected static class Styles {
-        final CellStyle header;
-        final CellStyle subHeader;
-        final CellStyle cellCenter;
-        final CellStyle cellLeft;
-        final CellStyle cellLeftWrap;
-
-        Styles(Workbook workbook) {
-            Font normal = workbook.createFont();
-            normal.setFontName("Times New Roman");
-            normal.setFontHeightInPoints((short) 12);
-
-            Font bold = workbook.createFont();
-            bold.setBold(true);
-            bold.setFontName("Times New Roman");
-            bold.setFontHeightInPoints((short) 12);
-
-            Font italic = workbook.createFont();
-            italic.setItalic(true);
-            italic.setFontName("Times New Roman");
-            italic.setFontHeightInPoints((short) 12);
-
-            header = workbook.createCellStyle();
-            header.setFont(bold);
-            header.setAlignment(HorizontalAlignment.CENTER);
-            header.setVerticalAlignment(VerticalAlignment.CENTER);
-            header.setWrapText(true);
-            addBorder(header);
-
-            subHeader = workbook.createCellStyle();
-            subHeader.setFont(italic);
-            subHeader.setAlignment(HorizontalAlignment.CENTER);
-            subHeader.setVerticalAlignment(VerticalAlignment.CENTER);
-            subHeader.setWrapText(true);
-            addBorder(subHeader);
-
-            cellCenter = workbook.createCellStyle();
-            cellCenter.setFont(normal);
-            cellCenter.setAlignment(HorizontalAlignment.CENTER);
-            cellCenter.setVerticalAlignment(VerticalAlignment.CENTER);
-            addBorder(cellCenter);
-
-            cellLeft = workbook.createCellStyle();
-            cellLeft.setFont(normal);
-            cellLeft.setAlignment(HorizontalAlignment.LEFT);
-            cellLeft.setVerticalAlignment(VerticalAlignment.CENTER);
-            addBorder(cellLeft);
-
-            cellLeftWrap = workbook.createCellStyle();
-            cellLeftWrap.cloneStyleFrom(cellLeft);
-            cellLeftWrap.setWrapText(true);
-        }
-
-        private void addBorder(CellStyle style) {
-            style.setBorderTop(BorderStyle.THIN);
-            style.setBorderBottom(BorderStyle.THIN);
-            style.setBorderLeft(BorderStyle.THIN);
-            style.setBorderRight(BorderStyle.THIN);
+        final StyleSpec header;
+        final StyleSpec subHeader;
+        final StyleSpec cellCenter;
+        final StyleSpec cellLeft;
+        final StyleSpec cellLeftWrap;
+
+        Styles() {
+            FontSpec normal = FontSpec.of("Times New Roman", 12);
+            FontSpec bold = normal.withBold();
+            FontSpec italic = normal.withItalic();
+
+            header = StyleSpec.of(bold, HorizontalAlignment.CENTER, VerticalAlignment.CENTER)
+                    .withWrapText()
+                    .withThinBorder();
+            subHeader = StyleSpec.of(italic, HorizontalAlignment.CENTER, VerticalAlignment.CENTER)
+                    .withWrapText()
+                    .withThinBorder();
+            cellCenter = StyleSpec.of(normal, HorizontalAlignment.CENTER, VerticalAlignment.CENTER)
+                    .withThinBorder();
+            cellLeft = StyleSpec.of(normal, HorizontalAlignment.LEFT, VerticalAlignment.CENTER)
+                    .withThinBorder();
+            cellLeftWrap = cellLeft.withWrapText();
         }
     }
 }
-
-
-
-
-
-
-
-
-
-
-
-
-
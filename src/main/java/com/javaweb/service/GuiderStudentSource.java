@@ -0,0 +1,25 @@
+package com.javaweb.service;
+
+import com.javaweb.dto.GuiderEvaluationDto.EvaluationForm;
+import com.javaweb.dto.GuiderEvaluationDto.Student;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Guider/reviewer payload read one student at a time, so an export never holds the whole cohort.
+ */
+interface GuiderStudentSource {
+
+    /**
+     * Advance to the first student. Returns the evaluation forms when the payload declares them
+     * before the students, otherwise null.
+     */
+    List<EvaluationForm> formsBeforeStudents() throws IOException;
+
+    /** The next student, or null once every student has been read. */
+    Student nextStudent() throws IOException;
+
+    /** Every evaluation form of the payload; complete once {@link #nextStudent()} has returned null. */
+    List<EvaluationForm> forms() throws IOException;
+}
@@ -0,0 +1,100 @@
+package com.javaweb.service;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.javaweb.dto.GuiderEvaluationDto.EvaluationForm;
+import com.javaweb.dto.GuiderEvaluationDto.Student;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Token-level reader for the {@code GuiderEvaluationDto.Root} JSON document. Root fields may come in
+ * any order; only the student currently returned by {@link #nextStudent()} is materialized. Null
+ * entries of the students array are skipped. The input stream is not closed.
+ */
+final class JsonGuiderStudentSource implements GuiderStudentSource {
+
+    private static final TypeReference<List<EvaluationForm>> FORM_LIST = new TypeReference<>() {};
+
+    private final JsonParser parser;
+    private List<EvaluationForm> forms;
+    private boolean studentsSeen;
+    private boolean inStudents;
+
+    JsonGuiderStudentSource(ObjectMapper mapper, InputStream in) throws IOException {
+        this.parser = mapper.createParser(in);
+        this.parser.disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+    }
+
+    @Override
+    public List<EvaluationForm> formsBeforeStudents() throws IOException {
+        JsonToken token = parser.nextToken();
+        if (token == null) {
+            return null;
+        }
+        if (token != JsonToken.START_OBJECT) {
+            throw new JsonParseException(parser, "Expected the export payload to be a JSON object");
+        }
+        readRootFields(true);
+        return forms;
+    }
+
+    @Override
+    public Student nextStudent() throws IOException {
+        if (!inStudents) {
+            return null;
+        }
+        JsonToken token = parser.nextToken();
+        while (token == JsonToken.VALUE_NULL) {
+            token = parser.nextToken();
+        }
+        if (token == JsonToken.START_OBJECT) {
+            return parser.readValueAs(Student.class);
+        }
+        if (token != JsonToken.END_ARRAY) {
+            throw new JsonParseException(parser, "Expected a student object");
+        }
+        inStudents = false;
+        readRootFields(false);
+        return null;
+    }
+
+    @Override
+    public List<EvaluationForm> forms() {
+        return forms != null ? forms : Collections.emptyList();
+    }
+
+    /** Read root fields until the students array opens (when {@code stopAtStudents}) or the object ends. */
+    private void readRootFields(boolean stopAtStudents) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if ("evaluationForm".equals(name)) {
+                forms = readForms(value);
+            } else if ("students".equals(name) && value == JsonToken.START_ARRAY && !studentsSeen && stopAtStudents) {
+                studentsSeen = true;
+                inStudents = true;
+                return;
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    /** Same shapes the bound DTO accepts: an array, a single form, or null. */
+    private List<EvaluationForm> readForms(JsonToken token) throws IOException {
+        if (token == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        if (token == JsonToken.START_OBJECT) {
+            return Collections.singletonList(parser.readValueAs(EvaluationForm.class));
+        }
+        return parser.readValueAs(FORM_LIST);
+    }
+}
@@ -0,0 +1,102 @@
+package com.javaweb.service;
+
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Validates the merged regions of a sheet against each other in one pass, so the renderers can register
+ * them without POI checking every {@code addMergedRegion} call against every region added before it.
+ * <p>
+ * Regions are swept in order of their first row and only compared with regions still open at that row,
+ * so a header made of many one-row merges costs close to linear time instead of quadratic. As with
+ * {@code Sheet.addMergedRegion}, the region added first wins: a region overlapping one that is kept is
+ * reported and left out.
+ */
+final class MergedRegions {
+
+    private static final Logger log = LoggerFactory.getLogger(MergedRegions.class);
+
+    private MergedRegions() {
+    }
+
+    /** A region that was left out because it overlaps {@code kept}, added before it. */
+    record Conflict(CellRangeAddress region, CellRangeAddress kept) {
+    }
+
+    /** {@code regions} without the ones that overlap an earlier kept region; each conflict is logged. */
+    static List<CellRangeAddress> accepted(String sheetName, List<CellRangeAddress> regions) {
+        List<Conflict> conflicts = new ArrayList<>();
+        List<CellRangeAddress> accepted = accepted(regions, conflicts);
+        for (Conflict conflict : conflicts) {
+            log.warn("Sheet '{}': merged region {} overlaps {} and was not added", sheetName,
+                    conflict.region().formatAsString(), conflict.kept().formatAsString());
+        }
+        return accepted;
+    }
+
+    /** {@code regions} without the ones that overlap an earlier kept region, which go to {@code conflicts}. */
+    static List<CellRangeAddress> accepted(List<CellRangeAddress> regions, List<Conflict> conflicts) {
+        int count = regions.size();
+        int[][] overlaps = overlaps(regions);
+        boolean[] dropped = new boolean[count];
+        List<CellRangeAddress> accepted = new ArrayList<>(count);
+        for (int index = 0; index < count; index++) {
+            int keptOverlap = -1;
+            for (int other : overlaps[index]) {
+                if (other < index && !dropped[other]) {
+                    keptOverlap = other;
+                    break;
+                }
+            }
+            if (keptOverlap >= 0) {
+                dropped[index] = true;
+                conflicts.add(new Conflict(regions.get(index), regions.get(keptOverlap)));
+            } else {
+                accepted.add(regions.get(index));
+            }
+        }
+        return accepted;
+    }
+
+    /** For each region, the indexes of the regions it overlaps, ascending. */
+    private static int[][] overlaps(List<CellRangeAddress> regions) {
+        int count = regions.size();
+        Integer[] byFirstRow = new Integer[count];
+        for (int index = 0; index < count; index++) {
+            byFirstRow[index] = index;
+        }
+        Arrays.sort(byFirstRow, Comparator.comparingInt(index -> regions.get(index).getFirstRow()));
+
+        int[][] overlaps = new int[count][0];
+        List<Integer> open = new ArrayList<>();
+        for (int index : byFirstRow) {
+            CellRangeAddress region = regions.get(index);
+            open.removeIf(other -> regions.get(other).getLastRow() < region.getFirstRow());
+            for (int other : open) {
+                CellRangeAddress candidate = regions.get(other);
+                if (candidate.getFirstColumn() <= region.getLastColumn()
+                        && region.getFirstColumn() <= candidate.getLastColumn()) {
+                    overlaps[index] = append(overlaps[index], other);
+                    overlaps[other] = append(overlaps[other], index);
+                }
+            }
+            open.add(index);
+        }
+        for (int[] indexes : overlaps) {
+            Arrays.sort(indexes);
+        }
+        return overlaps;
+    }
+
+    private static int[] append(int[] indexes, int index) {
+        int[] grown = Arrays.copyOf(indexes, indexes.length + 1);
+        grown[indexes.length] = index;
+        return grown;
+    }
+}
@@ -0,0 +1,73 @@
+package com.javaweb.service;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.javaweb.dto.GuiderEvaluationDto.EvaluationForm;
+import com.javaweb.dto.GuiderEvaluationDto.Student;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Newline-delimited JSON payload: the first line holds the evaluation forms (an array, or a single
+ * form), every following line one {@code Student}. Blank and {@code null} lines are skipped. The
+ * input stream is not closed.
+ */
+final class NdjsonGuiderStudentSource implements GuiderStudentSource {
+
+    private static final TypeReference<List<EvaluationForm>> FORM_LIST = new TypeReference<>() {};
+
+    private final JsonParser parser;
+    private List<EvaluationForm> forms = Collections.emptyList();
+    private boolean finished;
+
+    NdjsonGuiderStudentSource(ObjectMapper mapper, InputStream in) throws IOException {
+        this.parser = mapper.createParser(in);
+        this.parser.disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+    }
+
+    @Override
+    public List<EvaluationForm> formsBeforeStudents() throws IOException {
+        JsonToken token = parser.nextToken();
+        if (token == null) {
+            finished = true;
+        } else if (token == JsonToken.START_ARRAY) {
+            List<EvaluationForm> read = parser.readValueAs(FORM_LIST);
+            forms = read != null ? read : Collections.emptyList();
+        } else if (token == JsonToken.START_OBJECT) {
+            forms = Collections.singletonList(parser.readValueAs(EvaluationForm.class));
+        } else if (token != JsonToken.VALUE_NULL) {
+            throw new JsonParseException(parser, "Expected the evaluation forms on the first line");
+        }
+        return forms;
+    }
+
+    @Override
+    public Student nextStudent() throws IOException {
+        if (finished) {
+            return null;
+        }
+        JsonToken token = parser.nextToken();
+        while (token == JsonToken.VALUE_NULL) {
+            token = parser.nextToken();
+        }
+        if (token == null) {
+            finished = true;
+            return null;
+        }
+        if (token != JsonToken.START_OBJECT) {
+            throw new JsonParseException(parser, "Expected one student object per line");
+        }
+        return parser.readValueAs(Student.class);
+    }
+
+    @Override
+    public List<EvaluationForm> forms() {
+        return forms;
+    }
+}
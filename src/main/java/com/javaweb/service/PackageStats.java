@@ -0,0 +1,30 @@
+package com.javaweb.service;
+
+/**
+ * What writing one export package cost. {@code compressionNanos} is the time spent inside the
+ * deflater, summed over all threads that compressed parts; {@code uncompressedBytes} and
+ * {@code compressionNanos} are -1 when the engine does its own packaging and cannot be measured.
+ */
+public record PackageStats(CompressionProfile profile,
+                           long uncompressedBytes,
+                           long compressedBytes,
+                           long compressionNanos) {
+
+    /** Stats for a package written by the engine itself, with its built-in deflate level. */
+    static PackageStats unmeasured(long compressedBytes) {
+        return new PackageStats(null, -1, compressedBytes, -1);
+    }
+
+    public boolean measured() {
+        return uncompressedBytes >= 0;
+    }
+
+    /** Compressed size over uncompressed size, or NaN when not measured. */
+    public double ratio() {
+        return uncompressedBytes > 0 ? (double) compressedBytes / uncompressedBytes : Double.NaN;
+    }
+
+    public double compressionMillis() {
+        return compressionNanos >= 0 ? compressionNanos / 1_000_000.0 : Double.NaN;
+    }
+}
@@ -0,0 +1,45 @@
+package com.javaweb.service;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Interns PI ids to the score-matrix columns they occupy. A PI id listed twice maps to both columns;
+ * null ids are never indexed and so always stay blank.
+ */
+final class PiColumnIndex {
+
+    private static final int[] NONE = new int[0];
+
+    private final Map<String, int[]> columns;
+
+    private PiColumnIndex(Map<String, int[]> columns) {
+        this.columns = columns;
+    }
+
+    /** Index {@code piIds}, assigning ordinal {@code firstColumn + i} to the i-th id. */
+    static PiColumnIndex of(List<String> piIds, int firstColumn) {
+        Map<String, int[]> columns = new HashMap<>();
+        for (int i = 0; i < piIds.size(); i++) {
+            String piId = piIds.get(i);
+            if (piId == null) {
+                continue;
+            }
+            int[] existing = columns.get(piId);
+            int[] updated = existing == null ? new int[1] : Arrays.copyOf(existing, existing.length + 1);
+            updated[updated.length - 1] = firstColumn + i;
+            columns.put(piId, updated);
+        }
+        return new PiColumnIndex(Map.copyOf(columns));
+    }
+
+    int[] columnsOf(String piId) {
+        if (piId == null) {
+            return NONE;
+        }
+        int[] found = columns.get(piId);
+        return found != null ? found : NONE;
+    }
+}
@@ -0,0 +1,106 @@
+package com.javaweb.service;
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * {@link ExportDocument} backed by a POI workbook. An {@code XSSFWorkbook} saves its package into a
+ * caller-supplied {@code ZipArchiveOutputStream} as-is, which is how the deflate level is chosen
+ * and measured. SXSSF opens its own zip stream for the sheet data; workbooks from
+ * {@link ExportWorkbookFactory} hand it the same metered stream, so they honour the profile too.
+ */
+final class PoiExportDocument implements ExportDocument {
+
+    private final Workbook workbook;
+
+    PoiExportDocument(Workbook workbook) {
+        this.workbook = workbook;
+    }
+
+    @Override
+    public PackageStats write(OutputStream out, CompressionProfile profile) throws IOException {
+        MeteredOutputStream sink = new MeteredOutputStream(out);
+        MeteredZipOutputStream zip;
+        if (workbook instanceof ExportWorkbookFactory.StreamingWorkbook streaming) {
+            zip = streaming.write(sink, profile.level());
+            sink.flush();
+        } else if (workbook instanceof XSSFWorkbook) {
+            zip = new MeteredZipOutputStream(sink);
+            try (zip) {
+                zip.setLevel(profile.level());
+                workbook.write(zip);
+            }
+        } else {
+            workbook.write(sink);
+            sink.flush();
+            return PackageStats.unmeasured(sink.bytes);
+        }
+        // Time inside the zip stream, minus the time its output spent in the stream we were given.
+        return new PackageStats(profile, zip.uncompressed, sink.bytes, Math.max(0, zip.nanos - sink.nanos));
+    }
+
+    @Override
+    public void close() throws IOException {
+        ExportWorkbookFactory.release(workbook);
+    }
+
+    /** Counts and times writes to the caller's stream, and never closes it. */
+    private static final class MeteredOutputStream extends FilterOutputStream {
+        private long bytes;
+        private long nanos;
+
+        MeteredOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            long start = System.nanoTime();
+            out.write(b);
+            nanos += System.nanoTime() - start;
+            bytes++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            long start = System.nanoTime();
+            out.write(b, off, len);
+            nanos += System.nanoTime() - start;
+            bytes += len;
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+
+    static final class MeteredZipOutputStream extends ZipArchiveOutputStream {
+        private long uncompressed;
+        private long nanos;
+
+        MeteredZipOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(byte[] b, int offset, int length) throws IOException {
+            long start = System.nanoTime();
+            super.write(b, offset, length);
+            nanos += System.nanoTime() - start;
+            uncompressed += length;
+        }
+
+        @Override
+        public void closeArchiveEntry() throws IOException {
+            long start = System.nanoTime();
+            super.closeArchiveEntry();
+            nanos += System.nanoTime() - start;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.javaweb.service;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.util.CellRangeAddress;
+
+/**
+ * Writes a {@link SheetModel} into a POI sheet. Rows are emitted in ascending order; bordered
+ * regions are resolved into cell styles by {@link RegionBorders} before the first row goes out, so
+ * nothing is revisited once an SXSSF row window has moved on. Merged regions are checked against
+ * each other once by {@link MergedRegions} and then added without POI's per-call overlap validation.
+ */
+final class PoiSheetRenderer {
+
+    private final StyleRegistry registry;
+
+    PoiSheetRenderer(StyleRegistry registry) {
+        this.registry = registry;
+    }
+
+    void render(SheetModel model, Sheet sheet) {
+        for (int column = 0; column < model.columnWidthCount(); column++) {
+            int width = model.columnWidth(column);
+            if (width >= 0) {
+                sheet.setColumnWidth(column, width);
+            }
+        }
+
+        for (CellRangeAddress region : MergedRegions.accepted(sheet.getSheetName(), model.mergedRegions())) {
+            sheet.addMergedRegionUnsafe(region);
+        }
+
+        RegionBorders.apply(model);
+        for (SheetModel.RowModel rowModel : model.rows()) {
+            ExportCancellation.checkpoint();
+            renderRow(rowModel, sheet);
+        }
+    }
+
+    /** Append one row to {@code sheet}; used by streaming exports that never hold a full model. */
+    void renderRow(SheetModel.RowModel rowModel, Sheet sheet) {
+        Row row = sheet.createRow(rowModel.getRowNum());
+        for (int column = 0; column < rowModel.width(); column++) {
+            byte kind = rowModel.kind(column);
+            if (kind == SheetModel.RowModel.ABSENT) {
+                continue;
+            }
+            Cell cell = row.createCell(column);
+            if (kind == SheetModel.RowModel.NUMERIC) {
+                cell.setCellValue(rowModel.number(column));
+            } else if (kind == SheetModel.RowModel.TEXT) {
+                cell.setCellValue(rowModel.text(column));
+            } else {
+                cell.setBlank();
+            }
+            StyleSpec style = rowModel.style(column);
+            if (style != null) {
+                cell.setCellStyle(registry.style(style));
+            }
+        }
+    }
+
+}
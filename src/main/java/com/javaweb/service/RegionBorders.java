@@ -0,0 +1,76 @@
+package com.javaweb.service;
+
+import org.apache.poi.ss.usermodel.BorderStyle;
+import org.apache.poi.ss.util.CellRangeAddress;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Outlines the bordered regions of a {@link SheetModel} with thin borders by giving every outline cell
+ * its final style up front, instead of the four {@code RegionUtil} passes that each look up or derive a
+ * style per cell. Each cell is visited once with all the edges it sits on (a corner gets two, a one-cell
+ * strip three or four); interior cells are left alone. Missing outline cells are created blank, as
+ * {@code RegionUtil} does.
+ * <p>
+ * The bordered variants of a spec are built once for all sixteen edge combinations and shared by every
+ * sheet, so applying the outline costs one table read per cell.
+ */
+final class RegionBorders {
+
+    private static final int TOP = 1;
+    private static final int BOTTOM = 1 << 1;
+    private static final int LEFT = 1 << 2;
+    private static final int RIGHT = 1 << 3;
+
+    /** Base spec to its variants indexed by edge mask; the specs come from a small, fixed set. */
+    private static final Map<StyleSpec, StyleSpec[]> VARIANTS = new ConcurrentHashMap<>();
+
+    private RegionBorders() {
+    }
+
+    /** Apply the outline of every bordered region of {@code model} to its cell styles. */
+    static void apply(SheetModel model) {
+        for (CellRangeAddress region : model.borderedRegions()) {
+            int firstRow = region.getFirstRow();
+            int lastRow = region.getLastRow();
+            int firstColumn = region.getFirstColumn();
+            int lastColumn = region.getLastColumn();
+            for (int rowIndex = firstRow; rowIndex <= lastRow; rowIndex++) {
+                int rowEdges = (rowIndex == firstRow ? TOP : 0) | (rowIndex == lastRow ? BOTTOM : 0);
+                SheetModel.RowModel row = null;
+                for (int column = firstColumn; column <= lastColumn; column++) {
+                    int edges = rowEdges | (column == firstColumn ? LEFT : 0) | (column == lastColumn ? RIGHT : 0);
+                    if (edges == 0) {
+                        column = lastColumn - 1;
+                        continue;
+                    }
+                    if (row == null) {
+                        row = model.getRow(rowIndex);
+                        if (row == null) {
+                            row = model.createRow(rowIndex);
+                        }
+                    }
+                    StyleSpec style = row.style(column);
+                    row.setStyle(column, variant(style != null ? style : StyleSpec.DEFAULT, edges));
+                }
+            }
+        }
+    }
+
+    private static StyleSpec variant(StyleSpec base, int edges) {
+        return VARIANTS.computeIfAbsent(base, RegionBorders::variants)[edges];
+    }
+
+    private static StyleSpec[] variants(StyleSpec base) {
+        StyleSpec[] variants = new StyleSpec[16];
+        for (int edges = 0; edges < variants.length; edges++) {
+            variants[edges] = edges == 0 ? base : base.withBorders(
+                    (edges & TOP) != 0 ? BorderStyle.THIN : base.borderTop(),
+                    (edges & BOTTOM) != 0 ? BorderStyle.THIN : base.borderBottom(),
+                    (edges & LEFT) != 0 ? BorderStyle.THIN : base.borderLeft(),
+                    (edges & RIGHT) != 0 ? BorderStyle.THIN : base.borderRight());
+        }
+        return variants;
+    }
+}
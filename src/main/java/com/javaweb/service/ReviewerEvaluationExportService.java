@@ -1,10 +1,14 @@
 package com.javaweb.service;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.javaweb.dto.GuiderEvaluationDto;
 import org.apache.poi.ss.usermodel.IndexedColors;
 import org.apache.poi.ss.usermodel.Workbook;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.Collections;
 
 @Service
@@ -20,10 +24,45 @@ public class ReviewerEvaluationExportService extends GuiderEvaluationExportServi
                             student -> ""
                     )));
 
+    public ReviewerEvaluationExportService(ExportWorkbookFactory workbookFactory,
+                                           ExportPackager packager,
+                                           ExportMetrics metrics,
+                                           ExportEngineSelector engineSelector,
+                                           ObjectMapper objectMapper,
+                                           @Value("${export.layout-cache.size:64}") int layoutCacheSize,
+                                           @Value("${export.stream.spill-on-layout-change:false}") boolean spillOnLayoutChange) {
+        super(workbookFactory, packager, metrics, engineSelector, objectMapper, layoutCacheSize, spillOnLayoutChange);
+    }
+
     public Workbook buildWorkbook(GuiderEvaluationDto.Root root) {
         return buildWorkbook(root, REVIEWER_SHEET);
     }
 
+    @Override
+    public ExportDocument buildDocument(GuiderEvaluationDto.Root root, ExportEngine engine) {
+        return buildDocument(root, REVIEWER_SHEET, engine);
+    }
+
+    @Override
+    public ExportCostEstimate estimate(GuiderEvaluationDto.Root root) {
+        return estimate(root, REVIEWER_SHEET);
+    }
+
+    @Override
+    public Workbook buildWorkbook(InputStream json) throws IOException {
+        return streamJson(json, REVIEWER_SHEET);
+    }
+
+    @Override
+    public Workbook buildWorkbookFromNdjson(InputStream ndjson) throws IOException {
+        return streamNdjson(ndjson, REVIEWER_SHEET);
+    }
+
+    @Override
+    protected String exportType() {
+        return ExportMetrics.REVIEWER;
+    }
+
     @Override
     protected int headerStartRow() {
         return 2;
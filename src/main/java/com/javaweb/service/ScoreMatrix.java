@@ -0,0 +1,53 @@
+package com.javaweb.service;
+
+import java.util.Arrays;
+
+/**
+ * Dense row-major score table backing the PI columns of a sheet. Blank cells are stored as NaN,
+ * so filling and reading scores allocates neither map entries nor boxed doubles.
+ */
+final class ScoreMatrix {
+
+    private final int rows;
+    private final int columns;
+    private final double[] cells;
+
+    ScoreMatrix(int rows, int columns) {
+        this.rows = rows;
+        this.columns = columns;
+        this.cells = new double[Math.multiplyExact(rows, columns)];
+        Arrays.fill(cells, Double.NaN);
+    }
+
+    int rows() {
+        return rows;
+    }
+
+    int columns() {
+        return columns;
+    }
+
+    /** Store {@code score} unless the cell already holds a value; the first score for a PI wins. */
+    void offer(int row, int column, Double score) {
+        if (score == null) {
+            return;
+        }
+        int index = row * columns + column;
+        if (Double.isNaN(cells[index])) {
+            cells[index] = score;
+        }
+    }
+
+    /** Blank every cell so the matrix can be reused, e.g. as a single-row buffer for streamed students. */
+    void clear() {
+        Arrays.fill(cells, Double.NaN);
+    }
+
+    double get(int row, int column) {
+        return cells[row * columns + column];
+    }
+
+    static boolean isBlank(double value) {
+        return Double.isNaN(value);
+    }
+}
@@ -0,0 +1,202 @@
+package com.javaweb.service;
+
+import org.apache.poi.ss.util.CellRangeAddress;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeMap;
+
+/**
+ * Workbook-independent, compact description of one sheet: column widths, rows of typed cells
+ * carrying a {@link StyleSpec}, merged regions and bordered header regions. It mirrors the small
+ * part of the POI sheet API the exporters use, so a sheet can be laid out on any thread and
+ * rendered into a workbook later.
+ */
+public final class SheetModel {
+
+    private final TreeMap<Integer, RowModel> rows = new TreeMap<>();
+    private final List<CellRangeAddress> mergedRegions = new ArrayList<>();
+    private final List<CellRangeAddress> borderedRegions = new ArrayList<>();
+    private int[] columnWidths = new int[0];
+
+    /** Create (or replace) the row at {@code rowIndex}, like {@code Sheet.createRow}. */
+    public RowModel createRow(int rowIndex) {
+        RowModel row = new RowModel(rowIndex);
+        rows.put(rowIndex, row);
+        return row;
+    }
+
+    /** Attach a row laid out on its own, replacing any row at its index. */
+    public void addRow(RowModel row) {
+        rows.put(row.getRowNum(), row);
+    }
+
+    public RowModel getRow(int rowIndex) {
+        return rows.get(rowIndex);
+    }
+
+    public void setColumnWidth(int column, int width) {
+        if (column >= columnWidths.length) {
+            int previous = columnWidths.length;
+            columnWidths = Arrays.copyOf(columnWidths, Math.max(column + 1, previous * 2));
+            Arrays.fill(columnWidths, previous, columnWidths.length, -1);
+        }
+        columnWidths[column] = width;
+    }
+
+    public void addMergedRegion(CellRangeAddress region) {
+        mergedRegions.add(region);
+    }
+
+    /** Mark a region whose outline gets a thin border once its cells are rendered. */
+    public void addBorderedRegion(CellRangeAddress region) {
+        borderedRegions.add(region);
+    }
+
+    /** Width of {@code column} in 1/256 character units, or -1 when never set. */
+    public int columnWidth(int column) {
+        return column < columnWidths.length ? columnWidths[column] : -1;
+    }
+
+    public int columnWidthCount() {
+        return columnWidths.length;
+    }
+
+    /** Rows in ascending index order. */
+    public Collection<RowModel> rows() {
+        return Collections.unmodifiableCollection(rows.values());
+    }
+
+    /** Width of the widest row. */
+    public int columnCount() {
+        int columns = 0;
+        for (RowModel row : rows.values()) {
+            columns = Math.max(columns, row.width());
+        }
+        return columns;
+    }
+
+    /** Cells that were set, styled blanks included. */
+    public long cellCount() {
+        long count = 0;
+        for (RowModel row : rows.values()) {
+            count += row.cellCount();
+        }
+        return count;
+    }
+
+    public List<CellRangeAddress> mergedRegions() {
+        return Collections.unmodifiableList(mergedRegions);
+    }
+
+    public List<CellRangeAddress> borderedRegions() {
+        return Collections.unmodifiableList(borderedRegions);
+    }
+
+    /**
+     * One row stored as parallel arrays indexed by column; numbers are kept unboxed.
+     */
+    public static final class RowModel {
+
+        public static final byte ABSENT = 0;
+        public static final byte BLANK = 1;
+        public static final byte NUMERIC = 2;
+        public static final byte TEXT = 3;
+
+        private final int rowNum;
+        private byte[] kinds = new byte[0];
+        private double[] numbers = new double[0];
+        private String[] texts = new String[0];
+        private StyleSpec[] styles = new StyleSpec[0];
+        private int width;
+
+        /** A row not attached to any sheet, for renderers that emit rows one at a time. */
+        RowModel(int rowNum) {
+            this.rowNum = rowNum;
+        }
+
+        public int getRowNum() {
+            return rowNum;
+        }
+
+        /** Number of column slots in use (highest written column + 1). */
+        public int width() {
+            return width;
+        }
+
+        /** Cells that were set, styled blanks included. */
+        public int cellCount() {
+            int count = 0;
+            for (int column = 0; column < width; column++) {
+                if (kinds[column] != ABSENT) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        public void setText(int column, String value, StyleSpec style) {
+            slot(column, value != null ? TEXT : BLANK, style);
+            texts[column] = value;
+        }
+
+        /** Store a numeric cell; NaN is written as a blank cell. */
+        public void setNumber(int column, double value, StyleSpec style) {
+            if (Double.isNaN(value)) {
+                slot(column, BLANK, style);
+                return;
+            }
+            slot(column, NUMERIC, style);
+            numbers[column] = value;
+        }
+
+        public void setBlank(int column, StyleSpec style) {
+            slot(column, BLANK, style);
+        }
+
+        /** Restyle a cell and keep its value; an absent cell becomes a styled blank, like {@code Cell.setCellStyle}. */
+        public void setStyle(int column, StyleSpec style) {
+            if (kind(column) == ABSENT) {
+                slot(column, BLANK, style);
+            } else {
+                styles[column] = style;
+            }
+        }
+
+        public byte kind(int column) {
+            return column < width ? kinds[column] : ABSENT;
+        }
+
+        public double number(int column) {
+            return numbers[column];
+        }
+
+        public String text(int column) {
+            return texts[column];
+        }
+
+        /** Style of the cell, or null when the cell keeps the default style. */
+        public StyleSpec style(int column) {
+            return column < width ? styles[column] : null;
+        }
+
+        private void slot(int column, byte kind, StyleSpec style) {
+            if (column >= kinds.length) {
+                int capacity = Math.max(column + 1, Math.max(8, kinds.length * 2));
+                kinds = Arrays.copyOf(kinds, capacity);
+                numbers = Arrays.copyOf(numbers, capacity);
+                texts = Arrays.copyOf(texts, capacity);
+                styles = Arrays.copyOf(styles, capacity);
+            }
+            kinds[column] = kind;
+            texts[column] = null;
+            if (style != null) {
+                styles[column] = style;
+            }
+            width = Math.max(width, column + 1);
+        }
+    }
+}
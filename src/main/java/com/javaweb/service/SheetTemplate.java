@@ -0,0 +1,130 @@
+package com.javaweb.service;
+
+import org.apache.poi.ss.util.CellRangeAddress;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A laid-out block of rows that is built once and stamped into many sheets. The block is captured
+ * from a {@link SheetModel} whose variable texts carry placeholders ({@link #slot(int)}); stamping
+ * copies its cells, merged regions and bordered regions at a row offset and fills the placeholders
+ * with the given values. Texts are split into literal parts and slots when the template is captured,
+ * so stamping is plain copying and concatenation.
+ */
+final class SheetTemplate {
+
+    private static final Pattern SLOT = Pattern.compile("\\{\\{(\\d+)}}");
+
+    private final List<TemplateRow> rows;
+    private final List<CellRangeAddress> mergedRegions;
+    private final List<CellRangeAddress> borderedRegions;
+    private final int height;
+
+    private SheetTemplate(List<TemplateRow> rows,
+                          List<CellRangeAddress> mergedRegions,
+                          List<CellRangeAddress> borderedRegions,
+                          int height) {
+        this.rows = rows;
+        this.mergedRegions = mergedRegions;
+        this.borderedRegions = borderedRegions;
+        this.height = height;
+    }
+
+    /** Placeholder for the {@code index}-th value passed to {@link #stamp}. */
+    static String slot(int index) {
+        return "{{" + index + "}}";
+    }
+
+    /**
+     * Capture {@code model}, laid out from row 0, as a template {@code height} rows tall; trailing
+     * blank rows count towards the height even though the model has no row for them.
+     */
+    static SheetTemplate capture(SheetModel model, int height) {
+        List<TemplateRow> rows = new ArrayList<>();
+        for (SheetModel.RowModel row : model.rows()) {
+            List<TemplateCell> cells = new ArrayList<>();
+            for (int column = 0; column < row.width(); column++) {
+                byte kind = row.kind(column);
+                if (kind == SheetModel.RowModel.ABSENT) {
+                    continue;
+                }
+                cells.add(new TemplateCell(column, kind,
+                        kind == SheetModel.RowModel.NUMERIC ? row.number(column) : 0,
+                        kind == SheetModel.RowModel.TEXT ? parts(row.text(column)) : null,
+                        row.style(column)));
+            }
+            rows.add(new TemplateRow(row.getRowNum(), List.copyOf(cells)));
+        }
+        return new SheetTemplate(List.copyOf(rows), List.copyOf(model.mergedRegions()),
+                List.copyOf(model.borderedRegions()), height);
+    }
+
+    /** Copy the template into {@code sheet} starting at {@code startRow}; returns the row after it. */
+    int stamp(SheetModel sheet, int startRow, String... values) {
+        for (TemplateRow template : rows) {
+            SheetModel.RowModel row = sheet.createRow(startRow + template.offset());
+            for (TemplateCell cell : template.cells()) {
+                switch (cell.kind()) {
+                    case SheetModel.RowModel.NUMERIC -> row.setNumber(cell.column(), cell.number(), cell.style());
+                    case SheetModel.RowModel.TEXT -> row.setText(cell.column(), text(cell.parts(), values), cell.style());
+                    default -> row.setBlank(cell.column(), cell.style());
+                }
+            }
+        }
+        for (CellRangeAddress region : mergedRegions) {
+            sheet.addMergedRegion(shift(region, startRow));
+        }
+        for (CellRangeAddress region : borderedRegions) {
+            sheet.addBorderedRegion(shift(region, startRow));
+        }
+        return startRow + height;
+    }
+
+    private static CellRangeAddress shift(CellRangeAddress region, int rows) {
+        return new CellRangeAddress(region.getFirstRow() + rows, region.getLastRow() + rows,
+                region.getFirstColumn(), region.getLastColumn());
+    }
+
+    /** Literal parts of {@code text} as strings and its placeholders as their value index. */
+    private static Object[] parts(String text) {
+        List<Object> parts = new ArrayList<>();
+        Matcher matcher = SLOT.matcher(text);
+        int literalStart = 0;
+        while (matcher.find()) {
+            if (matcher.start() > literalStart) {
+                parts.add(text.substring(literalStart, matcher.start()));
+            }
+            parts.add(Integer.parseInt(matcher.group(1)));
+            literalStart = matcher.end();
+        }
+        if (literalStart < text.length() || parts.isEmpty()) {
+            parts.add(text.substring(literalStart));
+        }
+        return parts.toArray();
+    }
+
+    private static String text(Object[] parts, String[] values) {
+        if (parts.length == 1 && parts[0] instanceof String literal) {
+            return literal;
+        }
+        StringBuilder text = new StringBuilder();
+        for (Object part : parts) {
+            if (part instanceof Integer index) {
+                String value = index < values.length ? values[index] : null;
+                text.append(value != null ? value : "");
+            } else {
+                text.append((String) part);
+            }
+        }
+        return text.toString();
+    }
+
+    private record TemplateRow(int offset, List<TemplateCell> cells) {
+    }
+
+    private record TemplateCell(int column, byte kind, double number, Object[] parts, StyleSpec style) {
+    }
+}
@@ -0,0 +1,342 @@
+package com.javaweb.service;
+
+import com.javaweb.service.SheetModel.RowModel;
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.ss.util.CellReference;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Writes {@link SheetModel}s as an xlsx package without building a POI workbook: every part is
+ * rendered straight to XML and deflated by {@link ExportPackager}, cells go out as inline strings
+ * and numbers, and the styles table only holds the specs the cells actually use. Column widths, merged regions,
+ * fonts, fills and region borders come out as {@link PoiSheetRenderer} would render them.
+ */
+final class SpreadsheetMLDocument implements ExportDocument {
+
+    static final String XML_DECLARATION = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n";
+    static final String MAIN_NS = "http://schemas.openxmlformats.org/spreadsheetml/2006/main";
+    private static final String REL_NS = "http://schemas.openxmlformats.org/officeDocument/2006/relationships";
+    private static final String PACKAGE_REL_NS = "http://schemas.openxmlformats.org/package/2006/relationships";
+    private static final String WORKSHEET_REL = REL_NS + "/worksheet";
+
+    /** Column letters for the first 702 columns (A..ZZ), shared by all rendering threads. */
+    private static final String[] COLUMN_NAMES = new String[702];
+
+    static {
+        for (int i = 0; i < COLUMN_NAMES.length; i++) {
+            COLUMN_NAMES[i] = CellReference.convertNumToColString(i);
+        }
+    }
+
+    private final ExportPackager packager;
+    private List<SheetPart> sheets;
+
+    SpreadsheetMLDocument(List<SheetPart> sheets, ExportPackager packager) {
+        if (sheets.isEmpty()) {
+            throw new IllegalArgumentException("A workbook needs at least one sheet");
+        }
+        this.sheets = List.copyOf(sheets);
+        this.packager = packager;
+    }
+
+    @Override
+    public PackageStats write(OutputStream out, CompressionProfile profile) throws IOException {
+        if (sheets == null) {
+            throw new IllegalStateException("Document has been closed");
+        }
+        // Outline borders and register every style up front, on this thread: the sheet renderers
+        // then only read the models and the style table, and format indices follow sheet order.
+        SpreadsheetMLStyles styles = new SpreadsheetMLStyles();
+        for (SheetPart sheet : sheets) {
+            RegionBorders.apply(sheet.model());
+            styles.register(sheet.model());
+        }
+        ExportProfile exportProfile = ExportProfile.current();
+        if (exportProfile != null) {
+            exportProfile.styles(styles.size());
+        }
+
+        int level = profile.level();
+        DeflatedZipWriter zip = new DeflatedZipWriter(out);
+        zip.add(DeflatedPart.deflate("[Content_Types].xml", level, this::writeContentTypes));
+        zip.add(DeflatedPart.deflate("_rels/.rels", level, SpreadsheetMLDocument::writeRootRels));
+        zip.add(DeflatedPart.deflate("xl/workbook.xml", level, this::writeWorkbook));
+        zip.add(DeflatedPart.deflate("xl/_rels/workbook.xml.rels", level, this::writeWorkbookRels));
+        writeSheets(zip, styles, level);
+        zip.add(DeflatedPart.deflate("xl/styles.xml", level, styles::write));
+        zip.finish();
+        return zip.stats(profile);
+    }
+
+    /** Drops the sheet models; the document cannot be written afterwards. */
+    @Override
+    public void close() {
+        sheets = null;
+    }
+
+    /**
+     * Render and deflate the worksheets on the packager pool, copying them into the archive strictly in
+     * sheet order. Rendering and compressing later sheets overlaps with writing earlier ones.
+     */
+    private void writeSheets(DeflatedZipWriter zip, SpreadsheetMLStyles styles, int level) throws IOException {
+        List<Callable<DeflatedPart>> tasks = new ArrayList<>(sheets.size());
+        for (int i = 0; i < sheets.size(); i++) {
+            SheetPart sheet = sheets.get(i);
+            boolean selected = i == 0;
+            String name = "xl/worksheets/sheet" + (i + 1) + ".xml";
+            tasks.add(() -> DeflatedPart.deflate(name, level, out -> writeSheet(out, sheet, styles, selected)));
+        }
+
+        ExecutorService executor = packager.executor();
+        if (executor == null || tasks.size() == 1) {
+            for (Callable<DeflatedPart> task : tasks) {
+                zip.add(call(task));
+            }
+            return;
+        }
+
+        int window = packager.window();
+        List<Future<DeflatedPart>> pending = new ArrayList<>(tasks.size());
+        int submitted = 0;
+        try {
+            while (submitted < tasks.size() && submitted < window) {
+                pending.add(executor.submit(ExportCancellation.propagate(ExportProfile.propagate(tasks.get(submitted++)))));
+            }
+            for (int i = 0; i < tasks.size(); i++) {
+                DeflatedPart part = await(pending.get(i));
+                pending.set(i, null);
+                if (submitted < tasks.size()) {
+                    pending.add(executor.submit(ExportCancellation.propagate(ExportProfile.propagate(tasks.get(submitted++)))));
+                }
+                zip.add(part);
+            }
+        } finally {
+            for (Future<DeflatedPart> future : pending) {
+                if (future != null) {
+                    future.cancel(true);
+                }
+            }
+        }
+    }
+
+    private static DeflatedPart call(Callable<DeflatedPart> task) throws IOException {
+        try {
+            return task.call();
+        } catch (IOException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException("Failed to render worksheet", e);
+        }
+    }
+
+    private static DeflatedPart await(Future<DeflatedPart> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while packaging worksheets");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException io) {
+                throw io;
+            }
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw new IOException("Failed to render worksheet", e.getCause());
+        }
+    }
+
+    private static void writeRootRels(Writer out) throws IOException {
+        out.write(XML_DECLARATION);
+        out.write("<Relationships xmlns=\"" + PACKAGE_REL_NS + "\">"
+                + "<Relationship Id=\"rId1\" Type=\"" + REL_NS + "/officeDocument\" Target=\"xl/workbook.xml\"/>"
+                + "</Relationships>");
+    }
+
+    private void writeContentTypes(Writer out) throws IOException {
+        out.write(XML_DECLARATION);
+        out.write("<Types xmlns=\"http://schemas.openxmlformats.org/package/2006/content-types\">"
+                + "<Default Extension=\"rels\" ContentType=\"application/vnd.openxmlformats-package.relationships+xml\"/>"
+                + "<Default Extension=\"xml\" ContentType=\"application/xml\"/>"
+                + "<Override PartName=\"/xl/workbook.xml\" ContentType=\""
+                + "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet.main+xml\"/>"
+                + "<Override PartName=\"/xl/styles.xml\" ContentType=\""
+                + "application/vnd.openxmlformats-officedocument.spreadsheetml.styles+xml\"/>");
+        for (int i = 1; i <= sheets.size(); i++) {
+            out.write("<Override PartName=\"/xl/worksheets/sheet" + i + ".xml\" ContentType=\""
+                    + "application/vnd.openxmlformats-officedocument.spreadsheetml.worksheet+xml\"/>");
+        }
+        out.write("</Types>");
+    }
+
+    private void writeWorkbook(Writer out) throws IOException {
+        out.write(XML_DECLARATION);
+        out.write("<workbook xmlns=\"" + MAIN_NS + "\" xmlns:r=\"" + REL_NS + "\">"
+                + "<bookViews><workbookView activeTab=\"0\"/></bookViews><sheets>");
+        for (int i = 0; i < sheets.size(); i++) {
+            out.write("<sheet name=\"");
+            escape(out, sheets.get(i).name());
+            out.write("\" sheetId=\"" + (i + 1) + "\" r:id=\"rId" + (i + 1) + "\"/>");
+        }
+        out.write("</sheets></workbook>");
+    }
+
+    private void writeWorkbookRels(Writer out) throws IOException {
+        out.write(XML_DECLARATION);
+        out.write("<Relationships xmlns=\"" + PACKAGE_REL_NS + "\">");
+        for (int i = 1; i <= sheets.size(); i++) {
+            out.write("<Relationship Id=\"rId" + i + "\" Type=\"" + WORKSHEET_REL
+                    + "\" Target=\"worksheets/sheet" + i + ".xml\"/>");
+        }
+        out.write("<Relationship Id=\"rId" + (sheets.size() + 1) + "\" Type=\"" + REL_NS
+                + "/styles\" Target=\"styles.xml\"/>");
+        out.write("</Relationships>");
+    }
+
+    private static void writeSheet(Writer out, SheetPart sheet, SpreadsheetMLStyles styles, boolean selected)
+            throws IOException {
+        SheetModel model = sheet.model();
+        out.write(XML_DECLARATION);
+        out.write("<worksheet xmlns=\"" + MAIN_NS + "\" xmlns:r=\"" + REL_NS + "\">");
+        out.write(selected
+                ? "<sheetViews><sheetView tabSelected=\"1\" workbookViewId=\"0\"/></sheetViews>"
+                : "<sheetViews><sheetView workbookViewId=\"0\"/></sheetViews>");
+        out.write("<sheetFormatPr defaultRowHeight=\"15\"/>");
+
+        boolean colsOpen = false;
+        for (int column = 0; column < model.columnWidthCount(); column++) {
+            int width = model.columnWidth(column);
+            if (width < 0) {
+                continue;
+            }
+            if (!colsOpen) {
+                out.write("<cols>");
+                colsOpen = true;
+            }
+            out.write("<col min=\"" + (column + 1) + "\" max=\"" + (column + 1) + "\" width=\""
+                    + number(width / 256.0) + "\" customWidth=\"1\"/>");
+        }
+        if (colsOpen) {
+            out.write("</cols>");
+        }
+
+        out.write("<sheetData>");
+        for (RowModel row : model.rows()) {
+            ExportCancellation.checkpoint();
+            writeRow(out, row, styles);
+        }
+        out.write("</sheetData>");
+
+        List<CellRangeAddress> merged = MergedRegions.accepted(sheet.name(), model.mergedRegions());
+        if (!merged.isEmpty()) {
+            out.write("<mergeCells count=\"" + merged.size() + "\">");
+            for (CellRangeAddress region : merged) {
+                out.write("<mergeCell ref=\"" + region.formatAsString() + "\"/>");
+            }
+            out.write("</mergeCells>");
+        }
+        out.write("<pageMargins left=\"0.7\" right=\"0.7\" top=\"0.75\" bottom=\"0.75\" header=\"0.3\" footer=\"0.3\"/>");
+        out.write("</worksheet>");
+    }
+
+    private static void writeRow(Writer out, RowModel row, SpreadsheetMLStyles styles) throws IOException {
+        String rowRef = Integer.toString(row.getRowNum() + 1);
+        if (row.width() == 0) {
+            out.write("<row r=\"" + rowRef + "\"/>");
+            return;
+        }
+        out.write("<row r=\"" + rowRef + "\">");
+        for (int column = 0; column < row.width(); column++) {
+            byte kind = row.kind(column);
+            if (kind == RowModel.ABSENT) {
+                continue;
+            }
+            out.write("<c r=\"");
+            out.write(columnName(column));
+            out.write(rowRef);
+            out.write('"');
+            int xf = styles.index(row.style(column));
+            if (xf != 0) {
+                out.write(" s=\"" + xf + "\"");
+            }
+            if (kind == RowModel.NUMERIC) {
+                double value = row.number(column);
+                if (Double.isInfinite(value)) {
+                    // Same as XSSFCell.setCellValue(double) for infinities.
+                    out.write(" t=\"e\"><v>#DIV/0!</v></c>");
+                } else {
+                    out.write("><v>" + number(value) + "</v></c>");
+                }
+            } else if (kind == RowModel.TEXT) {
+                String text = row.text(column);
+                out.write(preserveSpace(text) ? " t=\"inlineStr\"><is><t xml:space=\"preserve\">" : " t=\"inlineStr\"><is><t>");
+                escape(out, text);
+                out.write("</t></is></c>");
+            } else {
+                out.write("/>");
+            }
+        }
+        out.write("</row>");
+    }
+
+    private static String columnName(int column) {
+        return column < COLUMN_NAMES.length ? COLUMN_NAMES[column] : CellReference.convertNumToColString(column);
+    }
+
+    private static String number(double value) {
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            return Long.toString((long) value);
+        }
+        return Double.toString(value);
+    }
+
+    private static boolean preserveSpace(String text) {
+        return !text.isEmpty()
+                && (Character.isWhitespace(text.charAt(0)) || Character.isWhitespace(text.charAt(text.length() - 1)));
+    }
+
+    /**
+     * Write {@code text} as XML character data. Carriage returns are kept as a character reference and
+     * other control characters, which XML 1.0 cannot carry, use the OOXML {@code _xHHHH_} escape.
+     */
+    static void escape(Writer out, String text) throws IOException {
+        int start = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            String replacement;
+            switch (c) {
+                case '<' -> replacement = "&lt;";
+                case '>' -> replacement = "&gt;";
+                case '&' -> replacement = "&amp;";
+                case '"' -> replacement = "&quot;";
+                case '\r' -> replacement = "&#13;";
+                case '\t', '\n' -> replacement = null;
+                default -> replacement = c < 0x20 || c == 0xFFFE || c == 0xFFFF
+                        ? String.format("_x%04X_", (int) c)
+                        : null;
+            }
+            if (replacement != null) {
+                out.write(text, start, i - start);
+                out.write(replacement);
+                start = i + 1;
+            }
+        }
+        out.write(text, start, text.length() - start);
+    }
+
+    /** One worksheet of the package; {@code name} must already be a valid, unique sheet name. */
+    record SheetPart(String name, SheetModel model) {}
+}
@@ -0,0 +1,284 @@
+package com.javaweb.service;
+
+import org.apache.poi.ss.usermodel.BorderStyle;
+import org.apache.poi.ss.usermodel.FillPatternType;
+import org.apache.poi.ss.usermodel.Font;
+import org.apache.poi.ss.usermodel.HorizontalAlignment;
+import org.apache.poi.ss.usermodel.VerticalAlignment;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The {@code xl/styles.xml} table of a directly written workbook. Like {@link StyleRegistry}, each
+ * distinct {@link StyleSpec} becomes one cell format the first time a registered cell uses it; fonts,
+ * fills and borders are shared between formats. Index 0 of every table is the workbook default.
+ */
+final class SpreadsheetMLStyles {
+
+    /** SpreadsheetML border style names, indexed by {@link BorderStyle#getCode()}. */
+    private static final String[] BORDER_STYLES = {
+            "none", "thin", "medium", "dashed", "dotted", "thick", "double", "hair", "mediumDashed",
+            "dashDot", "mediumDashDot", "dashDotDot", "mediumDashDotDot", "slantDashDot"
+    };
+
+    /** SpreadsheetML pattern names, indexed by {@link FillPatternType#getCode()}. */
+    private static final String[] FILL_PATTERNS = {
+            "none", "solid", "mediumGray", "darkGray", "lightGray", "darkHorizontal", "darkVertical",
+            "darkDown", "darkUp", "darkGrid", "darkTrellis", "lightHorizontal", "lightVertical",
+            "lightDown", "lightUp", "lightGrid", "lightTrellis", "gray125", "gray0625"
+    };
+
+    private final Map<StyleSpec, Integer> xfIds = new HashMap<>();
+    /** Specs are usually shared constants, so most lookups are answered without hashing the record. */
+    private final Map<StyleSpec, Integer> byIdentity = new IdentityHashMap<>();
+    private final List<Xf> xfs = new ArrayList<>();
+
+    private final Map<FontSpec, Integer> fontIds = new HashMap<>();
+    private final List<FontSpec> fonts = new ArrayList<>();
+    private final Map<Fill, Integer> fillIds = new HashMap<>();
+    private final List<Fill> fills = new ArrayList<>();
+    private final Map<Border, Integer> borderIds = new HashMap<>();
+    private final List<Border> borders = new ArrayList<>();
+
+    SpreadsheetMLStyles() {
+        xfs.add(new Xf(StyleSpec.DEFAULT, 0, 0, 0));
+        fonts.add(null);
+        fills.add(new Fill(FillPatternType.NO_FILL, StyleSpec.NO_FILL_COLOR));
+        fills.add(null);
+        borders.add(new Border(BorderStyle.NONE, BorderStyle.NONE, BorderStyle.NONE, BorderStyle.NONE));
+        fillIds.put(fills.get(0), 0);
+        borderIds.put(borders.get(0), 0);
+    }
+
+    /** Add the style of every cell in {@code model}. */
+    void register(SheetModel model) {
+        for (SheetModel.RowModel row : model.rows()) {
+            for (int column = 0; column < row.width(); column++) {
+                if (row.kind(column) != SheetModel.RowModel.ABSENT) {
+                    register(row.style(column));
+                }
+            }
+        }
+    }
+
+    /**
+     * Cell format index of a registered spec; null (the default style) is format 0. Only reads the
+     * table, so sheets can be rendered concurrently once registration is done.
+     */
+    int index(StyleSpec spec) {
+        if (spec == null) {
+            return 0;
+        }
+        Integer id = byIdentity.get(spec);
+        if (id == null) {
+            id = xfIds.get(spec);
+        }
+        if (id == null) {
+            throw new IllegalStateException("Style was not registered: " + spec);
+        }
+        return id;
+    }
+
+    private void register(StyleSpec spec) {
+        if (spec == null || byIdentity.containsKey(spec)) {
+            return;
+        }
+        Integer id = xfIds.get(spec);
+        if (id == null) {
+            id = xfs.size();
+            xfs.add(new Xf(spec, font(spec.font()), fill(spec), border(spec)));
+            xfIds.put(spec, id);
+        }
+        byIdentity.put(spec, id);
+    }
+
+    private int font(FontSpec spec) {
+        if (spec == null) {
+            return 0;
+        }
+        return fontIds.computeIfAbsent(spec, key -> {
+            fonts.add(key);
+            return fonts.size() - 1;
+        });
+    }
+
+    private int fill(StyleSpec spec) {
+        if (spec.fillPattern() == FillPatternType.NO_FILL) {
+            return 0;
+        }
+        return fillIds.computeIfAbsent(new Fill(spec.fillPattern(), spec.fillColor()), key -> {
+            fills.add(key);
+            return fills.size() - 1;
+        });
+    }
+
+    private int border(StyleSpec spec) {
+        return borderIds.computeIfAbsent(
+                new Border(spec.borderLeft(), spec.borderRight(), spec.borderTop(), spec.borderBottom()), key -> {
+                    borders.add(key);
+                    return borders.size() - 1;
+                });
+    }
+
+    /** Cell formats registered so far, the default included. */
+    int size() {
+        return xfs.size();
+    }
+
+    void write(Writer out) throws IOException {
+        out.write(SpreadsheetMLDocument.XML_DECLARATION);
+        out.write("<styleSheet xmlns=\"" + SpreadsheetMLDocument.MAIN_NS + "\">");
+
+        out.write("<fonts count=\"" + fonts.size() + "\">");
+        out.write("<font><sz val=\"11\"/><color theme=\"1\"/><name val=\"Calibri\"/>"
+                + "<family val=\"2\"/><scheme val=\"minor\"/></font>");
+        for (int i = 1; i < fonts.size(); i++) {
+            writeFont(out, fonts.get(i));
+        }
+        out.write("</fonts>");
+
+        out.write("<fills count=\"" + fills.size() + "\">");
+        out.write("<fill><patternFill patternType=\"none\"/></fill>");
+        out.write("<fill><patternFill patternType=\"gray125\"/></fill>");
+        for (int i = 2; i < fills.size(); i++) {
+            Fill fill = fills.get(i);
+            out.write("<fill><patternFill patternType=\"" + FILL_PATTERNS[fill.pattern().getCode()] + "\"");
+            if (fill.color() != StyleSpec.NO_FILL_COLOR) {
+                out.write("><fgColor indexed=\"" + fill.color() + "\"/></patternFill></fill>");
+            } else {
+                out.write("/></fill>");
+            }
+        }
+        out.write("</fills>");
+
+        out.write("<borders count=\"" + borders.size() + "\">");
+        for (Border border : borders) {
+            out.write("<border>");
+            writeEdge(out, "left", border.left());
+            writeEdge(out, "right", border.right());
+            writeEdge(out, "top", border.top());
+            writeEdge(out, "bottom", border.bottom());
+            out.write("<diagonal/></border>");
+        }
+        out.write("</borders>");
+
+        out.write("<cellStyleXfs count=\"1\"><xf numFmtId=\"0\" fontId=\"0\" fillId=\"0\" borderId=\"0\"/></cellStyleXfs>");
+        out.write("<cellXfs count=\"" + xfs.size() + "\">");
+        out.write("<xf numFmtId=\"0\" fontId=\"0\" fillId=\"0\" borderId=\"0\" xfId=\"0\"/>");
+        for (int i = 1; i < xfs.size(); i++) {
+            writeXf(out, xfs.get(i));
+        }
+        out.write("</cellXfs>");
+        out.write("<cellStyles count=\"1\"><cellStyle name=\"Normal\" xfId=\"0\" builtinId=\"0\"/></cellStyles>");
+        out.write("</styleSheet>");
+    }
+
+    private static void writeFont(Writer out, FontSpec font) throws IOException {
+        out.write("<font>");
+        if (font.bold()) {
+            out.write("<b/>");
+        }
+        if (font.italic()) {
+            out.write("<i/>");
+        }
+        switch (font.underline()) {
+            case Font.U_NONE -> {
+            }
+            case Font.U_SINGLE -> out.write("<u/>");
+            case Font.U_DOUBLE -> out.write("<u val=\"double\"/>");
+            case Font.U_SINGLE_ACCOUNTING -> out.write("<u val=\"singleAccounting\"/>");
+            case Font.U_DOUBLE_ACCOUNTING -> out.write("<u val=\"doubleAccounting\"/>");
+            default -> out.write("<u/>");
+        }
+        out.write("<sz val=\"" + font.heightInPoints() + "\"/>");
+        if (font.color() != FontSpec.DEFAULT_COLOR) {
+            out.write("<color indexed=\"" + font.color() + "\"/>");
+        }
+        out.write("<name val=\"");
+        SpreadsheetMLDocument.escape(out, font.name());
+        out.write("\"/></font>");
+    }
+
+    private static void writeEdge(Writer out, String edge, BorderStyle style) throws IOException {
+        if (style == BorderStyle.NONE) {
+            out.write("<" + edge + "/>");
+        } else {
+            out.write("<" + edge + " style=\"" + BORDER_STYLES[style.getCode()] + "\"/>");
+        }
+    }
+
+    private static void writeXf(Writer out, Xf xf) throws IOException {
+        StyleSpec spec = xf.spec();
+        out.write("<xf numFmtId=\"0\" fontId=\"" + xf.fontId() + "\" fillId=\"" + xf.fillId()
+                + "\" borderId=\"" + xf.borderId() + "\" xfId=\"0\"");
+        if (xf.fontId() != 0) {
+            out.write(" applyFont=\"1\"");
+        }
+        if (xf.fillId() != 0) {
+            out.write(" applyFill=\"1\"");
+        }
+        if (xf.borderId() != 0) {
+            out.write(" applyBorder=\"1\"");
+        }
+        String horizontal = horizontal(spec.alignment());
+        String vertical = vertical(spec.verticalAlignment());
+        if (horizontal == null && vertical == null && !spec.wrapText()) {
+            out.write("/>");
+            return;
+        }
+        out.write(" applyAlignment=\"1\"><alignment");
+        if (horizontal != null) {
+            out.write(" horizontal=\"" + horizontal + "\"");
+        }
+        if (vertical != null) {
+            out.write(" vertical=\"" + vertical + "\"");
+        }
+        if (spec.wrapText()) {
+            out.write(" wrapText=\"1\"");
+        }
+        out.write("/></xf>");
+    }
+
+    /** Attribute value for {@code alignment}, or null for the default (general). */
+    private static String horizontal(HorizontalAlignment alignment) {
+        if (alignment == null) {
+            return null;
+        }
+        return switch (alignment) {
+            case GENERAL -> null;
+            case LEFT -> "left";
+            case CENTER -> "center";
+            case RIGHT -> "right";
+            case FILL -> "fill";
+            case JUSTIFY -> "justify";
+            case CENTER_SELECTION -> "centerContinuous";
+            case DISTRIBUTED -> "distributed";
+        };
+    }
+
+    /** Attribute value for {@code alignment}, or null for the default (bottom). */
+    private static String vertical(VerticalAlignment alignment) {
+        if (alignment == null) {
+            return null;
+        }
+        return switch (alignment) {
+            case BOTTOM -> null;
+            case TOP -> "top";
+            case CENTER -> "center";
+            case JUSTIFY -> "justify";
+            case DISTRIBUTED -> "distributed";
+        };
+    }
+
+    private record Xf(StyleSpec spec, int fontId, int fillId, int borderId) {}
+
+    private record Fill(FillPatternType pattern, short color) {}
+
+    private record Border(BorderStyle left, BorderStyle right, BorderStyle top, BorderStyle bottom) {}
+}
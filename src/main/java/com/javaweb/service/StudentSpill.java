@@ -0,0 +1,84 @@
+package com.javaweb.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.javaweb.dto.GuiderEvaluationDto.Student;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Append-only temp file of students, one JSON document per line. Once writing is done it can be
+ * replayed in order any number of times; each pass holds a single student in memory.
+ */
+final class StudentSpill implements Iterable<Student>, Closeable {
+
+    private final ObjectMapper mapper;
+    private final Path file;
+    private final ObjectWriter writer;
+    private final JsonGenerator generator;
+    private final List<MappingIterator<Student>> readers = new ArrayList<>();
+    private boolean writing = true;
+    private int size;
+
+    StudentSpill(ObjectMapper mapper) throws IOException {
+        this.mapper = mapper;
+        this.writer = mapper.writerFor(Student.class).without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        this.file = Files.createTempFile("export-students-", ".ndjson");
+        this.generator = mapper.createGenerator(new BufferedOutputStream(Files.newOutputStream(file)));
+    }
+
+    void append(Student student) throws IOException {
+        if (!writing) {
+            throw new IllegalStateException("Student spill is already being replayed");
+        }
+        writer.writeValue(generator, student);
+        generator.writeRaw('\n');
+        size++;
+    }
+
+    int size() {
+        return size;
+    }
+
+    @Override
+    public Iterator<Student> iterator() {
+        try {
+            finishWriting();
+            MappingIterator<Student> reader = mapper.readerFor(Student.class).readValues(file.toFile());
+            readers.add(reader);
+            return reader;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void finishWriting() throws IOException {
+        if (writing) {
+            writing = false;
+            generator.close();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            for (MappingIterator<Student> reader : readers) {
+                reader.close();
+            }
+            finishWriting();
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.javaweb.service;
+
+import org.apache.poi.ss.usermodel.BorderStyle;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.FillPatternType;
+import org.apache.poi.ss.usermodel.Font;
+import org.apache.poi.ss.usermodel.Workbook;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Workbook-scoped cache that creates each distinct {@link FontSpec} / {@link StyleSpec} once.
+ * Not thread-safe: a workbook is always assembled by a single thread.
+ */
+public final class StyleRegistry {
+
+    private final Workbook workbook;
+    private final Map<FontSpec, Font> fonts = new HashMap<>();
+    private final Map<StyleSpec, CellStyle> styles = new HashMap<>();
+    /** Specs are usually shared constants, so most lookups are answered without hashing the record. */
+    private final Map<StyleSpec, CellStyle> byIdentity = new IdentityHashMap<>();
+    private int lookups;
+
+    public StyleRegistry(Workbook workbook) {
+        this.workbook = workbook;
+    }
+
+    public CellStyle style(StyleSpec spec) {
+        lookups++;
+        CellStyle style = byIdentity.get(spec);
+        if (style != null) {
+            return style;
+        }
+        style = styles.get(spec);
+        if (style == null) {
+            style = createStyle(spec);
+            styles.put(spec, style);
+        }
+        byIdentity.put(spec, style);
+        return style;
+    }
+
+    public Font font(FontSpec spec) {
+        Font font = fonts.get(spec);
+        if (font == null) {
+            font = createFont(spec);
+            fonts.put(spec, font);
+        }
+        return font;
+    }
+
+    public Stats stats() {
+        return new Stats(styles.size(), fonts.size(), lookups);
+    }
+
+    private CellStyle createStyle(StyleSpec spec) {
+        CellStyle style = workbook.createCellStyle();
+        if (spec.font() != null) {
+            style.setFont(font(spec.font()));
+        }
+        style.setAlignment(spec.alignment());
+        style.setVerticalAlignment(spec.verticalAlignment());
+        if (spec.wrapText()) {
+            style.setWrapText(true);
+        }
+        if (spec.borderTop() != BorderStyle.NONE) {
+            style.setBorderTop(spec.borderTop());
+        }
+        if (spec.borderBottom() != BorderStyle.NONE) {
+            style.setBorderBottom(spec.borderBottom());
+        }
+        if (spec.borderLeft() != BorderStyle.NONE) {
+            style.setBorderLeft(spec.borderLeft());
+        }
+        if (spec.borderRight() != BorderStyle.NONE) {
+            style.setBorderRight(spec.borderRight());
+        }
+        if (spec.fillPattern() != FillPatternType.NO_FILL) {
+            style.setFillForegroundColor(spec.fillColor());
+            style.setFillPattern(spec.fillPattern());
+        }
+        return style;
+    }
+
+    private Font createFont(FontSpec spec) {
+        Font font = workbook.createFont();
+        font.setFontName(spec.name());
+        font.setFontHeightInPoints(spec.heightInPoints());
+        if (spec.bold()) {
+            font.setBold(true);
+        }
+        if (spec.italic()) {
+            font.setItalic(true);
+        }
+        if (spec.underline() != Font.U_NONE) {
+            font.setUnderline(spec.underline());
+        }
+        if (spec.color() != FontSpec.DEFAULT_COLOR) {
+            font.setColor(spec.color());
+        }
+        return font;
+    }
+
+    /** Distinct styles and fonts created for one workbook, and how many style lookups were served. */
+    public record Stats(int styles, int fonts, int lookups) {}
+}
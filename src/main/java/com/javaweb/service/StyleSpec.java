@@ -0,0 +1,56 @@
+package com.javaweb.service;
+
+import org.apache.poi.ss.usermodel.BorderStyle;
+import org.apache.poi.ss.usermodel.FillPatternType;
+import org.apache.poi.ss.usermodel.HorizontalAlignment;
+import org.apache.poi.ss.usermodel.VerticalAlignment;
+
+/**
+ * Value description of a cell style. {@link StyleRegistry} turns each distinct spec into exactly
+ * one workbook style, so derived variants (wrapped, filled, bordered) no longer clone styles.
+ */
+public record StyleSpec(FontSpec font,
+                        HorizontalAlignment alignment,
+                        VerticalAlignment verticalAlignment,
+                        boolean wrapText,
+                        BorderStyle borderTop,
+                        BorderStyle borderBottom,
+                        BorderStyle borderLeft,
+                        BorderStyle borderRight,
+                        short fillColor,
+                        FillPatternType fillPattern) {
+
+    /** Marker for "no fill colour". */
+    public static final short NO_FILL_COLOR = -1;
+
+    /** Equivalent of the workbook's built-in default style. */
+    public static final StyleSpec DEFAULT = new StyleSpec(null,
+            HorizontalAlignment.GENERAL, VerticalAlignment.BOTTOM, false,
+            BorderStyle.NONE, BorderStyle.NONE, BorderStyle.NONE, BorderStyle.NONE,
+            NO_FILL_COLOR, FillPatternType.NO_FILL);
+
+    public static StyleSpec of(FontSpec font, HorizontalAlignment alignment, VerticalAlignment verticalAlignment) {
+        return new StyleSpec(font, alignment, verticalAlignment, false,
+                BorderStyle.NONE, BorderStyle.NONE, BorderStyle.NONE, BorderStyle.NONE,
+                NO_FILL_COLOR, FillPatternType.NO_FILL);
+    }
+
+    public StyleSpec withWrapText() {
+        return new StyleSpec(font, alignment, verticalAlignment, true,
+                borderTop, borderBottom, borderLeft, borderRight, fillColor, fillPattern);
+    }
+
+    public StyleSpec withThinBorder() {
+        return withBorders(BorderStyle.THIN, BorderStyle.THIN, BorderStyle.THIN, BorderStyle.THIN);
+    }
+
+    public StyleSpec withBorders(BorderStyle top, BorderStyle bottom, BorderStyle left, BorderStyle right) {
+        return new StyleSpec(font, alignment, verticalAlignment, wrapText,
+                top, bottom, left, right, fillColor, fillPattern);
+    }
+
+    public StyleSpec withSolidFill(short color) {
+        return new StyleSpec(font, alignment, verticalAlignment, wrapText,
+                borderTop, borderBottom, borderLeft, borderRight, color, FillPatternType.SOLID_FOREGROUND);
+    }
+}
@@ -0,0 +1,142 @@
+package com.javaweb.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.javaweb.dto.CouncilEvaluationDto;
+import com.javaweb.service.CompressionProfile;
+import com.javaweb.service.CouncilEvaluationExportService;
+import com.javaweb.service.ExportAdmission;
+import com.javaweb.service.ExportEngine;
+import com.javaweb.service.ExportEngineSelector;
+import com.javaweb.service.ExportJob;
+import com.javaweb.service.ExportJobService;
+import com.javaweb.service.ExportMetrics;
+import com.javaweb.service.ExportPackager;
+import com.javaweb.service.ExportWorkbookFactory;
+import com.javaweb.service.GuiderEvaluationExportService;
+import com.javaweb.service.ReviewerEvaluationExportService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+class ExportJobControllerTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void submittedJobIsPolledAndDownloaded() throws Exception {
+        ExportJobController controller = controller(2, 4);
+
+        ResponseEntity<ExportJob.Status> submitted = controller.council(council(), ExportEngine.XSSF);
+        assertEquals(HttpStatus.ACCEPTED, submitted.getStatusCode());
+        String id = submitted.getBody().id();
+        assertEquals("/api/export/jobs/" + id, submitted.getHeaders().getLocation().toString());
+
+        ExportJob.Status status = poll(controller, id);
+        assertEquals(ExportJob.State.DONE, status.state());
+
+        ResponseEntity<StreamingResponseBody> download = controller.download(id);
+        assertEquals(HttpStatus.OK, download.getStatusCode());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        download.getBody().writeTo(out);
+        assertEquals(status.size(), out.size());
+        assertEquals(out.size(), download.getHeaders().getContentLength());
+        try (XSSFWorkbook workbook = new XSSFWorkbook(new ByteArrayInputStream(out.toByteArray()))) {
+            // The lecturer's sheet and the summary
+            assertEquals(2, workbook.getNumberOfSheets());
+        }
+    }
+
+    @Test
+    void unknownJobIsNotFound() {
+        ExportJobController controller = controller(1, 1);
+
+        assertEquals(HttpStatus.NOT_FOUND, controller.status("missing").getStatusCode());
+        assertEquals(HttpStatus.NOT_FOUND, controller.download("missing").getStatusCode());
+    }
+
+    @Test
+    void fullQueueIsTurnedAwayWithTheConfiguredRetryAfter() {
+        ExportJobController controller = controller(1, 1);
+
+        ResponseEntity<ExportJob.Status> response = null;
+        for (int i = 0; i < 50 && (response == null || response.getStatusCode() == HttpStatus.ACCEPTED); i++) {
+            response = controller.council(council(), ExportEngine.XSSF);
+        }
+
+        assertNotNull(response);
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, response.getStatusCode());
+        assertEquals("7", response.getHeaders().getFirst(HttpHeaders.RETRY_AFTER));
+    }
+
+    private ExportJobController controller(int workers, int queueCapacity) {
+        ExportMetrics metrics = new ExportMetrics(new SimpleMeterRegistry());
+        ExportWorkbookFactory workbookFactory = new ExportWorkbookFactory(ExportEngine.XSSF, 4);
+        ExportEngineSelector engineSelector = new ExportEngineSelector(workbookFactory, metrics, false, 0);
+        ExportAdmission admission = new ExportAdmission(metrics, true, 0.5, 1 << 20, Duration.ofSeconds(1),
+                Duration.ofSeconds(7));
+        ExportPackager packager = new ExportPackager(1);
+        ObjectMapper objectMapper = new ObjectMapper();
+        try {
+            return new ExportJobController(
+                    new ExportJobService(engineSelector, admission, workers, queueCapacity, dir, Duration.ofMinutes(30),
+                            CompressionProfile.FASTEST),
+                    new CouncilEvaluationExportService(workbookFactory, packager, metrics, engineSelector, 1),
+                    new GuiderEvaluationExportService(workbookFactory, packager, metrics, engineSelector, objectMapper,
+                            8, false),
+                    new ReviewerEvaluationExportService(workbookFactory, packager, metrics, engineSelector,
+                            objectMapper, 8, false),
+                    admission);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static CouncilEvaluationDto.Root council() {
+        CouncilEvaluationDto.Evaluation evaluation = new CouncilEvaluationDto.Evaluation();
+        evaluation.setEvaluationId("council-eval");
+        evaluation.setScores(List.of(new CouncilEvaluationDto.Score("C1.1.", 8.5)));
+        CouncilEvaluationDto.Lecturer lecturer = new CouncilEvaluationDto.Lecturer();
+        lecturer.setLecturerId("GV1");
+        lecturer.setLecturerName("Giảng viên 1");
+        lecturer.setEvaluations(List.of(
+                new CouncilEvaluationDto.StudentEvaluation("B21DCCN001", "Nguyễn Văn A", "D21CQCN01", evaluation)));
+        CouncilEvaluationDto.Indicator indicator = new CouncilEvaluationDto.Indicator();
+        indicator.setCloId("CLO1");
+        indicator.setPis(List.of(new CouncilEvaluationDto.Pi("C1.1.", "C1.1.", "Chỉ số 1", 1.0)));
+        CouncilEvaluationDto.EvaluationForm form = new CouncilEvaluationDto.EvaluationForm();
+        form.setEvaluationId("council-eval");
+        form.setIndicators(List.of(indicator));
+        return new CouncilEvaluationDto.Root(form, List.of(lecturer));
+    }
+
+    private static ExportJob.Status poll(ExportJobController controller, String id) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (true) {
+            ExportJob.Status status = controller.status(id).getBody();
+            if (status.state() == ExportJob.State.DONE || status.state() == ExportJob.State.FAILED) {
+                return status;
+            }
+            if (System.nanoTime() > deadline) {
+                throw new AssertionError("Job " + id + " did not finish");
+            }
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package com.javaweb.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.javaweb.dto.CouncilEvaluationDto;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CouncilBatchExportServiceTest {
+
+    private final ExportWorkbookFactory workbookFactory = new ExportWorkbookFactory(ExportEngine.XSSF, 4);
+    private final ExportMetrics metrics = new ExportMetrics(new SimpleMeterRegistry());
+    private final ExportPackager packager = new ExportPackager(2);
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final List<CouncilBatchExportService> batchServices = new ArrayList<>();
+    private final ExecutorService writer = Executors.newSingleThreadExecutor();
+
+    @AfterEach
+    void shutdown() {
+        batchServices.forEach(CouncilBatchExportService::shutdown);
+        packager.shutdown();
+        writer.shutdownNow();
+    }
+
+    @Test
+    void archiveHoldsStoredWorkbooksAndAManifest() throws IOException {
+        CouncilBatchExportService batch = batch(2, index -> {
+            if (index == 1) {
+                throw new IllegalStateException("bad payload");
+            }
+        });
+        List<CouncilEvaluationDto.Root> payloads = payloads(3);
+
+        List<Entry> entries = read(write(batch, payloads));
+
+        assertEquals(List.of("001-Phiếu chấm hội đồng.xlsx", "003-Phiếu chấm hội đồng.xlsx",
+                CouncilBatchExportService.MANIFEST_NAME), entries.stream().map(Entry::name).toList());
+        for (Entry workbook : entries.subList(0, 2)) {
+            CRC32 crc = new CRC32();
+            crc.update(workbook.bytes());
+            assertEquals(ZipEntry.STORED, workbook.method());
+            assertEquals(crc.getValue(), workbook.crc());
+            try (XSSFWorkbook opened = new XSSFWorkbook(new ByteArrayInputStream(workbook.bytes()))) {
+                assertTrue(opened.getNumberOfSheets() > 0);
+            }
+        }
+
+        JsonNode manifest = objectMapper.readTree(entries.get(2).bytes());
+        assertEquals(3, manifest.get("total").asInt());
+        assertEquals(1, manifest.get("failed").asInt());
+        assertEquals("FASTEST", manifest.get("compression").asText());
+        JsonNode failed = manifest.get("entries").get(1);
+        assertEquals("002-Phiếu chấm hội đồng.xlsx", failed.get("file").asText());
+        assertEquals("FAILED", failed.get("status").asText());
+        assertEquals("IllegalStateException: bad payload", failed.get("error").asText());
+        assertEquals(entries.get(1).bytes().length, manifest.get("entries").get(2).get("bytes").asLong());
+    }
+
+    @Test
+    void atMostTwiceTheParallelismIsBuiltAhead() throws Exception {
+        CountDownLatch firstReleased = new CountDownLatch(1);
+        AtomicInteger started = new AtomicInteger();
+        CouncilBatchExportService batch = batch(2, index -> {
+            started.incrementAndGet();
+            if (index == 0) {
+                await(firstReleased);
+            }
+        });
+
+        Future<byte[]> archive = writer.submit(() -> write(batch, payloads(10)));
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (started.get() < 4 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        // The entry being waited on holds back the rest of the window
+        Thread.sleep(200);
+        assertEquals(4, started.get());
+
+        firstReleased.countDown();
+        assertEquals(11, read(archive.get(10, TimeUnit.SECONDS)).size());
+        assertEquals(10, started.get());
+    }
+
+    @Test
+    void archiveThatFailsPartwayIsLeftWithoutCentralDirectory() throws IOException {
+        CouncilBatchExportService batch = batch(1, index -> {
+            if (index == 1) {
+                throw new OutOfMemoryError("simulated");
+            }
+        });
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        assertThrows(OutOfMemoryError.class,
+                () -> batch.writeArchive(payloads(3), ExportEngine.XSSF, CompressionProfile.FASTEST, out));
+
+        // The first entry's name is in its local header only: no central directory lists it
+        byte[] name = "001-Phiếu chấm hội đồng.xlsx".getBytes(StandardCharsets.UTF_8);
+        assertEquals(1, occurrences(out.toByteArray(), name));
+    }
+
+    private CouncilBatchExportService batch(int parallelism, IntConsumer beforeBuild) {
+        CouncilEvaluationExportService council = new CouncilEvaluationExportService(workbookFactory, packager, metrics,
+                new ExportEngineSelector(workbookFactory, metrics, false, 0), 1) {
+            @Override
+            public ExportDocument buildDocument(CouncilEvaluationDto.Root root, ExportEngine engine) {
+                beforeBuild.accept(Integer.parseInt(root.getEvaluationForm().getEvaluationId()));
+                return super.buildDocument(root, engine);
+            }
+        };
+        CouncilBatchExportService batch = new CouncilBatchExportService(council, objectMapper, parallelism);
+        batchServices.add(batch);
+        return batch;
+    }
+
+    /** {@code count} small councils whose evaluation id is their position in the batch. */
+    private static List<CouncilEvaluationDto.Root> payloads(int count) {
+        List<CouncilEvaluationDto.Root> payloads = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            CouncilEvaluationDto.Root root = ExportTestPayloads.council(1, 2);
+            root.getEvaluationForm().setEvaluationId(String.valueOf(i));
+            payloads.add(root);
+        }
+        return payloads;
+    }
+
+    private static byte[] write(CouncilBatchExportService batch, List<CouncilEvaluationDto.Root> payloads)
+            throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        batch.writeArchive(payloads, ExportEngine.XSSF, CompressionProfile.FASTEST, out);
+        return out.toByteArray();
+    }
+
+    private static List<Entry> read(byte[] archive) throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        try (ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(archive))) {
+            for (ZipEntry entry = zip.getNextEntry(); entry != null; entry = zip.getNextEntry()) {
+                entries.add(new Entry(entry.getName(), entry.getMethod(), entry.getCrc(), zip.readAllBytes()));
+            }
+        }
+        return Collections.unmodifiableList(entries);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            assertTrue(latch.await(10, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static int occurrences(byte[] bytes, byte[] pattern) {
+        int found = 0;
+        for (int i = 0; i + pattern.length <= bytes.length; i++) {
+            if (Arrays.equals(bytes, i, i + pattern.length, pattern, 0, pattern.length)) {
+                found++;
+            }
+        }
+        return found;
+    }
+
+    private record Entry(String name, int method, long crc, byte[] bytes) {
+    }
+}
@@ -0,0 +1,125 @@
+package com.javaweb.service;
+
+import org.apache.poi.ss.usermodel.HorizontalAlignment;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.VerticalAlignment;
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+class DeflatedZipWriterTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void archiveReadsBackWithZipFile() throws IOException {
+        String content = "<worksheet>" + "<row/>".repeat(10_000) + "</worksheet>";
+        String unicodeName = "xl/worksheets/bảng.xml";
+        Path archive = dir.resolve("parts.zip");
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DeflatedZipWriter writer = new DeflatedZipWriter(bytes);
+        writer.add(DeflatedPart.deflate("[Content_Types].xml", Deflater.DEFAULT_COMPRESSION, out -> out.write("<Types/>")));
+        writer.add(DeflatedPart.deflate(unicodeName, Deflater.BEST_SPEED, out -> out.write(content)));
+        writer.add(DeflatedPart.deflate("empty.xml", Deflater.DEFAULT_COMPRESSION, out -> { }));
+        writer.finish();
+        Files.write(archive, bytes.toByteArray());
+
+        try (ZipFile zip = new ZipFile(archive.toFile(), StandardCharsets.UTF_8)) {
+            List<String> names = Collections.list(zip.entries()).stream().map(ZipEntry::getName).toList();
+            assertEquals(List.of("[Content_Types].xml", unicodeName, "empty.xml"), names);
+
+            ZipEntry sheet = zip.getEntry(unicodeName);
+            assertNotNull(sheet);
+            byte[] expected = content.getBytes(StandardCharsets.UTF_8);
+            CRC32 crc = new CRC32();
+            crc.update(expected);
+            assertEquals(ZipEntry.DEFLATED, sheet.getMethod());
+            assertEquals(expected.length, sheet.getSize());
+            assertEquals(crc.getValue(), sheet.getCrc());
+            try (InputStream in = zip.getInputStream(sheet)) {
+                assertArrayEquals(expected, in.readAllBytes());
+            }
+            try (InputStream in = zip.getInputStream(zip.getEntry("empty.xml"))) {
+                assertEquals(0, in.readAllBytes().length);
+            }
+        }
+        assertEquals(Files.size(archive), writer.stats(CompressionProfile.BALANCED).compressedBytes());
+    }
+
+    @Test
+    void sameSheetsGiveSameBytes() throws IOException {
+        assertArrayEquals(write(), write());
+    }
+
+    @Test
+    void directPackageOpensInPoi() throws IOException {
+        ExportPackager packager = new ExportPackager(2);
+        try {
+            List<SpreadsheetMLDocument.SheetPart> sheets = List.of(
+                    new SpreadsheetMLDocument.SheetPart("01-Một", sheet("Nguyễn Văn A", 9.5)),
+                    new SpreadsheetMLDocument.SheetPart("02-Hai", sheet("Trần Thị B", 7)));
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            try (ExportDocument document = packager.document(sheets)) {
+                document.write(out, CompressionProfile.SMALLEST);
+            }
+
+            try (XSSFWorkbook workbook = new XSSFWorkbook(new ByteArrayInputStream(out.toByteArray()))) {
+                assertEquals(2, workbook.getNumberOfSheets());
+                Sheet first = workbook.getSheet("01-Một");
+                assertNotNull(first);
+                Row row = first.getRow(1);
+                assertEquals("Nguyễn Văn A", row.getCell(0).getStringCellValue());
+                assertEquals(9.5, row.getCell(1).getNumericCellValue());
+                assertEquals(1, first.getNumMergedRegions());
+                assertEquals(7, workbook.getSheet("02-Hai").getRow(1).getCell(1).getNumericCellValue());
+            }
+        } finally {
+            packager.shutdown();
+        }
+    }
+
+    private static byte[] write() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DeflatedZipWriter writer = new DeflatedZipWriter(bytes);
+        writer.add(DeflatedPart.deflate("a.xml", Deflater.DEFAULT_COMPRESSION, out -> out.write("<a>1</a>")));
+        writer.add(DeflatedPart.deflate("b.xml", Deflater.DEFAULT_COMPRESSION, out -> out.write("<b>2</b>")));
+        writer.finish();
+        return bytes.toByteArray();
+    }
+
+    private static SheetModel sheet(String name, double score) {
+        StyleSpec style = StyleSpec.of(FontSpec.of("Times New Roman", 12), HorizontalAlignment.LEFT,
+                VerticalAlignment.CENTER);
+        SheetModel model = new SheetModel();
+        model.setColumnWidth(0, 22 * 256);
+        SheetModel.RowModel header = model.createRow(0);
+        header.setText(0, "Họ và tên", style);
+        header.setBlank(1, style);
+        model.addMergedRegion(new CellRangeAddress(0, 0, 0, 1));
+        SheetModel.RowModel row = model.createRow(1);
+        row.setText(0, name, style);
+        row.setNumber(1, score, style);
+        return model;
+    }
+}
@@ -0,0 +1,84 @@
+package com.javaweb.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ExportAdmissionTest {
+
+    private static final int POOL_KIB = 8;
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final ExportAdmission admission = admission(POOL_KIB);
+
+    @Test
+    void reservationsAreRoundedUpToWholeKib() {
+        try (ExportAdmission.Permit first = admission.acquire("council", 1)) {
+            assertEquals((POOL_KIB - 1) * 1024, available());
+            try (ExportAdmission.Permit second = admission.acquire("council", 1025)) {
+                assertEquals((POOL_KIB - 3) * 1024, available());
+            }
+        }
+        assertEquals(POOL_KIB * 1024, available());
+    }
+
+    @Test
+    void requestIsRejectedOnceThePoolIsReserved() {
+        ExportAdmission.Permit first = admission.acquire("council", 6 * 1024);
+
+        assertThrows(RejectedExecutionException.class, () -> admission.acquire("guider", 4 * 1024));
+        assertEquals(1.0, registry.get("export.admission.rejected").tag("endpoint", "guider").counter().count());
+
+        first.close();
+        try (ExportAdmission.Permit ignored = admission.acquire("guider", 4 * 1024)) {
+            assertEquals((POOL_KIB - 4) * 1024, available());
+        }
+    }
+
+    @Test
+    void exportLargerThanThePoolIsAdmittedAlone() {
+        try (ExportAdmission.Permit ignored = admission.acquire("council", 1L << 30)) {
+            assertEquals(0, available());
+            assertThrows(RejectedExecutionException.class, () -> admission.acquire("council", 1));
+        }
+        assertEquals(POOL_KIB * 1024, available());
+    }
+
+    @Test
+    void permitComesBackWhenTheExportFails() {
+        assertThrows(IllegalStateException.class, () -> {
+            try (ExportAdmission.Permit ignored = admission.acquire("council", POOL_KIB * 1024)) {
+                throw new IllegalStateException("layout failed");
+            }
+        });
+
+        assertEquals(POOL_KIB * 1024, available());
+    }
+
+    @Test
+    void closingAPermitTwiceReleasesItOnce() {
+        ExportAdmission.Permit held = admission.acquire("council", 2 * 1024);
+        ExportAdmission.Permit permit = admission.acquire("council", 2 * 1024);
+        permit.close();
+        permit.close();
+
+        assertEquals((POOL_KIB - 2) * 1024, available());
+        held.close();
+    }
+
+    private double available() {
+        return registry.get("export.admission.available").gauge().value();
+    }
+
+    /** An admission whose pool is {@code kib} KiB, whatever heap the test JVM has. */
+    private ExportAdmission admission(int kib) {
+        double heapFraction = (kib * 1024 + 512) / (double) Runtime.getRuntime().maxMemory();
+        return new ExportAdmission(new ExportMetrics(registry), true, heapFraction, 16 * 1024,
+                Duration.ofMillis(20), Duration.ofSeconds(5));
+    }
+}
@@ -0,0 +1,118 @@
+package com.javaweb.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ExportCancellationTest {
+
+    private final List<ExportCancellation.Reason> notified = new ArrayList<>();
+
+    @Test
+    void checkpointThrowsOnceTheDeadlinePasses() {
+        ExportCancellation cancellation = new ExportCancellation(Duration.ZERO, notified::add);
+
+        try (ExportCancellation.Scope ignored = cancellation.bind()) {
+            assertThrows(CancellationException.class, ExportCancellation::checkpoint);
+            assertThrows(CancellationException.class, ExportCancellation::checkpoint);
+        }
+
+        assertEquals(ExportCancellation.Reason.DEADLINE, cancellation.reason());
+        assertEquals(List.of(ExportCancellation.Reason.DEADLINE), notified);
+        assertNull(ExportCancellation.current());
+        assertDoesNotThrow(ExportCancellation::checkpoint);
+    }
+
+    @Test
+    void checkpointPassesBeforeTheDeadlineAndWithoutOne() {
+        ExportCancellation later = new ExportCancellation(Duration.ofMinutes(1), notified::add);
+        ExportCancellation never = new ExportCancellation(null, notified::add);
+
+        try (ExportCancellation.Scope ignored = later.bind()) {
+            assertDoesNotThrow(ExportCancellation::checkpoint);
+        }
+        try (ExportCancellation.Scope ignored = never.bind()) {
+            assertDoesNotThrow(ExportCancellation::checkpoint);
+        }
+        assertEquals(List.of(), notified);
+    }
+
+    @Test
+    void deferredDeadlineIsEnforcedOnceTheDeferralEnds() {
+        ExportCancellation cancellation = new ExportCancellation(Duration.ZERO, notified::add);
+        AtomicBoolean followed = new AtomicBoolean(true);
+        cancellation.deferDeadlineWhile(followed::get);
+
+        assertDoesNotThrow(cancellation::check);
+        assertNull(cancellation.reason());
+
+        followed.set(false);
+        assertThrows(CancellationException.class, cancellation::check);
+        assertEquals(ExportCancellation.Reason.DEADLINE, cancellation.reason());
+    }
+
+    @Test
+    void deferralDoesNotHideADisconnect() {
+        ExportCancellation cancellation = new ExportCancellation(Duration.ZERO, notified::add);
+        cancellation.deferDeadlineWhile(() -> true);
+        cancellation.cancel(ExportCancellation.Reason.DISCONNECT);
+        cancellation.cancel(ExportCancellation.Reason.DEADLINE);
+
+        assertThrows(CancellationException.class, cancellation::check);
+        assertEquals(List.of(ExportCancellation.Reason.DISCONNECT), notified);
+    }
+
+    @Test
+    void failedWriteCancelsTheExport() {
+        ExportCancellation cancellation = new ExportCancellation(null, notified::add);
+        OutputStream guarded = cancellation.guard(new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                throw new IOException("Broken pipe");
+            }
+        });
+
+        assertThrows(IOException.class, () -> guarded.write(new byte[8], 0, 8));
+        assertEquals(ExportCancellation.Reason.DISCONNECT, cancellation.reason());
+        assertEquals(List.of(ExportCancellation.Reason.DISCONNECT), notified);
+        // Work on other threads stops at its next checkpoint
+        assertThrows(CancellationException.class, cancellation::check);
+    }
+
+    @Test
+    void guardedWriteStopsAtTheDeadline() {
+        ExportCancellation cancellation = new ExportCancellation(Duration.ZERO, notified::add);
+        ByteArrayOutputStream client = new ByteArrayOutputStream();
+        OutputStream guarded = cancellation.guard(client);
+
+        assertThrows(CancellationException.class, () -> guarded.write(1));
+        assertEquals(0, client.size());
+        assertEquals(ExportCancellation.Reason.DEADLINE, cancellation.reason());
+    }
+
+    @Test
+    void propagatedTaskSeesTheCancellation() throws Exception {
+        ExportCancellation cancellation = new ExportCancellation(null, notified::add);
+        Callable<ExportCancellation> task;
+        try (ExportCancellation.Scope ignored = cancellation.bind()) {
+            task = ExportCancellation.propagate(ExportCancellation::current);
+        }
+
+        assertSame(cancellation, task.call());
+        assertNull(ExportCancellation.current());
+    }
+}
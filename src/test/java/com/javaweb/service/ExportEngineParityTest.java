@@ -0,0 +1,89 @@
+package com.javaweb.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.javaweb.dto.CouncilEvaluationDto;
+import com.javaweb.dto.GuiderEvaluationDto;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Every engine, and the parallel council layout, must give the sheets the XSSF build gives: the same
+ * values, styles, merged regions and column widths.
+ */
+class ExportEngineParityTest {
+
+    private static final CouncilEvaluationDto.Root COUNCIL = ExportTestPayloads.council(3, 9);
+    private static final GuiderEvaluationDto.Root GUIDER = ExportTestPayloads.guider(9, 2);
+
+    private final ExportWorkbookFactory workbookFactory = new ExportWorkbookFactory(ExportEngine.XSSF, 4);
+    private final ExportMetrics metrics = new ExportMetrics(new SimpleMeterRegistry());
+    private final ExportEngineSelector engineSelector = new ExportEngineSelector(workbookFactory, metrics, false, 0);
+    private final ExportPackager packager = new ExportPackager(2);
+    private final List<CouncilEvaluationExportService> councilServices = new ArrayList<>();
+
+    @AfterEach
+    void shutdown() {
+        councilServices.forEach(CouncilEvaluationExportService::shutdown);
+        packager.shutdown();
+    }
+
+    @ParameterizedTest
+    @EnumSource(ExportEngine.class)
+    void councilMatchesXssf(ExportEngine engine) throws IOException {
+        CouncilEvaluationExportService sequential = council(1);
+
+        assertEquals(snapshot(sequential.buildDocument(COUNCIL, ExportEngine.XSSF)),
+                snapshot(sequential.buildDocument(COUNCIL, engine)));
+    }
+
+    @ParameterizedTest
+    @EnumSource(ExportEngine.class)
+    void parallelCouncilMatchesXssf(ExportEngine engine) throws IOException {
+        assertEquals(snapshot(council(1).buildDocument(COUNCIL, ExportEngine.XSSF)),
+                snapshot(council(3).buildDocument(COUNCIL, engine)));
+    }
+
+    @ParameterizedTest
+    @EnumSource(ExportEngine.class)
+    void guiderMatchesXssf(ExportEngine engine) throws IOException {
+        GuiderEvaluationExportService guider = new GuiderEvaluationExportService(workbookFactory, packager, metrics,
+                engineSelector, new ObjectMapper(), 8, false);
+
+        assertEquals(snapshot(guider.buildDocument(GUIDER, ExportEngine.XSSF)),
+                snapshot(guider.buildDocument(GUIDER, engine)));
+    }
+
+    @ParameterizedTest
+    @EnumSource(ExportEngine.class)
+    void reviewerMatchesXssf(ExportEngine engine) throws IOException {
+        ReviewerEvaluationExportService reviewer = new ReviewerEvaluationExportService(workbookFactory, packager,
+                metrics, engineSelector, new ObjectMapper(), 8, false);
+
+        assertEquals(snapshot(reviewer.buildDocument(GUIDER, ExportEngine.XSSF)),
+                snapshot(reviewer.buildDocument(GUIDER, engine)));
+    }
+
+    private CouncilEvaluationExportService council(int parallelism) {
+        CouncilEvaluationExportService service =
+                new CouncilEvaluationExportService(workbookFactory, packager, metrics, engineSelector, parallelism);
+        councilServices.add(service);
+        return service;
+    }
+
+    private static List<String> snapshot(ExportDocument document) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (document) {
+            document.write(out, CompressionProfile.FASTEST);
+        }
+        return SheetSnapshot.of(out.toByteArray());
+    }
+}
@@ -0,0 +1,148 @@
+package com.javaweb.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ExportJobServiceTest {
+
+    @TempDir
+    Path dir;
+
+    private ExportJobService jobs;
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @AfterEach
+    void shutdown() {
+        release.countDown();
+        jobs.shutdown();
+    }
+
+    @Test
+    void finishedJobHasItsFileSpooled() throws Exception {
+        jobs = jobs(2, 4, Duration.ofMinutes(30));
+
+        ExportJob job = jobs.submit(ExportMetrics.COUNCIL, "out.xlsx", ExportEngine.XSSF, ExportJobServiceTest::cost,
+                engine -> workbook());
+        ExportJob.Status status = await(job);
+
+        assertEquals(ExportJob.State.DONE, status.state());
+        assertNotNull(status.buildMillis());
+        assertNotNull(status.writeMillis());
+        assertEquals(Files.size(job.result()), status.size());
+        assertTrue(job.result().startsWith(dir));
+        try (XSSFWorkbook written = new XSSFWorkbook(Files.newInputStream(job.result()))) {
+            assertEquals("Sheet", written.getSheetAt(0).getSheetName());
+        }
+    }
+
+    @Test
+    void failureIsReportedWithoutItsMessage() throws Exception {
+        jobs = jobs(1, 4, Duration.ofMinutes(30));
+
+        ExportJob job = jobs.submit(ExportMetrics.COUNCIL, "out.xlsx", null, ExportJobServiceTest::cost, engine -> {
+            throw new IllegalStateException("/srv/data/secret.json is unreadable");
+        });
+        ExportJob.Status status = await(job);
+
+        assertEquals(ExportJob.State.FAILED, status.state());
+        assertEquals(ExportJobService.FAILURE_MESSAGE, status.error());
+        assertNotNull(status.finishedAt());
+    }
+
+    @Test
+    void errorFailsTheJobSoItExpires() throws Exception {
+        jobs = jobs(1, 4, Duration.ZERO);
+
+        ExportJob job = jobs.submit(ExportMetrics.COUNCIL, "out.xlsx", null, ExportJobServiceTest::cost, engine -> {
+            throw new OutOfMemoryError("Java heap space");
+        });
+        assertEquals(ExportJob.State.FAILED, await(job).state());
+
+        jobs.cleanup();
+        assertTrue(jobs.find(job.id()).isEmpty());
+    }
+
+    @Test
+    void cleanupDropsExpiredJobsWithTheirFilesButKeepsRunningOnes() throws Exception {
+        jobs = jobs(2, 4, Duration.ZERO);
+
+        ExportJob done = jobs.submit(ExportMetrics.COUNCIL, "out.xlsx", null, ExportJobServiceTest::cost,
+                engine -> workbook());
+        await(done);
+        ExportJob running = jobs.submit(ExportMetrics.COUNCIL, "out.xlsx", null, ExportJobServiceTest::cost,
+                engine -> blocked());
+        Path file = done.result();
+
+        jobs.cleanup();
+
+        assertTrue(jobs.find(done.id()).isEmpty());
+        assertFalse(Files.exists(file));
+        assertTrue(jobs.find(running.id()).isPresent());
+    }
+
+    @Test
+    void submitIsRejectedWhenTheQueueIsFull() {
+        jobs = jobs(1, 1, Duration.ofMinutes(30));
+
+        jobs.submit(ExportMetrics.COUNCIL, "out.xlsx", null, ExportJobServiceTest::cost, engine -> blocked());
+        jobs.submit(ExportMetrics.COUNCIL, "out.xlsx", null, ExportJobServiceTest::cost, engine -> blocked());
+        assertThrows(RejectedExecutionException.class, () -> jobs.submit(ExportMetrics.COUNCIL, "out.xlsx", null,
+                ExportJobServiceTest::cost, engine -> workbook()));
+    }
+
+    private ExportJobService jobs(int workers, int queueCapacity, Duration ttl) {
+        ExportMetrics metrics = new ExportMetrics(new SimpleMeterRegistry());
+        ExportWorkbookFactory workbookFactory = new ExportWorkbookFactory(ExportEngine.XSSF, 4);
+        ExportAdmission admission = new ExportAdmission(metrics, true, 0.5, 1 << 20, Duration.ofSeconds(1),
+                Duration.ofSeconds(5));
+        try {
+            return new ExportJobService(new ExportEngineSelector(workbookFactory, metrics, false, 0), admission,
+                    workers, queueCapacity, dir, ttl, CompressionProfile.FASTEST);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static ExportCostEstimate cost() {
+        return new ExportCostEstimate(1, 1, 1, 0, 0, false);
+    }
+
+    private static ExportDocument workbook() {
+        XSSFWorkbook workbook = new XSSFWorkbook();
+        workbook.createSheet("Sheet").createRow(0).createCell(0).setCellValue("ok");
+        return ExportDocument.of(workbook);
+    }
+
+    private ExportDocument blocked() throws InterruptedException {
+        release.await();
+        return workbook();
+    }
+
+    static ExportJob.Status await(ExportJob job) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (job.state() == ExportJob.State.QUEUED || job.state() == ExportJob.State.RUNNING) {
+            if (System.nanoTime() > deadline) {
+                throw new AssertionError("Job " + job.id() + " did not finish");
+            }
+            Thread.sleep(10);
+        }
+        return job.snapshot();
+    }
+}
@@ -0,0 +1,98 @@
+package com.javaweb.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ExportResultCacheTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void evictedEntriesAreServedFromDisk() throws IOException {
+        ExportResultCache cache = cache(1024, 4096);
+        byte[] first = store(cache, "a", 600);
+        store(cache, "b", 600);
+
+        ExportResultCache.Stats stats = cache.stats();
+        assertEquals(1, stats.memoryEntries());
+        assertEquals(1, stats.diskEntries());
+        assertEquals(600, stats.diskBytes());
+        assertArrayEquals(first, read(cache, "a"));
+        assertEquals(1, cache.stats().diskHits());
+        try (Stream<Path> files = Files.list(dir)) {
+            assertEquals(List.of(), files.filter(file -> file.toString().endsWith(".tmp")).toList());
+        }
+    }
+
+    @Test
+    void diskTierStaysWithinItsBound() throws IOException {
+        ExportResultCache cache = cache(1024, 1500);
+        for (String key : new String[]{"a", "b", "c", "d"}) {
+            store(cache, key, 600);
+        }
+
+        ExportResultCache.Stats stats = cache.stats();
+        assertEquals(2, stats.diskEntries());
+        assertEquals(1, stats.diskEvictions());
+        assertNull(cache.get("a"));
+        try (Stream<Path> files = Files.list(dir)) {
+            assertEquals(2, files.count());
+        }
+    }
+
+    @Test
+    void filesOfAnEarlierRunAreDeletedAtStartup() throws IOException {
+        Path stale = Files.write(dir.resolve("stale.bin"), new byte[128]);
+        Path partial = Files.write(dir.resolve("partial.tmp"), new byte[64]);
+        Path unrelated = Files.write(dir.resolve("notes.txt"), new byte[8]);
+
+        ExportResultCache cache = cache(1024, 4096);
+
+        assertFalse(Files.exists(stale));
+        assertFalse(Files.exists(partial));
+        assertTrue(Files.exists(unrelated));
+        assertEquals(0, cache.stats().diskEntries());
+    }
+
+    private ExportResultCache cache(long maxMemoryBytes, long maxDiskBytes) throws IOException {
+        ExportResultCache cache = new ExportResultCache(new ExportMetrics(new SimpleMeterRegistry()), true,
+                maxMemoryBytes, maxMemoryBytes, true, dir, maxDiskBytes);
+        cache.registerMetrics();
+        return cache;
+    }
+
+    private static byte[] store(ExportResultCache cache, String key, int size) throws IOException {
+        byte[] bytes = new byte[size];
+        Arrays.fill(bytes, (byte) key.charAt(0));
+        ExportResultCache.CapturingOutputStream capture = cache.capture(key, OutputStream.nullOutputStream());
+        capture.write(bytes);
+        capture.commit();
+        return bytes;
+    }
+
+    private static byte[] read(ExportResultCache cache, String key) throws IOException {
+        ExportResultCache.CachedExport cached = cache.get(key);
+        assertNotNull(cached);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        cached.writeTo(out);
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,226 @@
+package com.javaweb.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ExportSingleFlightTest {
+
+    private final ExportSingleFlight singleFlight =
+            new ExportSingleFlight(new ExportMetrics(new SimpleMeterRegistry()), true, Duration.ofSeconds(5));
+    private final ExecutorService followers = Executors.newCachedThreadPool();
+
+    @AfterEach
+    void shutdown() {
+        followers.shutdownNow();
+    }
+
+    @Test
+    void followersReceiveTheLeadersBytes() throws Exception {
+        ExportSingleFlight.Flight leader = singleFlight.join("council", "key");
+        ExportSingleFlight.Flight follower = singleFlight.join("council", "key");
+        assertTrue(leader.leader());
+        assertFalse(follower.leader());
+
+        Future<byte[]> followed = followers.submit(() -> read(follower));
+        ByteArrayOutputStream client = new ByteArrayOutputStream();
+        byte[] expected = write(leader.tee(client), 64);
+        leader.complete();
+        leader.close();
+
+        assertArrayEquals(expected, client.toByteArray());
+        assertArrayEquals(expected, followed.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void leaderFailureReachesWaitingFollowers() throws Exception {
+        ExportSingleFlight.Flight leader = singleFlight.join("council", "key");
+        ExportSingleFlight.Flight sized = singleFlight.join("council", "key");
+        ExportSingleFlight.Flight streaming = singleFlight.join("council", "key");
+
+        Future<Long> size = followers.submit(() -> {
+            try (sized) {
+                return sized.awaitSize();
+            }
+        });
+        Future<byte[]> bytes = followers.submit(() -> read(streaming));
+        write(leader.tee(new ByteArrayOutputStream()), 4);
+        IllegalStateException cause = new IllegalStateException("layout failed");
+        leader.fail(cause);
+        leader.close();
+
+        assertSame(cause, failure(size).getCause());
+        assertSame(cause, failure(bytes).getCause());
+    }
+
+    @Test
+    void leaderThatClosesWithoutCompletingFailsFollowers() throws Exception {
+        ExportSingleFlight.Flight leader = singleFlight.join("council", "key");
+        ExportSingleFlight.Flight follower = singleFlight.join("council", "key");
+
+        Future<Long> size = followers.submit(() -> {
+            try (follower) {
+                return follower.awaitSize();
+            }
+        });
+        leader.close();
+
+        assertInstanceOf(IOException.class, failure(size).getCause());
+    }
+
+    @Test
+    void leaderDisconnectKeepsWritingForFollowers() throws Exception {
+        ExportSingleFlight.Flight leader = singleFlight.join("council", "key");
+        ExportSingleFlight.Flight follower = singleFlight.join("council", "key");
+
+        Future<byte[]> followed = followers.submit(() -> read(follower));
+        byte[] expected = write(leader.tee(new DisconnectingStream(3)), 64);
+        leader.complete();
+        leader.close();
+
+        assertArrayEquals(expected, followed.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void leaderDisconnectWithoutFollowersAbandonsTheBuild() throws Exception {
+        ExportSingleFlight.Flight leader = singleFlight.join("council", "key");
+        OutputStream out = leader.tee(new DisconnectingStream(0));
+
+        assertThrows(IOException.class, () -> out.write(new byte[16]));
+        leader.close();
+        try (ExportSingleFlight.Flight next = singleFlight.join("council", "key")) {
+            assertTrue(next.leader());
+        }
+    }
+
+    @Test
+    void leaderWhoseBodyNeverRunsLeavesTheTable() throws Exception {
+        ExportSingleFlight.Flight leader = singleFlight.join("council", "key");
+        ExportSingleFlight.Flight follower = singleFlight.join("council", "key");
+        Future<byte[]> followed = followers.submit(() -> read(follower));
+
+        // What the request-completion cleanup does for a body the container never started
+        leader.close();
+
+        assertInstanceOf(IOException.class, failure(followed).getCause());
+        try (ExportSingleFlight.Flight next = singleFlight.join("council", "key")) {
+            assertTrue(next.leader());
+        }
+    }
+
+    @Test
+    void leaderDeadlineIsDeferredWhileFollowed() throws Exception {
+        ExportCancellation deadline = new ExportCancellation(Duration.ZERO, reason -> { });
+        ExportSingleFlight.Flight leader = join(deadline);
+        ExportSingleFlight.Flight follower = singleFlight.join("council", "key");
+
+        Future<byte[]> followed = followers.submit(() -> read(follower));
+        byte[] expected = write(deadline.guard(leader.tee(new ByteArrayOutputStream())), 16);
+        leader.complete();
+        leader.close();
+
+        assertArrayEquals(expected, followed.get(5, TimeUnit.SECONDS));
+        assertNull(deadline.reason());
+        assertThrows(CancellationException.class, deadline::check);
+    }
+
+    @Test
+    void followerStopsWaitingWhenItsOwnDeadlinePasses() {
+        ExportSingleFlight.Flight leader = singleFlight.join("council", "key");
+        ExportCancellation deadline = new ExportCancellation(Duration.ofMillis(50), reason -> { });
+        ExportSingleFlight.Flight follower = join(deadline);
+
+        assertThrows(CancellationException.class, follower::awaitSize);
+        follower.close();
+        leader.close();
+    }
+
+    @Test
+    void followerGivesUpOnAStalledBuild() {
+        ExportSingleFlight stalling =
+                new ExportSingleFlight(new ExportMetrics(new SimpleMeterRegistry()), true, Duration.ofMillis(100));
+        ExportSingleFlight.Flight leader = stalling.join("council", "key");
+        ExportSingleFlight.Flight follower = stalling.join("council", "key");
+
+        assertThrows(IOException.class, () -> follower.writeTo(new ByteArrayOutputStream()));
+        follower.close();
+        leader.close();
+    }
+
+    private ExportSingleFlight.Flight join(ExportCancellation cancellation) {
+        ExportCancellation.Scope scope = cancellation.bind();
+        try {
+            return singleFlight.join("council", "key");
+        } finally {
+            scope.close();
+        }
+    }
+
+    private static byte[] read(ExportSingleFlight.Flight follower) throws IOException {
+        try (follower) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            follower.writeTo(out);
+            return out.toByteArray();
+        }
+    }
+
+    /** Write {@code chunks} distinct 1 KiB chunks and return everything written. */
+    private static byte[] write(OutputStream out, int chunks) throws IOException {
+        ByteArrayOutputStream all = new ByteArrayOutputStream();
+        for (int i = 0; i < chunks; i++) {
+            byte[] chunk = new byte[1024];
+            Arrays.fill(chunk, (byte) i);
+            out.write(chunk);
+            all.write(chunk);
+        }
+        out.flush();
+        return all.toByteArray();
+    }
+
+    /** The IOException a follower failed with. */
+    private static IOException failure(Future<?> future) {
+        ExecutionException e = assertThrows(ExecutionException.class, () -> future.get(5, TimeUnit.SECONDS));
+        return assertInstanceOf(IOException.class, e.getCause());
+    }
+
+    /** A client that accepts {@code writes} writes and then behaves as if it went away. */
+    private static final class DisconnectingStream extends OutputStream {
+        private int writes;
+
+        DisconnectingStream(int writes) {
+            this.writes = writes;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (writes-- <= 0) {
+                throw new IOException("Broken pipe");
+            }
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package com.javaweb.service;
+
+import com.javaweb.dto.CouncilEvaluationDto;
+import com.javaweb.dto.GuiderEvaluationDto;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/** Small deterministic export payloads for the tests. */
+final class ExportTestPayloads {
+
+    private static final int INDICATORS = 2;
+    private static final int PIS_PER_INDICATOR = 2;
+
+    private ExportTestPayloads() {
+    }
+
+    /** One council form scored by {@code lecturers} lecturers for the same {@code students} students. */
+    static CouncilEvaluationDto.Root council(int lecturers, int students) {
+        List<CouncilEvaluationDto.Indicator> indicators = new ArrayList<>(INDICATORS);
+        List<String> piIds = new ArrayList<>();
+        for (int c = 1; c <= INDICATORS; c++) {
+            List<CouncilEvaluationDto.Pi> pis = new ArrayList<>(PIS_PER_INDICATOR);
+            for (int p = 1; p <= PIS_PER_INDICATOR; p++) {
+                String piId = piId(0, c, p);
+                piIds.add(piId);
+                pis.add(new CouncilEvaluationDto.Pi(piId, piId, "Chỉ số " + piId, 1.0 / PIS_PER_INDICATOR));
+            }
+            CouncilEvaluationDto.Indicator indicator = new CouncilEvaluationDto.Indicator();
+            indicator.setCloId("CLO" + c);
+            indicator.setCloName("CLO" + c);
+            indicator.setCloDescription("Chuẩn đầu ra " + c);
+            indicator.setWeight(1.0 / INDICATORS);
+            indicator.setPis(pis);
+            indicators.add(indicator);
+        }
+        CouncilEvaluationDto.EvaluationForm form = new CouncilEvaluationDto.EvaluationForm(
+                "Phiếu chấm hội đồng", "council-eval", "2024-2025", "COUNCIL", "COUNCIL", "Hội đồng 1", indicators);
+
+        List<CouncilEvaluationDto.Lecturer> lecturerList = new ArrayList<>(lecturers);
+        for (int l = 1; l <= lecturers; l++) {
+            List<CouncilEvaluationDto.StudentEvaluation> evaluations = new ArrayList<>(students);
+            for (int s = 1; s <= students; s++) {
+                List<CouncilEvaluationDto.Score> scores = new ArrayList<>(piIds.size());
+                for (int i = 0; i < piIds.size(); i++) {
+                    scores.add(new CouncilEvaluationDto.Score(piIds.get(i), score(s, l * 10 + i)));
+                }
+                CouncilEvaluationDto.Evaluation evaluation = new CouncilEvaluationDto.Evaluation();
+                evaluation.setEvaluationId("council-eval");
+                evaluation.setEvaluationTitle("Phiếu chấm hội đồng");
+                evaluation.setScores(scores);
+                CouncilEvaluationDto.StudentEvaluation student = new CouncilEvaluationDto.StudentEvaluation(
+                        String.format("B21DCCN%03d", s), "Nguyễn Văn " + (char) ('A' + s % 26) + " " + s,
+                        "D21CQCN0" + (s % 9 + 1), evaluation);
+                student.setComment(s % 3 == 0 ? "Cần bổ sung phần thực nghiệm" : null);
+                evaluations.add(student);
+            }
+            CouncilEvaluationDto.Lecturer lecturer = new CouncilEvaluationDto.Lecturer();
+            lecturer.setLecturerId("GV" + l);
+            lecturer.setLecturerName("Giảng viên " + l);
+            lecturer.setRole(l == 1 ? "Chủ tịch" : "Ủy viên");
+            lecturer.setDepartment("CNTT");
+            lecturer.setEvaluations(evaluations);
+            lecturerList.add(lecturer);
+        }
+        return new CouncilEvaluationDto.Root(form, lecturerList);
+    }
+
+    /** {@code forms} guider forms and {@code students} students, each evaluated on every form. */
+    static GuiderEvaluationDto.Root guider(int students, int forms) {
+        List<GuiderEvaluationDto.EvaluationForm> formList = new ArrayList<>(forms);
+        for (int f = 1; f <= forms; f++) {
+            formList.add(guiderForm(f));
+        }
+        List<GuiderEvaluationDto.Student> studentList = new ArrayList<>(students);
+        for (int s = 1; s <= students; s++) {
+            List<GuiderEvaluationDto.StudentEvaluation> evaluations = new ArrayList<>(forms);
+            for (int f = 1; f <= forms; f++) {
+                evaluations.add(guiderEvaluation(f, s));
+            }
+            studentList.add(guiderStudent(s, evaluations));
+        }
+        GuiderEvaluationDto.Root root = new GuiderEvaluationDto.Root();
+        root.setEvaluationForm(formList);
+        root.setStudents(studentList);
+        return root;
+    }
+
+    static GuiderEvaluationDto.EvaluationForm guiderForm(int f) {
+        List<GuiderEvaluationDto.Indicator> indicators = new ArrayList<>(INDICATORS);
+        for (int c = 1; c <= INDICATORS; c++) {
+            List<GuiderEvaluationDto.Pi> pis = new ArrayList<>(PIS_PER_INDICATOR);
+            for (int p = 1; p <= PIS_PER_INDICATOR; p++) {
+                GuiderEvaluationDto.Pi pi = new GuiderEvaluationDto.Pi();
+                pi.setCloPisId(piId(f, c, p));
+                pi.setCloPisName(piId(f, c, p));
+                pi.setCloPisDescription("Chỉ số " + piId(f, c, p));
+                pi.setCloPisWeight(1.0 / PIS_PER_INDICATOR);
+                pis.add(pi);
+            }
+            GuiderEvaluationDto.Indicator indicator = new GuiderEvaluationDto.Indicator();
+            indicator.setCloId("CLO" + c);
+            indicator.setCloName("CLO" + c);
+            indicator.setCloDescription("Chuẩn đầu ra " + c);
+            indicator.setWeight(1.0 / INDICATORS);
+            indicator.setPis(pis);
+            indicators.add(indicator);
+        }
+        GuiderEvaluationDto.EvaluationForm form = new GuiderEvaluationDto.EvaluationForm();
+        form.setTitle("Báo cáo tuần " + f);
+        form.setEvaluationId("eval-" + f);
+        form.setAcademicYear("2024-2025");
+        form.setFormKey("FORM-" + f);
+        form.setReportWeek(String.valueOf(f));
+        form.setEvaluatorRole("GUIDER");
+        form.setIndicators(indicators);
+        return form;
+    }
+
+    static GuiderEvaluationDto.StudentEvaluation guiderEvaluation(int f, int s) {
+        List<GuiderEvaluationDto.Score> scores = new ArrayList<>();
+        for (int c = 1; c <= INDICATORS; c++) {
+            for (int p = 1; p <= PIS_PER_INDICATOR; p++) {
+                GuiderEvaluationDto.Score score = new GuiderEvaluationDto.Score();
+                score.setPiId(piId(f, c, p));
+                score.setScore(score(s, f * 10 + c * 3 + p));
+                scores.add(score);
+            }
+        }
+        GuiderEvaluationDto.StudentEvaluation evaluation = new GuiderEvaluationDto.StudentEvaluation();
+        evaluation.setEvaluationId("eval-" + f);
+        evaluation.setEvaluationTitle("Báo cáo tuần " + f);
+        evaluation.setScores(scores);
+        return evaluation;
+    }
+
+    static GuiderEvaluationDto.Student guiderStudent(int s, List<GuiderEvaluationDto.StudentEvaluation> evaluations) {
+        GuiderEvaluationDto.Student student = new GuiderEvaluationDto.Student();
+        student.setStudentId(String.format("B21DCCN%03d", s));
+        student.setStudentName("Nguyễn Văn " + (char) ('A' + s % 26) + " " + s);
+        student.setStudentClassName("D21CQCN0" + (s % 9 + 1));
+        student.setRole("STUDENT");
+        student.setGuiderName("Giảng viên " + (s % 3 + 1));
+        student.setReviewerName("Giảng viên " + (s % 2 + 1));
+        student.setProjectName("Đề tài số " + s);
+        student.setEvaluations(evaluations);
+        return student;
+    }
+
+    private static String piId(int f, int c, int p) {
+        return "F" + f + ".C" + c + "." + p + ".";
+    }
+
+    /** Half points, with one score in seven left blank like an unfinished form. */
+    private static Double score(int student, int slot) {
+        int seed = student * 31 + slot * 7;
+        return seed % 7 == 0 ? null : (seed % 21) / 2.0;
+    }
+}
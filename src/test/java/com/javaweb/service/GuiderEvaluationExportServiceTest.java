@@ -0,0 +1,85 @@
+package com.javaweb.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.javaweb.dto.GuiderEvaluationDto;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class GuiderEvaluationExportServiceTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void streamingWithLeadingFormsMatchesTheBoundBuild() throws IOException {
+        GuiderEvaluationDto.Root root = ExportTestPayloads.guider(12, 2);
+        GuiderEvaluationExportService service = service(false);
+
+        assertEquals(cells(service.buildWorkbook(root)),
+                cells(service.buildWorkbook(new ByteArrayInputStream(objectMapper.writeValueAsBytes(root)))));
+    }
+
+    @Test
+    void studentsBeforeFormsAreSpilledAndLaidOutFromTheWholeCohort() throws IOException {
+        GuiderEvaluationDto.Root root = ExportTestPayloads.guider(12, 2);
+        ObjectNode json = objectMapper.createObjectNode();
+        json.set("students", objectMapper.valueToTree(root.getStudents()));
+        json.set("evaluationForm", objectMapper.valueToTree(root.getEvaluationForm()));
+        GuiderEvaluationExportService service = service(false);
+
+        assertEquals(cells(service.buildWorkbook(root)),
+                cells(service.buildWorkbook(new ByteArrayInputStream(objectMapper.writeValueAsBytes(json)))));
+    }
+
+    @Test
+    void evaluationWithoutALeadingFormIsRejectedWithoutSpill() throws IOException {
+        byte[] json = objectMapper.writeValueAsBytes(uncovered());
+
+        assertThrows(IllegalArgumentException.class,
+                () -> service(false).buildWorkbook(new ByteArrayInputStream(json)));
+    }
+
+    @Test
+    void evaluationWithoutALeadingFormIsRebuiltFromTheSpill() throws IOException {
+        GuiderEvaluationDto.Root root = uncovered();
+        GuiderEvaluationExportService service = service(true);
+
+        assertEquals(cells(service.buildWorkbook(root)),
+                cells(service.buildWorkbook(new ByteArrayInputStream(objectMapper.writeValueAsBytes(root)))));
+    }
+
+    /** One form up front, but the last student was also scored on a second evaluation. */
+    private static GuiderEvaluationDto.Root uncovered() {
+        GuiderEvaluationDto.Root root = ExportTestPayloads.guider(8, 1);
+        GuiderEvaluationDto.Student last = root.getStudents().get(root.getStudents().size() - 1);
+        List<GuiderEvaluationDto.StudentEvaluation> evaluations = new ArrayList<>(last.getEvaluations());
+        evaluations.add(ExportTestPayloads.guiderEvaluation(2, 8));
+        last.setEvaluations(evaluations);
+        return root;
+    }
+
+    private GuiderEvaluationExportService service(boolean spillOnLayoutChange) {
+        ExportWorkbookFactory workbookFactory = new ExportWorkbookFactory(ExportEngine.XSSF, 4);
+        ExportMetrics metrics = new ExportMetrics(new SimpleMeterRegistry());
+        return new GuiderEvaluationExportService(workbookFactory, new ExportPackager(1), metrics,
+                new ExportEngineSelector(workbookFactory, metrics, false, 0), objectMapper, 8, spillOnLayoutChange);
+    }
+
+    private static List<String> cells(Workbook workbook) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (workbook) {
+            workbook.write(out);
+        }
+        return SheetSnapshot.of(out.toByteArray());
+    }
+}
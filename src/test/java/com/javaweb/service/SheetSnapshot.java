@@ -0,0 +1,85 @@
+package com.javaweb.service;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.xssf.usermodel.XSSFCellStyle;
+import org.apache.poi.xssf.usermodel.XSSFColor;
+import org.apache.poi.xssf.usermodel.XSSFFont;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+
+/**
+ * Everything a reader of an exported xlsx sees, one line per sheet, column width, merged region and
+ * cell, read back from the written package so every engine is compared the same way. Fill and font
+ * colours of blank cells are left out: they do not show, and the direct writer does not reproduce
+ * them on the blank cells that only carry a merged region's border.
+ */
+final class SheetSnapshot {
+
+    private SheetSnapshot() {
+    }
+
+    static List<String> of(byte[] xlsx) throws IOException {
+        DataFormatter formatter = new DataFormatter();
+        List<String> lines = new ArrayList<>();
+        try (XSSFWorkbook workbook = new XSSFWorkbook(new ByteArrayInputStream(xlsx))) {
+            for (Sheet sheet : workbook) {
+                lines.add("sheet " + sheet.getSheetName());
+                int lastColumn = 0;
+                for (Row row : sheet) {
+                    lastColumn = Math.max(lastColumn, row.getLastCellNum());
+                }
+                for (int column = 0; column < lastColumn; column++) {
+                    lines.add("width " + column + "=" + sheet.getColumnWidth(column));
+                }
+                List<String> merges = new ArrayList<>();
+                for (CellRangeAddress region : sheet.getMergedRegions()) {
+                    merges.add("merge " + region.formatAsString());
+                }
+                merges.sort(null);
+                lines.addAll(merges);
+                for (Row row : sheet) {
+                    for (Cell cell : row) {
+                        lines.add(cell.getAddress() + " " + cell.getCellType() + " '" + formatter.formatCellValue(cell)
+                                + "' " + style((XSSFCellStyle) cell.getCellStyle(), cell.getCellType() == CellType.BLANK));
+                    }
+                }
+            }
+        }
+        return lines;
+    }
+
+    private static String style(XSSFCellStyle style, boolean blank) {
+        XSSFFont font = style.getFont();
+        StringBuilder out = new StringBuilder()
+                .append(font.getFontName()).append(' ').append(font.getFontHeightInPoints())
+                .append(font.getBold() ? " bold" : "").append(font.getItalic() ? " italic" : "")
+                .append(" align=").append(style.getAlignment()).append('/').append(style.getVerticalAlignment())
+                .append(style.getWrapText() ? " wrap" : "")
+                .append(" format=").append(style.getDataFormatString())
+                .append(" borders=").append(style.getBorderTop()).append(',').append(style.getBorderRight())
+                .append(',').append(style.getBorderBottom()).append(',').append(style.getBorderLeft());
+        if (!blank) {
+            out.append(" fill=").append(style.getFillPattern()).append(' ').append(color(style.getFillForegroundColorColor()))
+                    .append(" color=").append(color(font.getXSSFColor()));
+        }
+        return out.toString();
+    }
+
+    private static String color(XSSFColor color) {
+        if (color == null) {
+            return "none";
+        }
+        byte[] rgb = color.getRGB();
+        return rgb != null ? HexFormat.of().formatHex(rgb) : "indexed" + color.getIndexed();
+    }
+}